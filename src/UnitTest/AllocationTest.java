@@ -0,0 +1,40 @@
+package UnitTest;
+
+import YaraParser.Benchmark.AllocationBenchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Fails (exit status 1) when a warmed-up parser session allocates more bytes per sentence than allowed, from words
+ * and tags to the best configuration, for greedy parsing and for a beam of 8. The sentences and the model come from
+ * {@link YaraParser.Benchmark.SyntheticTreebank} with a fixed seed, so the numbers only move when the parse path
+ * changes.
+ * <p/>
+ * Usage: java UnitTest.AllocationTest [greedy-bytes-per-sentence] [beam-bytes-per-sentence]
+ * <p/>
+ * The default limits are about a quarter above what the basic feature set allocates now (mostly the boxed feature
+ * keys); lower them as the allocations are removed from the parse path.
+ */
+public class AllocationTest {
+    private static final int SENTENCES = 200;
+    private static final int BEAM_WIDTH = 8;
+    private static final long GREEDY_LIMIT = 32 * 1024;
+    private static final long BEAM_LIMIT = 224 * 1024;
+
+    public static void main(String[] args) throws Exception {
+        long greedyLimit = args.length > 0 ? Long.parseLong(args[0]) : GREEDY_LIMIT;
+        long beamLimit = args.length > 1 ? Long.parseLong(args[1]) : BEAM_LIMIT;
+        ArrayList<AllocationBenchmark.Result> results = AllocationBenchmark.measure(SENTENCES, 10000, 1.0, 25, 1,
+                Collections.singletonList("basic"), Arrays.asList(1, BEAM_WIDTH));
+        boolean passed = true;
+        for (AllocationBenchmark.Result result : results) {
+            long limit = result.beamWidth == 1 ? greedyLimit : beamLimit;
+            boolean ok = result.parseBytes <= limit;
+            System.out.println((ok ? "PASS " : "FAIL ") + result + " (limit " + limit + " bytes/sentence)");
+            passed &= ok;
+        }
+        System.exit(passed ? 0 : 1);
+    }
+}
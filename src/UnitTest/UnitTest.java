@@ -5,7 +5,7 @@
 
 package UnitTest;
 
-import YaraParser.Accessories.CoNLLReader;
+import YaraParser.Accessories.BinaryCorpus;
 import YaraParser.Accessories.Options;
 import YaraParser.Accessories.Pair;
 import YaraParser.Learning.AveragedPerceptron;
@@ -48,21 +48,21 @@ public class UnitTest {
         System.out.println("**********************************************");
         System.out.print(options);
         System.out.println("**********************************************");
-        IndexMaps maps = CoNLLReader.createIndices(options.inputFile, options.labeled, options.lowercase,
-                options.clusterFile);
-        CoNLLReader reader = new CoNLLReader(options.inputFile);
-        ArrayList<GoldConfiguration> dataSet = reader.readData(Integer.MAX_VALUE, false, options.labeled,
-                options.rootFirst, options.lowercase, maps);
+        Pair<IndexMaps, ArrayList<GoldConfiguration>> treebank = BinaryCorpus.readTreebank(options.inputFile,
+                options);
+        IndexMaps maps = treebank.first;
+        ArrayList<GoldConfiguration> dataSet = treebank.second;
         System.out.println("CoNLL data reading done!");
         ArrayList<Integer> dependencyLabels = new ArrayList<>(maps.getLabels().keySet());
         HashMap<Integer, HashMap<Integer, HashSet<Integer>>> headDepSet = new HashMap<>();
         for (GoldConfiguration configuration : dataSet) {
             Sentence sentence = configuration.getSentence();
-            for (int dep : configuration.getGoldDependencies().keySet()) {
-                Pair<Integer, Integer> headDepPair = configuration.getGoldDependencies().get(dep);
-                int relation = headDepPair.second;
+            for (int dep = 1; dep <= sentence.size(); dep++) {
+                if (!configuration.hasHead(dep))
+                    continue;
+                int relation = configuration.label(dep);
                 int dependent = sentence.posAt(dep);
-                int head = sentence.posAt(headDepPair.first);
+                int head = sentence.posAt(configuration.head(dep));
                 if (!headDepSet.containsKey(head))
                     headDepSet.put(head, new HashMap<>());
                 if (!headDepSet.get(head).containsKey(dependent))
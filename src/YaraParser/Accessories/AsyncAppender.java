@@ -0,0 +1,104 @@
+package YaraParser.Accessories;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Appends records to a file on a thread of its own, so the threads that produce them never wait for the disk. The
+ * records wait in a bounded queue; when the writer falls behind and the queue is full, new records are dropped and
+ * counted instead of blocking the caller.
+ * <p/>
+ * The file is opened once in append mode and flushed whenever the queue runs empty. {@link #close()} writes what is
+ * still queued.
+ */
+public class AsyncAppender implements AutoCloseable {
+    private static final String END = new String("");
+
+    private final ArrayBlockingQueue<String> queue;
+    private final BufferedWriter writer;
+    private final Thread thread;
+    private final AtomicLong dropped;
+    private volatile IOException failure;
+
+    /**
+     * @param capacity records that can wait for the writer
+     */
+    public AsyncAppender(String path, int capacity) throws IOException {
+        queue = new ArrayBlockingQueue<>(capacity);
+        writer = new BufferedWriter(new FileWriter(path, true));
+        dropped = new AtomicLong();
+        thread = new Thread(this::write, "async-appender");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @param record text with its own line breaks
+     * @return false if the queue is full and the record was dropped
+     */
+    public boolean append(String record) {
+        if (queue.offer(record))
+            return true;
+        dropped.incrementAndGet();
+        return false;
+    }
+
+    public long dropped() {
+        return dropped.get();
+    }
+
+    private void write() {
+        ArrayList<String> records = new ArrayList<>();
+        try {
+            while (true) {
+                String record = queue.poll(1, TimeUnit.SECONDS);
+                if (record == null) {
+                    writer.flush();
+                    continue;
+                }
+                records.add(record);
+                queue.drainTo(records);
+                for (String r : records) {
+                    if (r == END) {
+                        writer.flush();
+                        return;
+                    }
+                    writer.write(r);
+                }
+                records.clear();
+                if (queue.isEmpty())
+                    writer.flush();
+            }
+        } catch (IOException e) {
+            failure = e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits until the queued records are written and closes the file.
+     *
+     * @throws IOException if writing failed at any point
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            // the writer thread is gone if writing failed, and then nobody empties the queue
+            boolean queued = false;
+            while (!queued && thread.isAlive())
+                queued = queue.offer(END, 100, TimeUnit.MILLISECONDS);
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writer.close();
+        if (failure != null)
+            throw failure;
+    }
+}
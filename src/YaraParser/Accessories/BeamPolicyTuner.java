@@ -0,0 +1,184 @@
+package YaraParser.Accessories;
+
+import YaraParser.TransitionBasedSystem.Configuration.Configuration;
+import YaraParser.TransitionBasedSystem.Configuration.GoldConfiguration;
+import YaraParser.TransitionBasedSystem.Parser.BeamPolicy;
+import YaraParser.TransitionBasedSystem.Parser.ParserContext;
+import YaraParser.TransitionBasedSystem.Parser.ParserSession;
+
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+
+/**
+ * Picks a {@link BeamPolicy} for a model from a dev set: parses every sentence with each beam width from the
+ * width of the model down to 1, and then narrows the beam of the length range that loses the fewest correct heads
+ * per saved millisecond, until the dev set is parsed at the target number of sentences per second on one thread.
+ */
+public class BeamPolicyTuner {
+    /**
+     * maximum number of words of the length ranges; longer sentences are in the last range
+     */
+    private static final int[] MAX_LENGTHS = {10, 20, 30, 40, 60, 80};
+
+    public static BeamPolicy tune(String modelPath, String devPath, float targetSpeed) throws Exception {
+        ParserContext context = ParserContext.load(modelPath);
+        ParserSession session = context.newSession();
+        ArrayList<GoldConfiguration> devData = new CoNLLReader(devPath).readData(Integer.MAX_VALUE, true, true,
+                context.rootFirst, context.lowercase, context.maps);
+        if (devData.size() == 0)
+            throw new Exception("empty dev set " + devPath);
+
+        ArrayList<Integer> widths = new ArrayList<>();
+        for (int beamWidth = context.beamWidth; beamWidth > 1; beamWidth /= 2)
+            widths.add(beamWidth);
+        widths.add(1);
+
+        int ranges = MAX_LENGTHS.length + 1;
+        int[] sentences = new int[ranges];
+        int[] words = new int[ranges];
+        long[][] nanos = new long[ranges][widths.size()];
+        int[][] correct = new int[ranges][widths.size()];
+
+        // warm up the JIT so that the first width is not timed in the interpreter
+        for (int i = 0; i < Math.min(devData.size(), 200); i++)
+            session.parse(devData.get(i).getSentence(), context.beamWidth);
+
+        for (GoldConfiguration goldConfiguration : devData) {
+            int length = length(goldConfiguration, context.rootFirst);
+            int range = range(length);
+            sentences[range]++;
+            words[range] += length;
+            for (int w = 0; w < widths.size(); w++) {
+                long start = System.nanoTime();
+                Configuration bestParse = session.parse(goldConfiguration.getSentence(), widths.get(w));
+                nanos[range][w] += System.nanoTime() - start;
+                for (int i = 1; i <= length; i++)
+                    if (goldConfiguration.hasHead(i) && goldConfiguration.head(i) == bestParse.state.getHead(i))
+                        correct[range][w]++;
+            }
+        }
+
+        DecimalFormat format = new DecimalFormat("##.00");
+        System.out.println("length\tsentences\t" + widthHeader(widths));
+        for (int range = 0; range < ranges; range++) {
+            if (sentences[range] == 0)
+                continue;
+            StringBuilder row = new StringBuilder(rangeName(range) + "\t" + sentences[range]);
+            for (int w = 0; w < widths.size(); w++)
+                row.append("\t").append(format.format(nanos[range][w] / 1e6 / sentences[range])).append(" ms ")
+                        .append(format.format(100.0 * correct[range][w] / words[range])).append("%");
+            System.out.println(row);
+        }
+
+        int[] choice = new int[ranges];
+        while (speed(devData.size(), nanos, choice) < targetSpeed) {
+            int best = -1;
+            int bestWidth = -1;
+            double bestCost = Double.MAX_VALUE;
+            for (int range = 0; range < ranges; range++) {
+                if (sentences[range] == 0)
+                    continue;
+                int w = choice[range];
+                // a narrower beam is not always measured as faster, so look at all narrower widths
+                for (int narrower = w + 1; narrower < widths.size(); narrower++) {
+                    long saved = nanos[range][w] - nanos[range][narrower];
+                    if (saved <= 0)
+                        continue;
+                    double cost = (double) (correct[range][w] - correct[range][narrower]) / saved;
+                    if (cost < bestCost) {
+                        bestCost = cost;
+                        best = range;
+                        bestWidth = narrower;
+                    }
+                }
+            }
+            if (best == -1) {
+                System.out.println("the target of " + targetSpeed + " sentences per second cannot be reached, " +
+                        "even with greedy parsing");
+                break;
+            }
+            choice[best] = bestWidth;
+        }
+
+        // lengths that are not in the dev set get the width of the next shorter range
+        for (int range = 1; range < ranges; range++)
+            if (sentences[range] == 0)
+                choice[range] = choice[range - 1];
+
+        int allWords = 0;
+        int allCorrect = 0;
+        for (int range = 0; range < ranges; range++) {
+            allWords += words[range];
+            allCorrect += correct[range][choice[range]];
+        }
+        BeamPolicy policy = policy(widths, choice);
+        System.out.println("beam policy: " + policy);
+        System.out.println(format.format(speed(devData.size(), nanos, choice)) + " sentences per second, "
+                + format.format(100.0 * allCorrect / allWords) + "% unlabeled accuracy (with punctuation)");
+        return policy;
+    }
+
+    /**
+     * @return number of words of the sentence, without the root
+     */
+    private static int length(GoldConfiguration goldConfiguration, boolean rootFirst) {
+        int size = goldConfiguration.getSentence().size();
+        return rootFirst ? size : size - 1;
+    }
+
+    private static int range(int length) {
+        for (int range = 0; range < MAX_LENGTHS.length; range++)
+            if (length <= MAX_LENGTHS[range])
+                return range;
+        return MAX_LENGTHS.length;
+    }
+
+    private static String rangeName(int range) {
+        if (range == MAX_LENGTHS.length)
+            return ">" + MAX_LENGTHS[range - 1];
+        return "<=" + MAX_LENGTHS[range];
+    }
+
+    private static String widthHeader(ArrayList<Integer> widths) {
+        StringBuilder header = new StringBuilder();
+        for (int w = 0; w < widths.size(); w++)
+            header.append(w > 0 ? "\t" : "").append("beam ").append(widths.get(w));
+        return header.toString();
+    }
+
+    private static double speed(int sentenceCount, long[][] nanos, int[] choice) {
+        long total = 0;
+        for (int range = 0; range < choice.length; range++)
+            total += nanos[range][choice[range]];
+        return total == 0 ? Double.MAX_VALUE : sentenceCount * 1e9 / total;
+    }
+
+    /**
+     * Merges neighbouring ranges with the same width.
+     */
+    private static BeamPolicy policy(ArrayList<Integer> widths, int[] choice) throws Exception {
+        ArrayList<Integer> maxLengths = new ArrayList<>();
+        ArrayList<Integer> beamWidths = new ArrayList<>();
+        for (int range = 0; range < MAX_LENGTHS.length; range++) {
+            int beamWidth = widths.get(choice[range]);
+            if (beamWidths.size() > 0 && beamWidths.get(beamWidths.size() - 1) == beamWidth)
+                maxLengths.set(maxLengths.size() - 1, MAX_LENGTHS[range]);
+            else {
+                maxLengths.add(MAX_LENGTHS[range]);
+                beamWidths.add(beamWidth);
+            }
+        }
+        int longBeamWidth = widths.get(choice[MAX_LENGTHS.length]);
+        if (beamWidths.get(beamWidths.size() - 1) == longBeamWidth) {
+            maxLengths.remove(maxLengths.size() - 1);
+            beamWidths.remove(beamWidths.size() - 1);
+        }
+        int[] lengths = new int[maxLengths.size()];
+        int[] beams = new int[beamWidths.size()];
+        for (int i = 0; i < lengths.length; i++) {
+            lengths[i] = maxLengths.get(i);
+            beams[i] = beamWidths.get(i);
+        }
+        return new BeamPolicy(lengths, beams, longBeamWidth);
+    }
+}
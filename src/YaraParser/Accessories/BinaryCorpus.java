@@ -0,0 +1,304 @@
+package YaraParser.Accessories;
+
+import YaraParser.Structures.IndexMaps;
+import YaraParser.Structures.Sentence;
+import YaraParser.TransitionBasedSystem.Configuration.GoldConfiguration;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+
+/**
+ * A pre-indexed treebank: the vocabularies of a CoNLL file together with its columns as packed int arrays.
+ * <p/>
+ * Layout (big-endian): magic, version, labeled, lowercase, length of the serialized {@link IndexMaps}, the maps
+ * padded to 4 bytes, #sentences, #tokens, sentence offsets (#sentences + 1), projectivity flags (#sentences) and
+ * then the word, tag, brown4, brown6, brownFull, head and label columns (#tokens each). Heads are the CoNLL heads
+ * (0 for the root, -1 for no head), so the same file can be loaded with or without root_first.
+ * <p/>
+ * Loading maps the file into memory and does not parse any text. Each section (the header, the offsets, the flags
+ * and each column) is mapped on its own, so the file can be larger than the 2 GB of one mapping; one column can
+ * hold at most {@link #MAX_TOKENS} tokens.
+ */
+public class BinaryCorpus {
+    private static final int MAGIC = 0x59424331; // "YBC1"
+    private static final int VERSION = 1;
+    private static final int COLUMNS = 7;
+    /**
+     * the most ints of one section: a mapping is at most Integer.MAX_VALUE bytes
+     */
+    public static final int MAX_TOKENS = Integer.MAX_VALUE / 4;
+    /**
+     * magic, version, labeled, lowercase and the length of the maps
+     */
+    private static final int HEADER_BYTES = 20;
+
+    private final IndexMaps maps;
+    private final boolean labeled;
+    private final boolean lowercase;
+    private final int sentenceCount;
+    private final int tokenCount;
+    private final IntBuffer offsets;
+    private final IntBuffer projective;
+    private final IntBuffer[] columns;
+
+    public BinaryCorpus(String corpusPath) throws Exception {
+        // the mappings stay valid after the file is closed
+        try (RandomAccessFile file = new RandomAccessFile(corpusPath, "r"); FileChannel channel = file.getChannel()) {
+            if (channel.size() < HEADER_BYTES)
+                throw new Exception(corpusPath + " is not a binary corpus");
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            if (buffer.getInt() != MAGIC)
+                throw new Exception(corpusPath + " is not a binary corpus");
+            if (buffer.getInt() != VERSION)
+                throw new Exception("unsupported binary corpus version in " + corpusPath);
+            labeled = buffer.getInt() != 0;
+            lowercase = buffer.getInt() != 0;
+            int mapsLength = buffer.getInt();
+            long position = HEADER_BYTES;
+            int mapsBytes = mapsLength + padding(mapsLength) + 8;
+            if (mapsLength < 0 || position + mapsBytes > channel.size())
+                throw new Exception(corpusPath + " is truncated");
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, mapsBytes);
+            position += mapsBytes;
+            byte[] mapBytes = new byte[mapsLength];
+            buffer.get(mapBytes);
+            ObjectInputStream reader = new ObjectInputStream(new ByteArrayInputStream(mapBytes));
+            maps = (IndexMaps) reader.readObject();
+            reader.close();
+            buffer.position(buffer.position() + padding(mapsLength));
+            sentenceCount = buffer.getInt();
+            tokenCount = buffer.getInt();
+            checkSize(tokenCount, corpusPath);
+            offsets = map(channel, position, sentenceCount + 1, corpusPath);
+            position += 4L * (sentenceCount + 1);
+            projective = map(channel, position, sentenceCount, corpusPath);
+            position += 4L * sentenceCount;
+            columns = new IntBuffer[COLUMNS];
+            for (int c = 0; c < COLUMNS; c++) {
+                columns[c] = map(channel, position, tokenCount, corpusPath);
+                position += 4L * tokenCount;
+            }
+        }
+    }
+
+    /**
+     * Converts a CoNLL file (and its optional Brown cluster file) to a binary corpus.
+     */
+    public static void convert(String conllPath, String clusterFile, boolean labeled, boolean lowercase,
+                               String corpusPath) throws Exception {
+        CompactTreebank treebank = CoNLLReader.createCompactTreebank(conllPath, labeled, lowercase, clusterFile,
+                true, true);
+        ArrayList<GoldConfiguration> data = treebank.toList();
+        ByteArrayOutputStream mapBytes = new ByteArrayOutputStream();
+        ObjectOutputStream mapWriter = new ObjectOutputStream(mapBytes);
+        mapWriter.writeObject(treebank.getMaps());
+        mapWriter.close();
+
+        int tokenCount = treebank.tokenCount();
+        checkSize(tokenCount, conllPath);
+        DataOutputStream writer = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(corpusPath),
+                1 << 16));
+        writer.writeInt(MAGIC);
+        writer.writeInt(VERSION);
+        writer.writeInt(labeled ? 1 : 0);
+        writer.writeInt(lowercase ? 1 : 0);
+        writer.writeInt(mapBytes.size());
+        mapBytes.writeTo(writer);
+        for (int i = 0; i < padding(mapBytes.size()); i++)
+            writer.writeByte(0);
+        writer.writeInt(data.size());
+        writer.writeInt(tokenCount);
+        int offset = 0;
+        writer.writeInt(offset);
+        for (GoldConfiguration configuration : data) {
+            offset += configuration.getSentence().size();
+            writer.writeInt(offset);
+        }
+        for (GoldConfiguration configuration : data)
+            writer.writeInt(configuration.isNonprojective() ? 0 : 1);
+        for (int c = 0; c < COLUMNS; c++) {
+            for (GoldConfiguration configuration : data) {
+                Sentence sentence = configuration.getSentence();
+                for (int i = 0; i < sentence.size(); i++) {
+                    int value;
+                    if (c == 0)
+                        value = sentence.getWords()[i];
+                    else if (c == 1)
+                        value = sentence.getTags()[i];
+                    else if (c == 2)
+                        value = sentence.getBrownCluster4thPrefix()[i];
+                    else if (c == 3)
+                        value = sentence.getBrownCluster6thPrefix()[i];
+                    else if (c == 4)
+                        value = sentence.getBrownClusterFullString()[i];
+                    else if (c == 5)
+                        value = configuration.head(i + 1);
+                    else
+                        value = configuration.label(i + 1);
+                    writer.writeInt(value);
+                }
+            }
+        }
+        writer.close();
+        System.out.println("wrote " + data.size() + " sentences (" + tokenCount + " tokens) to " + corpusPath);
+    }
+
+    /**
+     * Reads a treebank for training or evaluation; binary corpora are mapped, CoNLL files are indexed in one pass.
+     *
+     * @throws Exception if a binary corpus was built with other labeled/lowercase settings than the options
+     */
+    public static Pair<IndexMaps, ArrayList<GoldConfiguration>> readTreebank(String path, Options options)
+            throws Exception {
+        CompactTreebank treebank = readCompactTreebank(path, options);
+        return new Pair<>(treebank.getMaps(), treebank.toList());
+    }
+
+    /**
+     * Same as {@link #readTreebank} but keeps the treebank in columns; non-projective trees are dropped.
+     */
+    public static CompactTreebank readCompactTreebank(String path, Options options) throws Exception {
+        if (!isBinaryCorpus(path))
+            return CoNLLReader.createCompactTreebank(path, options.labeled, options.lowercase, options.clusterFile,
+                    options.rootFirst, false);
+        BinaryCorpus corpus = new BinaryCorpus(path);
+        if (corpus.isLabeled() != options.labeled || corpus.isLowercase() != options.lowercase)
+            throw new Exception(path + " was indexed with labeled=" + corpus.isLabeled() + " and lowercase="
+                    + corpus.isLowercase());
+        return corpus.toCompactTreebank(false, options.rootFirst);
+    }
+
+    /**
+     * @return true if the file starts with the binary corpus header
+     */
+    public static boolean isBinaryCorpus(String path) {
+        try (DataInputStream reader = new DataInputStream(new FileInputStream(path))) {
+            return reader.readInt() == MAGIC;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static int padding(int length) {
+        return (4 - (length & 3)) & 3;
+    }
+
+    /**
+     * @throws Exception if a column of this many tokens does not fit in one mapping
+     */
+    private static void checkSize(int tokenCount, String path) throws Exception {
+        if (tokenCount > MAX_TOKENS)
+            throw new Exception(path + " has " + tokenCount + " tokens; a binary corpus holds at most " + MAX_TOKENS
+                    + " (2 GB per column), so split the treebank or train on the CoNLL file with stream");
+    }
+
+    /**
+     * Maps the ints of one section, which starts at the given byte of the file
+     */
+    private static IntBuffer map(FileChannel channel, long position, int length, String path) throws Exception {
+        if (length < 0 || length > MAX_TOKENS || position + 4L * length > channel.size())
+            throw new Exception(path + " is truncated");
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, 4L * length).asIntBuffer();
+    }
+
+    /**
+     * Builds the gold configurations, the same way {@link CoNLLReader#readData} does for the text file.
+     */
+    public ArrayList<GoldConfiguration> readData(boolean keepNonProjective, boolean rootFirst) {
+        ArrayList<GoldConfiguration> configurationSet = new ArrayList<>(sentenceCount);
+        for (int s = 0; s < sentenceCount; s++) {
+            if (!keepNonProjective && !isProjective(s))
+                continue;
+            configurationSet.add(getConfiguration(s, rootFirst));
+        }
+        return configurationSet;
+    }
+
+    public boolean isProjective(int s) {
+        return projective.get(s) != 0;
+    }
+
+    /**
+     * Copies the mapped columns to the heap.
+     */
+    public CompactTreebank toCompactTreebank(boolean keepNonProjective, boolean rootFirst) {
+        CompactTreebank treebank = new CompactTreebank(maps, rootFirst, true);
+        int[][] sentenceColumns = new int[COLUMNS][0];
+        for (int s = 0; s < sentenceCount; s++) {
+            if (!keepNonProjective && !isProjective(s))
+                continue;
+            int start = offsets.get(s);
+            int size = offsets.get(s + 1) - start;
+            for (int c = 0; c < COLUMNS; c++) {
+                if (sentenceColumns[c].length < size)
+                    sentenceColumns[c] = new int[size];
+                IntBuffer column = columns[c].duplicate();
+                column.position(start);
+                column.get(sentenceColumns[c], 0, size);
+            }
+            treebank.add(sentenceColumns[0], sentenceColumns[1], sentenceColumns[2], sentenceColumns[3],
+                    sentenceColumns[4], sentenceColumns[5], sentenceColumns[6], size);
+        }
+        treebank.trim();
+        return treebank;
+    }
+
+    public GoldConfiguration getConfiguration(int s, boolean rootFirst) {
+        int start = offsets.get(s);
+        int size = offsets.get(s + 1) - start;
+        int fullSize = rootFirst ? size : size + 1;
+        int[][] sentenceColumns = new int[5][fullSize];
+        for (int c = 0; c < 5; c++) {
+            IntBuffer column = columns[c];
+            for (int i = 0; i < size; i++)
+                sentenceColumns[c][i] = column.get(start + i);
+        }
+        int[] heads = new int[size];
+        int[] labels = new int[size];
+        int[] dependents = new int[size];
+        for (int i = 0; i < size; i++) {
+            int head = columns[5].get(start + i);
+            if (head == 0 && !rootFirst)
+                head = size + 1;
+            heads[i] = head;
+            labels[i] = head < 0 ? -1 : columns[6].get(start + i);
+            if (head >= 1 && head <= size)
+                dependents[head - 1]++;
+        }
+        Sentence sentence = new Sentence(sentenceColumns[0], sentenceColumns[1], sentenceColumns[2],
+                sentenceColumns[3], sentenceColumns[4]);
+        return new GoldConfiguration(sentence, heads, labels, dependents, 0, size);
+    }
+
+    public IndexMaps getMaps() {
+        return maps;
+    }
+
+    public boolean isLabeled() {
+        return labeled;
+    }
+
+    public boolean isLowercase() {
+        return lowercase;
+    }
+
+    public int size() {
+        return sentenceCount;
+    }
+
+    public int tokenCount() {
+        return tokenCount;
+    }
+}
@@ -3,7 +3,6 @@ package YaraParser.Accessories;
 import YaraParser.Learning.AveragedPerceptron;
 import YaraParser.Learning.BinaryPerceptron;
 import YaraParser.Structures.CompactArray;
-import YaraParser.Structures.IndexMaps;
 import YaraParser.Structures.InfStruct;
 import YaraParser.Structures.Sentence;
 import YaraParser.TransitionBasedSystem.Configuration.BeamElement;
@@ -55,11 +54,8 @@ public class BinaryModelEvaluator {
         ExecutorService executor = Executors.newFixedThreadPool(options.numOfThreads);
         CompletionService<ArrayList<BeamElement>> pool = new ExecutorCompletionService<>(
                 executor);
-        CoNLLReader goldReader = new CoNLLReader(options.devPath);
-        IndexMaps maps = CoNLLReader.createIndices(options.devPath, options.labeled, options.lowercase,
-                options.clusterFile);
-        ArrayList<GoldConfiguration> trainData = goldReader.readData(Integer.MAX_VALUE, false, options.labeled,
-                options.rootFirst, options.lowercase, maps);
+        String devPath = options.devCorpus.length() > 0 ? options.devCorpus : options.devPath;
+        ArrayList<GoldConfiguration> trainData = BinaryCorpus.readTreebank(devPath, options).second;
         long start = System.currentTimeMillis();
         System.out.println("### BinaryModelEvaluator:");
         int dataCount = 0;
@@ -239,8 +235,6 @@ public class BinaryModelEvaluator {
         Configuration bestScoringOracle = null;
         int top = -1;
         int first = -1;
-        HashMap<Integer, Pair<Integer, Integer>> goldDependencies = goldConfiguration.getGoldDependencies();
-        HashMap<Integer, HashSet<Integer>> reversedDependencies = goldConfiguration.getReversedDependencies();
         for (Configuration configuration : oracles.keySet()) {
             State state = configuration.state;
             Object[] features = FeatureExtractor.extractAllParseFeatures(configuration, featureLength);
@@ -250,23 +244,23 @@ public class BinaryModelEvaluator {
                 first = state.bufferHead();
             if (configuration.state.isNotTerminalState()) {
                 Configuration newConfig = configuration.clone();
-                if (first > 0 && goldDependencies.containsKey(first) && goldDependencies.get(first).first == top) {
-                    int dependency = goldDependencies.get(first).second;
+                if (first > 0 && goldConfiguration.hasHead(first) && goldConfiguration.head(first) == top) {
+                    int dependency = goldConfiguration.label(first);
                     float[] scores = classifier.rightArcScores(features, true);
                     float score = scores[dependency];
                     ArcEager.rightArc(newConfig.state, dependency);
                     newConfig.addAction(3 + dependency);
                     newConfig.addScore(score);
-                } else if (top > 0 && goldDependencies.containsKey(top) && goldDependencies.get(top).first == first) {
-                    int dependency = goldDependencies.get(top).second;
+                } else if (top > 0 && goldConfiguration.hasHead(top) && goldConfiguration.head(top) == first) {
+                    int dependency = goldConfiguration.label(top);
                     float[] scores = classifier.leftArcScores(features, true);
                     float score = scores[dependency];
                     ArcEager.leftArc(newConfig.state, dependency);
                     newConfig.addAction(3 + dependencyRelations.size() + dependency);
                     newConfig.addScore(score);
                 } else if (top >= 0 && state.hasHead(top)) {
-                    if (reversedDependencies.containsKey(top)) {
-                        if (reversedDependencies.get(top).size() == state.valence(top)) {
+                    if (goldConfiguration.dependentCount(top) > 0) {
+                        if (goldConfiguration.dependentCount(top) == state.valence(top)) {
                             float score = classifier.reduceScore(features, true);
                             ArcEager.reduce(newConfig.state);
                             newConfig.addAction(1);
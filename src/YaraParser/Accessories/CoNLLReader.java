@@ -9,13 +9,19 @@ import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.TreeSet;
 
 public class CoNLLReader {
     /**
      * An object for reading the CoNLL file
      */
     private BufferedReader fileReader;
+    /**
+     * set when {@link #readData} has read the last line of the file
+     */
+    private boolean endOfFile;
 
     /**
      * Initializes the file reader
@@ -28,96 +34,292 @@ public class CoNLLReader {
     }
 
     public static IndexMaps createIndices(String filePath, boolean labeled, boolean lowercased, String clusterFile) throws Exception {
+        return scanTreebank(filePath, labeled, lowercased, clusterFile, false, false, false).maps;
+    }
+
+    /**
+     * Same as {@link #createIndices} but also returns the number of sentences in the file.
+     */
+    public static Pair<IndexMaps, Integer> createIndicesAndCount(String filePath, boolean labeled, boolean lowercased,
+                                                                 String clusterFile) throws Exception {
+        TreebankScan scan = scanTreebank(filePath, labeled, lowercased, clusterFile, false, false, false);
+        return new Pair<>(scan.maps, scan.sentenceCount);
+    }
+
+    /**
+     * Builds the vocabularies and reads the gold configurations in a single pass over the treebank. The ids are
+     * assigned after the pass, so they are exactly the same as the ones from {@link #createIndices} followed by
+     * {@link #readData}: labels first, then POS tags, Brown clusters and words.
+     *
+     * @param keepNonProjective if false, non-projective trees are dropped
+     * @return the index maps and the gold configurations of the treebank
+     */
+    public static Pair<IndexMaps, ArrayList<GoldConfiguration>> createIndicesAndReadData(String filePath,
+                                                                                        boolean labeled,
+                                                                                        boolean lowercased,
+                                                                                        String clusterFile,
+                                                                                        boolean rootFirst,
+                                                                                        boolean keepNonProjective)
+            throws Exception {
+        CompactTreebank treebank = createCompactTreebank(filePath, labeled, lowercased, clusterFile, rootFirst,
+                keepNonProjective);
+        return new Pair<>(treebank.getMaps(), treebank.toList());
+    }
+
+    /**
+     * Same as {@link #createIndicesAndReadData} but keeps the treebank in columns instead of one object graph per
+     * sentence.
+     */
+    public static CompactTreebank createCompactTreebank(String filePath, boolean labeled, boolean lowercased,
+                                                        String clusterFile, boolean rootFirst,
+                                                        boolean keepNonProjective) throws Exception {
+        return scanTreebank(filePath, labeled, lowercased, clusterFile, rootFirst, keepNonProjective, true).treebank;
+    }
+
+    private static class TreebankScan {
+        IndexMaps maps;
+        int sentenceCount;
+        /**
+         * null if only the vocabularies were built
+         */
+        CompactTreebank treebank;
+    }
+
+    /**
+     * @param keepData if false, only the vocabularies are built
+     */
+    private static TreebankScan scanTreebank(String filePath, boolean labeled, boolean lowercased,
+                                             String clusterFile, boolean rootFirst, boolean keepNonProjective,
+                                             boolean keepData)
+            throws Exception {
+        int sentenceCount = 0;
+        HashMap<String, Integer> labelIds = new HashMap<>();
+        HashMap<String, Integer> posIds = new HashMap<>();
+        HashMap<String, Integer> wordIds = new HashMap<>();
+        ArrayList<String> labelList = new ArrayList<>();
+        ArrayList<String> posList = new ArrayList<>();
+        ArrayList<String> wordList = new ArrayList<>();
+        ArrayList<int[][]> rawSentences = new ArrayList<>();
+        String rootString = "ROOT";
+
+        /*
+          Columns of the current sentence with vocabulary-local ids: index, word, tag, head, label.
+          The label column is -1 when there is no head and -2 for the root relation.
+         */
+        int[][] columns = new int[5][16];
+        int length = 0;
+        String[] fields = new String[8];
+        BufferedReader reader = new BufferedReader(new FileReader(filePath));
+        String line;
+        while (true) {
+            line = reader.readLine();
+            if (line == null || line.trim().length() == 0) {
+                if (length > 0)
+                    sentenceCount++;
+                if (keepData && length > 0) {
+                    int[][] sentence = new int[5][];
+                    for (int c = 0; c < 5; c++)
+                        sentence[c] = Arrays.copyOf(columns[c], length);
+                    rawSentences.add(sentence);
+                }
+                length = 0;
+                if (line == null)
+                    break;
+                continue;
+            }
+            if (splitFields(line.trim(), fields) < 8) {
+                if (keepData)
+                    throw new Exception("wrong file format");
+                continue;
+            }
+            String word = fields[1].trim();
+            if (lowercased)
+                word = word.toLowerCase();
+            String pos = fields[3].trim();
+            int head = Integer.parseInt(fields[6]);
+            String label = fields[7];
+            if (head == 0)
+                rootString = label;
+            if (label.equals("_"))
+                label = "-";
+            if (!labeled)
+                label = "~";
+            int li = localId(label, labelIds, labelList);
+            int pi = localId(pos, posIds, posList);
+            int wi = localId(word, wordIds, wordList);
+            if (!keepData) {
+                length++;
+                continue;
+            }
+            if (length == columns[0].length) {
+                for (int c = 0; c < 5; c++)
+                    columns[c] = Arrays.copyOf(columns[c], 2 * length);
+            }
+            columns[0][length] = Integer.parseInt(fields[0]);
+            columns[1][length] = wi;
+            columns[2][length] = pi;
+            columns[3][length] = head;
+            columns[4][length] = head == 0 ? -2 : (head == -1 ? -1 : li);
+            length++;
+        }
+        reader.close();
+
         HashMap<String, Integer> wordMap = new HashMap<>();
         HashMap<Integer, Integer> labels = new HashMap<>();
         HashMap<String, Integer> clusterMap = new HashMap<>();
         HashMap<Integer, Integer> cluster4Map = new HashMap<>();
         HashMap<Integer, Integer> cluster6Map = new HashMap<>();
         int labelCount = 1;
-        String rootString = "ROOT";
         int wi = 1;
         wordMap.put("ROOT", 0);
         labels.put(0, 0);
-        BufferedReader reader = new BufferedReader(new FileReader(filePath));
-        String line;
-        while ((line = reader.readLine()) != null) {
-            String[] spl = line.trim().split("\t");
-            if (spl.length > 7) {
-                String label = spl[7];
-                int head = Integer.parseInt(spl[6]);
-                if (head == 0)
-                    rootString = label;
-                if (label.equals("_"))
-                    label = "-";
-                if (!labeled)
-                    label = "~";
-                if (!wordMap.containsKey(label)) {
-                    labels.put(wi, labelCount++);
-                    wordMap.put(label, wi++);
-                }
+        for (String label : labelList) {
+            if (!wordMap.containsKey(label)) {
+                labels.put(wi, labelCount++);
+                wordMap.put(label, wi++);
             }
         }
-        reader = new BufferedReader(new FileReader(filePath));
-        while ((line = reader.readLine()) != null) {
-            String[] spl = line.trim().split("\t");
-            if (spl.length > 7) {
-                String pos = spl[3];
-                if (!wordMap.containsKey(pos)) {
-                    wordMap.put(pos, wi++);
-                }
-            }
+        for (String pos : posList) {
+            if (!wordMap.containsKey(pos))
+                wordMap.put(pos, wi++);
         }
-        if (clusterFile.length() > 0) {
-            reader = new BufferedReader(new FileReader(clusterFile));
-            while ((line = reader.readLine()) != null) {
-                String[] spl = line.trim().split("\t");
-                if (spl.length > 2) {
-                    String cluster = spl[0];
-                    String word = spl[1];
-                    String prefix4 = cluster.substring(0, Math.min(4, cluster.length()));
-                    String prefix6 = cluster.substring(0, Math.min(6, cluster.length()));
-                    int clusterNum = wi;
-                    if (!wordMap.containsKey(cluster)) {
-                        clusterMap.put(word, wi);
-                        wordMap.put(cluster, wi++);
-                    } else {
-                        clusterNum = wordMap.get(cluster);
-                        clusterMap.put(word, clusterNum);
-                    }
-                    int pref4Id = wi;
-                    if (!wordMap.containsKey(prefix4)) {
-                        wordMap.put(prefix4, wi++);
-                    } else {
-                        pref4Id = wordMap.get(prefix4);
-                    }
-                    int pref6Id = wi;
-                    if (!wordMap.containsKey(prefix6)) {
-                        wordMap.put(prefix6, wi++);
-                    } else {
-                        pref6Id = wordMap.get(prefix6);
-                    }
-                    cluster4Map.put(clusterNum, pref4Id);
-                    cluster6Map.put(clusterNum, pref6Id);
-                }
+        wi = readClusters(clusterFile, wordMap, clusterMap, cluster4Map, cluster6Map, wi);
+        for (String word : wordList) {
+            if (!wordMap.containsKey(word))
+                wordMap.put(word, wi++);
+        }
+        // a tag that is also a label shares its id
+        TreeSet<Integer> tagIds = new TreeSet<>();
+        for (String pos : posList)
+            tagIds.add(wordMap.get(pos));
+        int[] tags = new int[tagIds.size()];
+        int t = 0;
+        for (int id : tagIds)
+            tags[t++] = id;
+        TreebankScan scan = new TreebankScan();
+        scan.maps = new IndexMaps(wordMap, labels, rootString, cluster4Map, cluster6Map, clusterMap, tags);
+        scan.sentenceCount = sentenceCount;
+        if (!keepData)
+            return scan;
+
+        int[] labelMap = globalIds(labelList, wordMap);
+        int[] posMap = globalIds(posList, wordMap);
+        int[] wordMapping = globalIds(wordList, wordMap);
+        int[][] clusterIds = new int[wordList.size()][];
+        for (int w = 0; w < wordList.size(); w++)
+            clusterIds[w] = scan.maps.clusterId(wordList.get(w));
+
+        scan.treebank = new CompactTreebank(scan.maps, rootFirst, keepNonProjective);
+        int[][] sentence = new int[7][16];
+        for (int s = 0; s < rawSentences.size(); s++) {
+            int[][] raw = rawSentences.get(s);
+            rawSentences.set(s, null);
+            int size = raw[0].length;
+            if (size > sentence[0].length) {
+                for (int c = 0; c < 7; c++)
+                    sentence[c] = new int[size];
+            }
+            for (int i = 0; i < size; i++) {
+                int w = raw[1][i];
+                sentence[0][i] = wordMapping[w];
+                sentence[1][i] = posMap[raw[2][i]];
+                sentence[2][i] = clusterIds[w][1];
+                sentence[3][i] = clusterIds[w][2];
+                sentence[4][i] = clusterIds[w][0];
+                sentence[5][i] = raw[3][i];
+                sentence[6][i] = raw[4][i] < 0 ? (raw[4][i] == -2 ? 0 : -1) : labelMap[raw[4][i]];
             }
+            scan.treebank.add(sentence[0], sentence[1], sentence[2], sentence[3], sentence[4], sentence[5],
+                    sentence[6], size);
         }
-        reader = new BufferedReader(new FileReader(filePath));
+        scan.treebank.trim();
+        return scan;
+    }
+
+    private static int readClusters(String clusterFile, HashMap<String, Integer> wordMap,
+                                    HashMap<String, Integer> clusterMap, HashMap<Integer, Integer> cluster4Map,
+                                    HashMap<Integer, Integer> cluster6Map, int wi) throws Exception {
+        if (clusterFile.length() == 0)
+            return wi;
+        BufferedReader reader = new BufferedReader(new FileReader(clusterFile));
+        String line;
         while ((line = reader.readLine()) != null) {
             String[] spl = line.trim().split("\t");
-            if (spl.length > 7) {
+            if (spl.length > 2) {
+                String cluster = spl[0];
                 String word = spl[1];
-                if (lowercased)
-                    word = word.toLowerCase();
-                if (!wordMap.containsKey(word)) {
-                    wordMap.put(word, wi++);
+                String prefix4 = cluster.substring(0, Math.min(4, cluster.length()));
+                String prefix6 = cluster.substring(0, Math.min(6, cluster.length()));
+                int clusterNum = wi;
+                if (!wordMap.containsKey(cluster)) {
+                    clusterMap.put(word, wi);
+                    wordMap.put(cluster, wi++);
+                } else {
+                    clusterNum = wordMap.get(cluster);
+                    clusterMap.put(word, clusterNum);
                 }
+                int pref4Id = wi;
+                if (!wordMap.containsKey(prefix4)) {
+                    wordMap.put(prefix4, wi++);
+                } else {
+                    pref4Id = wordMap.get(prefix4);
+                }
+                int pref6Id = wi;
+                if (!wordMap.containsKey(prefix6)) {
+                    wordMap.put(prefix6, wi++);
+                } else {
+                    pref6Id = wordMap.get(prefix6);
+                }
+                cluster4Map.put(clusterNum, pref4Id);
+                cluster6Map.put(clusterNum, pref6Id);
             }
         }
-        return new IndexMaps(wordMap, labels, rootString, cluster4Map, cluster6Map, clusterMap);
+        reader.close();
+        return wi;
+    }
+
+    private static int localId(String key, HashMap<String, Integer> ids, ArrayList<String> list) {
+        Integer id = ids.get(key);
+        if (id == null) {
+            id = list.size();
+            ids.put(key, id);
+            list.add(key);
+        }
+        return id;
+    }
+
+    private static int[] globalIds(ArrayList<String> list, HashMap<String, Integer> wordMap) {
+        int[] ids = new int[list.size()];
+        for (int i = 0; i < ids.length; i++)
+            ids[i] = wordMap.get(list.get(i));
+        return ids;
     }
 
     /**
-     * @param limit it is used if we want to read part of the data
+     * Splits a tab-separated line into the first fields.length columns without allocating a new array.
+     *
+     * @return the number of columns found, at most fields.length
+     */
+    private static int splitFields(String line, String[] fields) {
+        int count = 0;
+        int start = 0;
+        while (count < fields.length) {
+            int end = line.indexOf('\t', start);
+            if (end < 0) {
+                fields[count++] = line.substring(start);
+                break;
+            }
+            fields[count++] = line.substring(start, end);
+            start = end + 1;
+        }
+        return count;
+    }
+
+    /**
+     * Reads the next sentences of the file; call it again for the ones after them, until {@link #isEndOfFile}.
+     *
+     * @param limit it is used if we want to read part of the data; the dropped non-projective trees count too, so
+     *              the result can be empty before the end of the file
      * @return an array of configurations
      */
     public ArrayList<GoldConfiguration> readData(int limit, boolean keepNonProjective, boolean labeled,
@@ -132,9 +334,14 @@ public class CoNLLReader {
         ArrayList<Integer> clusterIds = new ArrayList<>();
         HashMap<Integer, Pair<Integer, Integer>> goldDependencies = new HashMap<>();
         int sentenceCounter = 0;
-        while ((line = fileReader.readLine()) != null) {
-            line = line.trim();
-            if (line.length() == 0) {
+        while (true) {
+            line = fileReader.readLine();
+            if (line != null)
+                line = line.trim();
+            else
+                endOfFile = true;
+            // the end of the file ends the last sentence like an empty line
+            if (line == null || line.length() == 0) {
                 if (tokens.size() >= 1) {
                     sentenceCounter++;
                     if (!rootFirst) {
@@ -152,24 +359,15 @@ public class CoNLLReader {
                     GoldConfiguration goldConfiguration = new GoldConfiguration(currentSentence, goldDependencies);
                     if (keepNonProjective || !goldConfiguration.isNonprojective())
                         configurationSet.add(goldConfiguration);
-                    goldDependencies = new HashMap<>();
-                    tokens = new ArrayList<>();
-                    tags = new ArrayList<>();
-                    cluster4Ids = new ArrayList<>();
-                    cluster6Ids = new ArrayList<>();
-                    clusterIds = new ArrayList<>();
-                } else {
-                    goldDependencies = new HashMap<>();
-                    tokens = new ArrayList<>();
-                    tags = new ArrayList<>();
-                    cluster4Ids = new ArrayList<>();
-                    cluster6Ids = new ArrayList<>();
-                    clusterIds = new ArrayList<>();
                 }
-                if (sentenceCounter >= limit) {
-                    System.out.println("buffer full..." + configurationSet.size());
+                goldDependencies = new HashMap<>();
+                tokens = new ArrayList<>();
+                tags = new ArrayList<>();
+                cluster4Ids = new ArrayList<>();
+                cluster6Ids = new ArrayList<>();
+                clusterIds = new ArrayList<>();
+                if (line == null || sentenceCounter >= limit)
                     break;
-                }
             } else {
                 String[] splitLine = line.split("\t");
                 if (splitLine.length < 8)
@@ -208,24 +406,13 @@ public class CoNLLReader {
                     goldDependencies.put(wordIndex, new Pair<>(headIndex, ri));
             }
         }
-        if (tokens.size() > 0) {
-            if (!rootFirst) {
-                for (int gold : goldDependencies.keySet()) {
-                    if (goldDependencies.get(gold).first.equals(0))
-                        goldDependencies.get(gold).setFirst(goldDependencies.size() + 1);
-                }
-                tokens.add(0);
-                tags.add(0);
-                cluster4Ids.add(0);
-                cluster6Ids.add(0);
-                clusterIds.add(0);
-            }
-            Sentence currentSentence = new Sentence(tokens, tags, cluster4Ids, cluster6Ids, clusterIds);
-            configurationSet.add(new GoldConfiguration(currentSentence, goldDependencies));
-        }
         return configurationSet;
     }
 
+    public boolean isEndOfFile() {
+        return endOfFile;
+    }
+
     ArrayList<CompactTree> readStringData() throws Exception {
         ArrayList<CompactTree> treeSet = new ArrayList<>();
         String line;
@@ -0,0 +1,244 @@
+package YaraParser.Accessories;
+
+import YaraParser.Structures.IndexMaps;
+import YaraParser.Structures.Sentence;
+import YaraParser.TransitionBasedSystem.Configuration.GoldConfiguration;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An in-memory treebank stored column by column: one int array per column for the tokens of all sentences, plus
+ * the sentence offsets. The gold configurations it hands out are views on the head, label and dependent-count
+ * columns; their sentences are short-lived copies of the word and tag columns, so the heap only holds the columns
+ * between two visits of a sentence.
+ * <p/>
+ * The Brown cluster columns are only kept if the maps have clusters; otherwise all sentences of the same size
+ * share one cluster array.
+ */
+public class CompactTreebank implements Iterable<GoldConfiguration> {
+    private final IndexMaps maps;
+    private final boolean rootFirst;
+    private final boolean keepNonProjective;
+    private final boolean hasClusters;
+
+    private int sentenceCount;
+    private int tokenCount;
+    private int[] offsets;
+    private int[] words;
+    private int[] tags;
+    private int[] brownCluster4thPrefix;
+    private int[] brownCluster6thPrefix;
+    private int[] brownClusterFullString;
+    /**
+     * gold heads, already moved to size+1 for the root if the root is not first; -1 for no head
+     */
+    private int[] heads;
+    private int[] labels;
+    /**
+     * number of gold dependents of each token
+     */
+    private int[] dependents;
+    /**
+     * cluster arrays of the sentences without cluster columns, by sentence size
+     */
+    private int[][] noClusters;
+
+    /**
+     * @param keepNonProjective if false, {@link #add} drops non-projective trees
+     */
+    public CompactTreebank(IndexMaps maps, boolean rootFirst, boolean keepNonProjective) {
+        this.maps = maps;
+        this.rootFirst = rootFirst;
+        this.keepNonProjective = keepNonProjective;
+        hasClusters = maps.hasClusters();
+        offsets = new int[1024];
+        int capacity = 16 * 1024;
+        words = new int[capacity];
+        tags = new int[capacity];
+        if (hasClusters) {
+            brownCluster4thPrefix = new int[capacity];
+            brownCluster6thPrefix = new int[capacity];
+            brownClusterFullString = new int[capacity];
+        }
+        heads = new int[capacity];
+        labels = new int[capacity];
+        dependents = new int[capacity];
+        noClusters = new int[0][];
+    }
+
+    /**
+     * Appends the first length tokens of the given columns as a sentence. Heads are CoNLL heads: 0 for the root and
+     * -1 for no head. The cluster columns are ignored if the maps do not have clusters.
+     *
+     * @return false if the tree was dropped for being non-projective
+     */
+    public boolean add(int[] words, int[] tags, int[] brownCluster4thPrefix, int[] brownCluster6thPrefix,
+                       int[] brownClusterFullString, int[] heads, int[] labels, int length) {
+        ensureCapacity(sentenceCount + 2, tokenCount + length);
+        int start = tokenCount;
+        System.arraycopy(words, 0, this.words, start, length);
+        System.arraycopy(tags, 0, this.tags, start, length);
+        if (hasClusters) {
+            System.arraycopy(brownCluster4thPrefix, 0, this.brownCluster4thPrefix, start, length);
+            System.arraycopy(brownCluster6thPrefix, 0, this.brownCluster6thPrefix, start, length);
+            System.arraycopy(brownClusterFullString, 0, this.brownClusterFullString, start, length);
+        }
+        Arrays.fill(dependents, start, start + length, 0);
+        for (int i = 0; i < length; i++) {
+            int head = heads[i];
+            if (head == 0 && !rootFirst)
+                head = length + 1;
+            this.heads[start + i] = head;
+            this.labels[start + i] = head < 0 ? -1 : labels[i];
+            if (head >= 1 && head <= length)
+                dependents[start + head - 1]++;
+        }
+        offsets[sentenceCount + 1] = start + length;
+        if (!keepNonProjective && configuration(start, length).isNonprojective())
+            return false;
+        sentenceCount++;
+        tokenCount += length;
+        return true;
+    }
+
+    private void ensureCapacity(int sentences, int tokens) {
+        if (sentences > offsets.length)
+            offsets = Arrays.copyOf(offsets, Math.max(sentences, 2 * offsets.length));
+        if (tokens > words.length) {
+            int capacity = Math.max(tokens, 2 * words.length);
+            words = Arrays.copyOf(words, capacity);
+            tags = Arrays.copyOf(tags, capacity);
+            if (hasClusters) {
+                brownCluster4thPrefix = Arrays.copyOf(brownCluster4thPrefix, capacity);
+                brownCluster6thPrefix = Arrays.copyOf(brownCluster6thPrefix, capacity);
+                brownClusterFullString = Arrays.copyOf(brownClusterFullString, capacity);
+            }
+            heads = Arrays.copyOf(heads, capacity);
+            labels = Arrays.copyOf(labels, capacity);
+            dependents = Arrays.copyOf(dependents, capacity);
+        }
+    }
+
+    /**
+     * Shrinks the columns to their used size; call once after the last {@link #add}.
+     */
+    public void trim() {
+        offsets = Arrays.copyOf(offsets, sentenceCount + 1);
+        words = Arrays.copyOf(words, tokenCount);
+        tags = Arrays.copyOf(tags, tokenCount);
+        if (hasClusters) {
+            brownCluster4thPrefix = Arrays.copyOf(brownCluster4thPrefix, tokenCount);
+            brownCluster6thPrefix = Arrays.copyOf(brownCluster6thPrefix, tokenCount);
+            brownClusterFullString = Arrays.copyOf(brownClusterFullString, tokenCount);
+        }
+        heads = Arrays.copyOf(heads, tokenCount);
+        labels = Arrays.copyOf(labels, tokenCount);
+        dependents = Arrays.copyOf(dependents, tokenCount);
+    }
+
+    public GoldConfiguration get(int s) {
+        if (s < 0 || s >= sentenceCount)
+            throw new IndexOutOfBoundsException("sentence " + s + " of " + sentenceCount);
+        int start = offsets[s];
+        return configuration(start, offsets[s + 1] - start);
+    }
+
+    private GoldConfiguration configuration(int start, int length) {
+        int size = rootFirst ? length : length + 1;
+        int[] sentenceWords = Arrays.copyOfRange(words, start, start + size);
+        int[] sentenceTags = Arrays.copyOfRange(tags, start, start + size);
+        int[] bc4;
+        int[] bc6;
+        int[] bcf;
+        if (!rootFirst) {
+            sentenceWords[length] = 0;
+            sentenceTags[length] = 0;
+        }
+        if (hasClusters) {
+            bc4 = Arrays.copyOfRange(brownCluster4thPrefix, start, start + size);
+            bc6 = Arrays.copyOfRange(brownCluster6thPrefix, start, start + size);
+            bcf = Arrays.copyOfRange(brownClusterFullString, start, start + size);
+            if (!rootFirst) {
+                bc4[length] = 0;
+                bc6[length] = 0;
+                bcf[length] = 0;
+            }
+        } else {
+            bc4 = bc6 = bcf = noClusters(size);
+        }
+        Sentence sentence = new Sentence(sentenceWords, sentenceTags, bc4, bc6, bcf);
+        return new GoldConfiguration(sentence, heads, labels, dependents, start, length);
+    }
+
+    /**
+     * The arrays are shared by all sentences of the same size and are never written after they are created.
+     */
+    private synchronized int[] noClusters(int size) {
+        if (size >= noClusters.length)
+            noClusters = Arrays.copyOf(noClusters, Math.max(size + 1, 2 * noClusters.length));
+        if (noClusters[size] == null) {
+            int[] clusters = new int[size];
+            Arrays.fill(clusters, -100);
+            if (!rootFirst && size > 0)
+                clusters[size - 1] = 0;
+            noClusters[size] = clusters;
+        }
+        return noClusters[size];
+    }
+
+    /**
+     * @return the sentences as a list of views on this treebank
+     */
+    public ArrayList<GoldConfiguration> toList() {
+        ArrayList<GoldConfiguration> configurationSet = new ArrayList<>(sentenceCount);
+        for (GoldConfiguration configuration : this)
+            configurationSet.add(configuration);
+        return configurationSet;
+    }
+
+    @Override
+    public Iterator<GoldConfiguration> iterator() {
+        return new Iterator<GoldConfiguration>() {
+            private int sentence = 0;
+
+            @Override
+            public boolean hasNext() {
+                return sentence < sentenceCount;
+            }
+
+            @Override
+            public GoldConfiguration next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return get(sentence++);
+            }
+        };
+    }
+
+    public IndexMaps getMaps() {
+        return maps;
+    }
+
+    public int size() {
+        return sentenceCount;
+    }
+
+    public int tokenCount() {
+        return tokenCount;
+    }
+
+    /**
+     * @return approximate number of bytes held by the columns
+     */
+    public long columnBytes() {
+        long bytes = 4L * offsets.length;
+        bytes += 4L * (words.length + tags.length + heads.length + labels.length + dependents.length);
+        if (hasClusters)
+            bytes += 4L * (brownCluster4thPrefix.length + brownCluster6thPrefix.length
+                    + brownClusterFullString.length);
+        return bytes;
+    }
+}
@@ -0,0 +1,280 @@
+package YaraParser.Accessories;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Counters, gauges and histograms of the parser and the trainer, kept for the life of the JVM and written in the
+ * Prometheus text format by {@link #prometheus()}: the parse server answers GET /metrics with it, and
+ * {@code -metrics [file]} writes it to a file at the end of any command (and after every training epoch).
+ * <p/>
+ * A metric is a name, optionally with label pairs, e.g. {@code counter("yara_training_updates_total", help,
+ * "classifier", "binary")}. Asking for the same name and labels again gives the same metric, so the classes that
+ * record them keep it in a static field and the hot path never looks anything up; counting is a {@link LongAdder}
+ * increment and allocates nothing. {@link #get} reads a metric by name, e.g. in tests.
+ */
+public class Metrics {
+    private static final String COUNTER = "counter";
+    private static final String GAUGE = "gauge";
+    private static final String HISTOGRAM = "histogram";
+
+    /**
+     * metric families by name, in the order they were first asked for
+     */
+    private static final LinkedHashMap<String, Family> families = new LinkedHashMap<>();
+
+    private static class Family {
+        final String name;
+        final String help;
+        final String type;
+        /**
+         * metrics by their label string, e.g. {classifier="binary"}, or "" without labels
+         */
+        final LinkedHashMap<String, Object> series;
+
+        Family(String name, String help, String type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+            series = new LinkedHashMap<>();
+        }
+    }
+
+    public static class Counter {
+        private final LongAdder value = new LongAdder();
+
+        public void increment() {
+            value.increment();
+        }
+
+        public void add(long amount) {
+            value.add(amount);
+        }
+
+        public long get() {
+            return value.sum();
+        }
+    }
+
+    /**
+     * A value that is set, or read from a supplier when the metrics are written
+     */
+    public static class Gauge {
+        private volatile double value;
+        private volatile DoubleSupplier supplier;
+
+        public void set(double value) {
+            this.value = value;
+        }
+
+        public double get() {
+            DoubleSupplier current = supplier;
+            return current == null ? value : current.getAsDouble();
+        }
+    }
+
+    /**
+     * Counts the observed values in buckets with fixed upper bounds
+     */
+    public static class Histogram {
+        private final double[] bounds;
+        /**
+         * one more than the bounds, for the values above the last bound
+         */
+        private final LongAdder[] counts;
+        private final DoubleAdder sum;
+
+        Histogram(double[] bounds) {
+            this.bounds = bounds.clone();
+            counts = new LongAdder[bounds.length + 1];
+            for (int b = 0; b < counts.length; b++)
+                counts[b] = new LongAdder();
+            sum = new DoubleAdder();
+        }
+
+        public void observe(double value) {
+            int bucket = 0;
+            while (bucket < bounds.length && value > bounds[bucket])
+                bucket++;
+            counts[bucket].increment();
+            sum.add(value);
+        }
+
+        public long count() {
+            long count = 0;
+            for (LongAdder bucket : counts)
+                count += bucket.sum();
+            return count;
+        }
+
+        public double sum() {
+            return sum.sum();
+        }
+
+        public double[] bounds() {
+            return bounds.clone();
+        }
+
+        /**
+         * @return the number of values up to each bound, and the number of all values last
+         */
+        public long[] cumulativeCounts() {
+            long[] cumulative = new long[counts.length];
+            long count = 0;
+            for (int b = 0; b < counts.length; b++) {
+                count += counts[b].sum();
+                cumulative[b] = count;
+            }
+            return cumulative;
+        }
+    }
+
+    /**
+     * @param labels label names and values, alternating
+     */
+    public static Counter counter(String name, String help, String... labels) {
+        return (Counter) series(name, help, COUNTER, labels, null);
+    }
+
+    public static Gauge gauge(String name, String help, String... labels) {
+        return (Gauge) series(name, help, GAUGE, labels, null);
+    }
+
+    /**
+     * A gauge that reads its value from the supplier, e.g. the length of a queue; it replaces the supplier of the
+     * same gauge, if any.
+     */
+    public static Gauge gauge(String name, String help, DoubleSupplier supplier, String... labels) {
+        Gauge gauge = gauge(name, help, labels);
+        gauge.supplier = supplier;
+        return gauge;
+    }
+
+    /**
+     * @param bounds upper bounds of the buckets, in increasing order; only used when the histogram is created
+     */
+    public static Histogram histogram(String name, String help, double[] bounds, String... labels) {
+        return (Histogram) series(name, help, HISTOGRAM, labels, bounds);
+    }
+
+    /**
+     * @return the {@link Counter}, {@link Gauge} or {@link Histogram} with this name and labels, or null if nothing
+     * has recorded it
+     */
+    public static Object get(String name, String... labels) {
+        synchronized (families) {
+            Family family = families.get(name);
+            return family == null ? null : family.series.get(labelString(labels));
+        }
+    }
+
+    private static Object series(String name, String help, String type, String[] labels, double[] bounds) {
+        if (labels.length % 2 != 0)
+            throw new IllegalArgumentException("the labels of " + name + " are not name-value pairs");
+        synchronized (families) {
+            Family family = families.get(name);
+            if (family == null) {
+                family = new Family(name, help, type);
+                families.put(name, family);
+            } else if (!family.type.equals(type)) {
+                throw new IllegalArgumentException(name + " is a " + family.type + ", not a " + type);
+            }
+            String key = labelString(labels);
+            Object metric = family.series.get(key);
+            if (metric == null) {
+                metric = type.equals(COUNTER) ? new Counter() : type.equals(GAUGE) ? new Gauge() :
+                        new Histogram(bounds);
+                family.series.put(key, metric);
+            }
+            return metric;
+        }
+    }
+
+    private static String labelString(String[] labels) {
+        if (labels.length == 0)
+            return "";
+        StringBuilder output = new StringBuilder("{");
+        for (int l = 0; l < labels.length; l += 2) {
+            output.append(l == 0 ? "" : ",").append(labels[l]).append("=\"")
+                    .append(labels[l + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+                    .append("\"");
+        }
+        return output.append("}").toString();
+    }
+
+    /**
+     * @return all metrics in the Prometheus text format (version 0.0.4)
+     */
+    public static String prometheus() {
+        StringBuilder output = new StringBuilder();
+        ArrayList<Family> snapshot;
+        synchronized (families) {
+            snapshot = new ArrayList<>(families.values());
+        }
+        for (Family family : snapshot) {
+            ArrayList<String> keys;
+            ArrayList<Object> metrics;
+            synchronized (families) {
+                keys = new ArrayList<>(family.series.keySet());
+                metrics = new ArrayList<>(family.series.values());
+            }
+            output.append("# HELP ").append(family.name).append(" ")
+                    .append(family.help.replace("\\", "\\\\").replace("\n", "\\n")).append("\n");
+            output.append("# TYPE ").append(family.name).append(" ").append(family.type).append("\n");
+            for (int s = 0; s < keys.size(); s++) {
+                String labels = keys.get(s);
+                Object metric = metrics.get(s);
+                if (metric instanceof Counter) {
+                    output.append(family.name).append(labels).append(" ").append(((Counter) metric).get())
+                            .append("\n");
+                } else if (metric instanceof Gauge) {
+                    output.append(family.name).append(labels).append(" ").append(number(((Gauge) metric).get()))
+                            .append("\n");
+                } else {
+                    Histogram histogram = (Histogram) metric;
+                    long[] cumulative = histogram.cumulativeCounts();
+                    // the bucket label goes after the other labels
+                    String prefix = labels.length() == 0 ? "{" : labels.substring(0, labels.length() - 1) + ",";
+                    for (int b = 0; b < cumulative.length; b++) {
+                        String bound = b < histogram.bounds.length ? number(histogram.bounds[b]) : "+Inf";
+                        output.append(family.name).append("_bucket").append(prefix).append("le=\"").append(bound)
+                                .append("\"} ").append(cumulative[b]).append("\n");
+                    }
+                    output.append(family.name).append("_sum").append(labels).append(" ")
+                            .append(number(histogram.sum())).append("\n");
+                    output.append(family.name).append("_count").append(labels).append(" ")
+                            .append(cumulative[cumulative.length - 1]).append("\n");
+                }
+            }
+        }
+        return output.toString();
+    }
+
+    private static String number(double value) {
+        if (Double.isNaN(value))
+            return "NaN";
+        if (Double.isInfinite(value))
+            return value > 0 ? "+Inf" : "-Inf";
+        return BigDecimal.valueOf(value).stripTrailingZeros().toPlainString();
+    }
+
+    /**
+     * Writes {@link #prometheus()} to the file. The text is written next to it first and then moved over it, so a
+     * collector that reads the file never sees half of it.
+     */
+    public static void write(String path) throws Exception {
+        BufferedWriter writer = new BufferedWriter(new FileWriter(path + ".tmp"));
+        writer.write(prometheus());
+        writer.close();
+        Files.move(Paths.get(path + ".tmp"), Paths.get(path), StandardCopyOption.REPLACE_EXISTING);
+    }
+}
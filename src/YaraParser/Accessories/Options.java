@@ -7,6 +7,7 @@ import java.util.ArrayList;
 import java.util.HashSet;
 
 public class Options implements Serializable {
+    private static final long serialVersionUID = -1709256903684761863L;
     public boolean train;
     public boolean parseTaggedFile;
     public boolean parseConllFile;
@@ -17,8 +18,10 @@ public class Options implements Serializable {
     public String inputFile;
     public String outputFile;
     public String devPath;
+    public String devCorpus;
     public int trainingIter;
     public boolean evaluate;
+    public boolean indexCorpus;
     public boolean parsePartialConll;
     public String scorePath;
     public String clusterFile;
@@ -36,6 +39,42 @@ public class Options implements Serializable {
     public HashSet<String> punctuations;
     public String predFile;
     public int partialTrainingStartingIteration;
+    public boolean streamTraining;
+    public int shuffleWindow;
+    public boolean serve;
+    public int port;
+    public String host;
+    public int batchSize;
+    public boolean virtualThreads;
+    public int cacheSize;
+    public int latencyBudget;
+    public String beamPolicy;
+    public boolean tuneBeamPolicy;
+    public float targetSpeed;
+    public String models;
+    public int modelQuota;
+    public long queueCapacity;
+    public String overloadPolicy;
+    public long queueWait;
+    public long warmUp;
+    public boolean benchmark;
+    public String benchmarkFilter;
+    public boolean generate;
+    public boolean throughput;
+    public int sentenceCount;
+    public int vocabularySize;
+    public double zipfExponent;
+    public double meanLength;
+    public long seed;
+    public String featureSets;
+    public String beamWidths;
+    public String threadCounts;
+    public boolean trainBenchmark;
+    public boolean allocation;
+    public String metricsPath;
+    public int epochs;
+    public String diagnosticsPath;
+    public double diagnosticsSampleRate;
 
     public Options() {
         showHelp = false;
@@ -49,6 +88,7 @@ public class Options implements Serializable {
         outputFile = "";
         inputFile = "";
         devPath = "";
+        devCorpus = "";
         scorePath = "";
         separator = "_";
         clusterFile = "";
@@ -60,10 +100,47 @@ public class Options implements Serializable {
         useRandomOracleSelection = false;
         trainingIter = 20;
         evaluate = false;
+        indexCorpus = false;
         numOfThreads = 8;
         useExtendedWithBrownClusterFeatures = false;
         parsePartialConll = false;
         partialTrainingStartingIteration = 3;
+        streamTraining = false;
+        shuffleWindow = 0;
+        serve = false;
+        port = 8080;
+        host = "127.0.0.1";
+        batchSize = 32;
+        virtualThreads = false;
+        cacheSize = 0;
+        latencyBudget = 0;
+        beamPolicy = "";
+        tuneBeamPolicy = false;
+        targetSpeed = 100;
+        models = "";
+        modelQuota = 0;
+        queueCapacity = 0;
+        overloadPolicy = "reject";
+        queueWait = 1000;
+        warmUp = 0;
+        benchmark = false;
+        benchmarkFilter = "";
+        generate = false;
+        throughput = false;
+        sentenceCount = 1000;
+        vocabularySize = 10000;
+        zipfExponent = 1.0;
+        meanLength = 25;
+        seed = 1;
+        featureSets = "basic,extended,brown";
+        beamWidths = "1,8,64";
+        threadCounts = "1,2,4,8";
+        trainBenchmark = false;
+        allocation = false;
+        metricsPath = "";
+        epochs = 3;
+        diagnosticsPath = "";
+        diagnosticsSampleRate = 0.1;
         punctuations = new HashSet<>();
         punctuations.add("#");
         punctuations.add("''");
@@ -119,17 +196,33 @@ public class Options implements Serializable {
                 "\t \t nt:[#_of_threads] (default:8)\n" +
                 "\t \t pt:[#partail_training_starting_iteration] (default:3; shows the starting iteration for " +
                 "considering partial trees)\n" +
-                "\t \t root_first (default: put ROOT in the last position, unless explicitly put 'root_first')\n\n" +
+                "\t \t root_first (default: put ROOT in the last position, unless explicitly put 'root_first')\n" +
+                "\t \t stream (default: keep the training data in memory, unless explicitly put 'stream' for " +
+                "reading it from disk in every iteration)\n" +
+                "\t \t shuffle:[window-size] (default:0; with stream, shuffles the sentences inside a window of " +
+                "this size)\n\n" +
                 "* Parse a CoNLL'2006 file:\n" +
                 "\tjava -jar YaraParser.jar parse_conll -input [test-file] -out [output-file] -model [model-file] " +
                 "nt:[#_of_threads (optional -- default:8)] \n" +
                 "\t** The test file should have the conll 2006 format\n" +
-                "\t** Optional: -score [score file] averaged score of each output parse tree in a file\n\n" +
+                "\t** Optional: -score [score file] averaged score of each output parse tree in a file\n" +
+                "\t** Optional: virtual, cache:[#_of_sentences], -beam-policy [policy], budget:[milliseconds] (as for " +
+                "parse_tagged)\n" +
+                "\t** Optional: -diagnostics [log-file] -b-model [binary-model-file] appends how many items of the " +
+                "final beam the binary model calls oracles, for a sample of the sentences (with nt > 1 or virtual); " +
+                "sample:[fraction] (default:0.1)\n\n" +
                 "* Parse a tagged file:\n" +
                 "\tjava -jar YaraParser.jar parse_tagged -input [test-file] -out [output-file]  -model [model-file] " +
                 "nt:[#_of_threads (optional -- default:8)] \n" +
                 "\t** The test file should have each sentence in line and word_tag pairs are space-delimited\n" +
                 "\t** Optional:  -delim [delim] (default is _)\n" +
+                "\t** Optional: virtual (runs each sentence on its own virtual thread, at most one beam search per " +
+                "core; needs Java 21, otherwise it is ignored and nt threads are used)\n" +
+                "\t** Optional: cache:[#_of_sentences] (default:0; keeps the trees of the last sentences and reuses " +
+                "them for repeated sentences)\n" +
+                "\t** Optional: -beam-policy [policy] chooses the beam width by sentence length, e.g. " +
+                "20:64,40:32,80:8,1 (see tune_beam)\n" +
+                "\t** Optional: budget:[milliseconds] (default:0; latency budget of each sentence, as for serve)\n" +
                 "\t \t Example: He_PRP is_VBZ nice_AJ ._.\n\n" +
                 "* Parse a CoNLL'2006 file with partial gold trees:\n" +
                 "\tjava -jar YaraParser.jar parse_partial -input [test-file] -out [output-file] -model [model-file] " +
@@ -141,7 +234,78 @@ public class Options implements Serializable {
                 "\tjava -jar YaraParser.jar eval -gold [gold-file] -parse [parsed-file]  -punc [punc-file]\n" +
                 "\t** [punc-file]: File contains list of pos tags for punctuations in the treebank, each in one " +
                 "line\n" +
-                "\t** Both files should have conll 2006 format\n";
+                "\t** Both files should have conll 2006 format\n\n" +
+                "* Index a CoNLL'2006 file as a binary corpus:\n" +
+                "\tjava -jar YaraParser.jar index -input [conll-file] -out [corpus-file]\n" +
+                "\t** Optional: -cluster [cluster-file], unlabeled, lowercase (must match the training options)\n" +
+                "\t** The corpus can be given to train as -train-file, and to the binary model evaluation as " +
+                "-dev-corpus [corpus-file]\n\n" +
+                "* Run a parse server:\n" +
+                "\tjava -jar YaraParser.jar serve -model [model-file] -port [port (default:8080)] " +
+                "nt:[#_of_threads (optional -- default:8)] \n" +
+                "\t** POST tagged sentences or CoNLL blocks to /parse; add ?output=json for JSON trees\n" +
+                "\t** Optional: -host [address] (default:127.0.0.1, loopback only; 0.0.0.0 listens on all " +
+                "interfaces, and then anyone who can reach the port can parse and reload models)\n" +
+                "\t** Optional: batch:[max-sentences-per-batch] (default:32), -delim [delim] (default is _)\n" +
+                "\t** Optional: virtual (one virtual thread per connection and batch, at most one batch per core " +
+                "instead of nt workers; needs Java 21)\n" +
+                "\t** Optional: cache:[#_of_sentences] (default:0; as for parse_tagged, GET /stats shows the hit rate)\n" +
+                "\t** Optional: budget:[milliseconds] (default:0; latency budget of each sentence; the beam is " +
+                "narrowed down to greedy parsing for sentences that would take longer, and the rest of a sentence is parsed " +
+                "greedily once its budget is used up)\n" +
+                "\t** Optional: -beam-policy [policy] (as for parse_tagged)\n" +
+                "\t** Optional: -models [name=model-file,...] serves more models next to the -model one (which is " +
+                "called default); a model is chosen with ?model=[name]. Append @[quota] to a model file to limit the " +
+                "sentences of that model parsed at the same time; quota:[quota] sets it for all models (default:nt)\n" +
+                "\t** Optional: queue:[cost] (default:0, unbounded) bounds the sentences waiting for a worker by their " +
+                "cost, the number of words times the beam width; overload:[reject|block|shed] (default:reject) " +
+                "answers 503 to requests that do not fit, lets them wait up to wait:[milliseconds] (default:1000) for " +
+                "room, or drops the oldest waiting requests to make room\n" +
+                "\t** Optional: warmup:[milliseconds] (default:0) parses synthetic sentences with each model for up " +
+                "to this time (less when the speed is stable) so the JIT compiles the parser; GET /ready answers 503 " +
+                "until then\n\n" +
+                "* Tune a beam policy on a dev set:\n" +
+                "\tjava -jar YaraParser.jar tune_beam -model [model-file] -input [dev-file] -target " +
+                "[sentences-per-second (default:100)]\n" +
+                "\t** Parses the dev file (conll 2006 format) with each beam width on one thread and prints the " +
+                "policy with the best accuracy at the target speed\n\n" +
+                "* Run the microbenchmarks of the parser:\n" +
+                "\tjava -jar YaraParser.jar benchmark\n" +
+                "\t** Trains small models on a sample treebank and times feature extraction, scoring, transitions, " +
+                "beam selection and model loading\n" +
+                "\t** Optional: -input [conll-file] trains the models on this treebank instead, -cluster " +
+                "[cluster-file], -bench [name-prefix] only runs the matching benchmarks, -out [report-file] writes " +
+                "the results as tab-separated rows\n\n" +
+                "* Generate a synthetic treebank:\n" +
+                "\tjava -jar YaraParser.jar generate -out [conll-file]\n" +
+                "\t** Writes projective trees with Penn Treebank tags and a Zipfian vocabulary, and Brown clusters " +
+                "of the vocabulary in [conll-file].clusters\n" +
+                "\t** Optional: sentences:[#] (default:1000), vocab:[#_of_words] (default:10000), zipf:[exponent] " +
+                "(default:1.0), length:[mean-sentence-length] (default:25), seed:[seed] (default:1)\n\n" +
+                "* Measure the parsing speed on a synthetic treebank:\n" +
+                "\tjava -jar YaraParser.jar throughput -out [report-file]\n" +
+                "\t** Trains a small model for each feature set and parses the test sentences with each beam width " +
+                "and number of threads; the report is in JSON\n" +
+                "\t** Optional: the generate options for the test set, features:[basic,extended,brown], " +
+                "beams:[1,8,64], threads:[1,2,4,8]\n\n" +
+                "* Measure the training speed on a synthetic treebank:\n" +
+                "\tjava -jar YaraParser.jar train_benchmark -out [report-file]\n" +
+                "\t** Trains a model for each feature set and reports for each epoch the sentences per minute, the " +
+                "time of the oracle, beam scoring, isOracle, the weight updates and saving the model, and the size of " +
+                "the weight tables; the report is in JSON\n" +
+                "\t** Optional: the generate options for the training set, features:[basic,extended,brown], " +
+                "epochs:[#] (default:3), and the train options beam, nt, static, early\n\n" +
+                "* Measure the allocations of parsing on a synthetic treebank:\n" +
+                "\tjava -jar YaraParser.jar allocation -out [report-file]\n" +
+                "\t** Trains a small model for each feature set and reports the bytes allocated per sentence by a " +
+                "warmed-up parser session with each beam width, from words and tags and for the beam search alone; " +
+                "the report is in JSON\n" +
+                "\t** Optional: the generate options for the test set, features:[basic,extended,brown], " +
+                "beams:[1,8,64]\n\n" +
+                "* Any command:\n" +
+                "\t** Optional: -metrics [file] writes the counters and histograms of the parser and the trainer " +
+                "in the Prometheus text format to the file at the end, and after every training iteration (a " +
+                "server also answers GET /metrics)\n";
         System.out.println(output);
     }
 
@@ -160,6 +324,62 @@ public class Options implements Serializable {
                 options.evaluate = true;
             else if (args[i].equals("parse_tagged"))
                 options.parseTaggedFile = true;
+            else if (args[i].equals("index"))
+                options.indexCorpus = true;
+            else if (args[i].equals("benchmark"))
+                options.benchmark = true;
+            else if (args[i].equals("generate"))
+                options.generate = true;
+            else if (args[i].equals("throughput"))
+                options.throughput = true;
+            else if (args[i].equals("train_benchmark"))
+                options.trainBenchmark = true;
+            else if (args[i].equals("allocation"))
+                options.allocation = true;
+            else if (args[i].startsWith("epochs:"))
+                options.epochs = Integer.parseInt(args[i].substring(args[i].lastIndexOf(":") + 1));
+            else if (args[i].startsWith("sentences:"))
+                options.sentenceCount = Integer.parseInt(args[i].substring(args[i].lastIndexOf(":") + 1));
+            else if (args[i].startsWith("vocab:"))
+                options.vocabularySize = Integer.parseInt(args[i].substring(args[i].lastIndexOf(":") + 1));
+            else if (args[i].startsWith("zipf:"))
+                options.zipfExponent = Double.parseDouble(args[i].substring(args[i].lastIndexOf(":") + 1));
+            else if (args[i].startsWith("length:"))
+                options.meanLength = Double.parseDouble(args[i].substring(args[i].lastIndexOf(":") + 1));
+            else if (args[i].startsWith("seed:"))
+                options.seed = Long.parseLong(args[i].substring(args[i].lastIndexOf(":") + 1));
+            else if (args[i].startsWith("features:"))
+                options.featureSets = args[i].substring(args[i].lastIndexOf(":") + 1);
+            else if (args[i].startsWith("beams:"))
+                options.beamWidths = args[i].substring(args[i].lastIndexOf(":") + 1);
+            else if (args[i].startsWith("threads:"))
+                options.threadCounts = args[i].substring(args[i].lastIndexOf(":") + 1);
+            else if (args[i].equals("-bench"))
+                options.benchmarkFilter = args[i + 1];
+            else if (args[i].equals("tune_beam"))
+                options.tuneBeamPolicy = true;
+            else if (args[i].equals("-beam-policy"))
+                options.beamPolicy = args[i + 1];
+            else if (args[i].equals("-models"))
+                options.models = args[i + 1];
+            else if (args[i].startsWith("queue:"))
+                options.queueCapacity = Long.parseLong(args[i].substring(args[i].lastIndexOf(":") + 1));
+            else if (args[i].startsWith("overload:"))
+                options.overloadPolicy = args[i].substring(args[i].lastIndexOf(":") + 1);
+            else if (args[i].startsWith("warmup:"))
+                options.warmUp = Long.parseLong(args[i].substring(args[i].lastIndexOf(":") + 1));
+            else if (args[i].startsWith("wait:"))
+                options.queueWait = Long.parseLong(args[i].substring(args[i].lastIndexOf(":") + 1));
+            else if (args[i].startsWith("quota:"))
+                options.modelQuota = Integer.parseInt(args[i].substring(args[i].lastIndexOf(":") + 1));
+            else if (args[i].equals("-target"))
+                options.targetSpeed = Float.parseFloat(args[i + 1]);
+            else if (args[i].equals("serve"))
+                options.serve = true;
+            else if (args[i].equals("-port"))
+                options.port = Integer.parseInt(args[i + 1]);
+            else if (args[i].equals("-host"))
+                options.host = args[i + 1];
             else if (args[i].equals("-train-file") || args[i].equals("-input"))
                 options.inputFile = args[i + 1];
             else if (args[i].equals("-punc"))
@@ -168,6 +388,14 @@ public class Options implements Serializable {
                 options.modelFile = args[i + 1];
             else if (args[i].equals("-b-model"))
                 options.binaryModelFile = args[i + 1];
+            else if (args[i].equals("-metrics"))
+                options.metricsPath = args[i + 1];
+            else if (args[i].equals("-diagnostics"))
+                options.diagnosticsPath = args[i + 1];
+            else if (args[i].startsWith("sample:"))
+                options.diagnosticsSampleRate = Double.parseDouble(args[i].substring(args[i].lastIndexOf(":") + 1));
+            else if (args[i].equals("-dev-corpus"))
+                options.devCorpus = args[i + 1];
             else if (args[i].startsWith("-dev"))
                 options.devPath = args[i + 1];
             else if (args[i].equals("-gold"))
@@ -204,6 +432,18 @@ public class Options implements Serializable {
                 options.useRandomOracleSelection = true;
             else if (args[i].equals("root_first"))
                 options.rootFirst = true;
+            else if (args[i].equals("virtual"))
+                options.virtualThreads = true;
+            else if (args[i].equals("stream"))
+                options.streamTraining = true;
+            else if (args[i].startsWith("batch:"))
+                options.batchSize = Integer.parseInt(args[i].substring(args[i].lastIndexOf(":") + 1));
+            else if (args[i].startsWith("budget:"))
+                options.latencyBudget = Integer.parseInt(args[i].substring(args[i].lastIndexOf(":") + 1));
+            else if (args[i].startsWith("cache:"))
+                options.cacheSize = Integer.parseInt(args[i].substring(args[i].lastIndexOf(":") + 1));
+            else if (args[i].startsWith("shuffle:"))
+                options.shuffleWindow = Integer.parseInt(args[i].substring(args[i].lastIndexOf(":") + 1));
             else if (args[i].startsWith("iter:"))
                 options.trainingIter = Integer.parseInt(args[i].substring(args[i].lastIndexOf(":") + 1));
         }
@@ -304,6 +544,8 @@ public class Options implements Serializable {
             StringBuilder builder = new StringBuilder();
             builder.append("train file: ").append(inputFile).append("\n");
             builder.append("dev file: ").append(devPath).append("\n");
+            if (devCorpus.length() > 0)
+                builder.append("dev corpus: ").append(devCorpus).append("\n");
             builder.append("cluster file: ").append(clusterFile).append("\n");
             builder.append("beam width: ").append(beamWidth).append("\n");
             builder.append("rootFirst: ").append(rootFirst).append("\n");
@@ -319,6 +561,10 @@ public class Options implements Serializable {
             builder.append("number of threads: ").append(numOfThreads).append("\n");
             builder.append("partial training starting iteration: ").append(partialTrainingStartingIteration).append(
                     "\n");
+            if (streamTraining)
+                builder.append("streaming training data, shuffle window: ").append(shuffleWindow).append("\n");
+            if (metricsPath.length() > 0)
+                builder.append("metrics file: ").append(metricsPath).append("\n");
             return builder.toString();
         } else if (parseConllFile) {
             return ("parse conll" + "\n") +
@@ -327,7 +573,12 @@ public class Options implements Serializable {
                     "model file: " + modelFile + "\n" +
                     "binary model file: " + binaryModelFile + "\n" +
                     "score file: " + scorePath + "\n" +
-                    "number of threads: " + numOfThreads + "\n";
+                    "number of threads: " + numOfThreads + "\n" +
+                    "virtual threads: " + virtualThreads + "\n" +
+                    "cache size: " + cacheSize + "\n" +
+                    "beam policy: " + beamPolicy + "\n" +
+                    "diagnostics: " + (diagnosticsPath.length() > 0 ?
+                    diagnosticsPath + " (sample " + diagnosticsSampleRate + ")" : "off") + "\n";
         } else if (parseTaggedFile) {
             return ("parse  tag file" + "\n") +
                     "input file: " + inputFile + "\n" +
@@ -335,7 +586,10 @@ public class Options implements Serializable {
                     "model file: " + modelFile + "\n" +
                     "binary model file: " + binaryModelFile + "\n" +
                     "score file: " + scorePath + "\n" +
-                    "number of threads: " + numOfThreads + "\n";
+                    "number of threads: " + numOfThreads + "\n" +
+                    "virtual threads: " + virtualThreads + "\n" +
+                    "cache size: " + cacheSize + "\n" +
+                    "beam policy: " + beamPolicy + "\n";
         } else if (parsePartialConll) {
             return ("parse partial conll" + "\n") +
                     "input file: " + inputFile + "\n" +
@@ -344,7 +598,65 @@ public class Options implements Serializable {
                     "model file: " + modelFile + "\n" +
                     "binary model file: " + binaryModelFile + "\n" +
                     "labeled: " + labeled + "\n" +
-                    "number of threads: " + numOfThreads + "\n";
+                    "number of threads: " + numOfThreads + "\n" +
+                    "virtual threads: " + virtualThreads + "\n" +
+                    "diagnostics: " + (diagnosticsPath.length() > 0 ?
+                    diagnosticsPath + " (sample " + diagnosticsSampleRate + ")" : "off") + "\n";
+        } else if (indexCorpus) {
+            return ("index corpus" + "\n") +
+                    "input file: " + inputFile + "\n" +
+                    "output file: " + outputFile + "\n" +
+                    "cluster file: " + clusterFile + "\n" +
+                    "labeled: " + labeled + "\n" +
+                    "lower-case: " + lowercase + "\n";
+        } else if (serve) {
+            return ("parse server" + "\n") +
+                    "model file: " + modelFile + "\n" +
+                    "models: " + models + "\n" +
+                    "model quota: " + modelQuota + "\n" +
+                    "host: " + host + "\n" +
+                    "port: " + port + "\n" +
+                    "number of threads: " + numOfThreads + "\n" +
+                    "batch size: " + batchSize + "\n" +
+                    "virtual threads: " + virtualThreads + "\n" +
+                    "cache size: " + cacheSize + "\n" +
+                    "latency budget: " + latencyBudget + " ms\n" +
+                    "beam policy: " + beamPolicy + "\n" +
+                    "queue capacity: " + queueCapacity + "\n" +
+                    "overload policy: " + overloadPolicy + "\n" +
+                    "queue wait: " + queueWait + " ms\n" +
+                    "warm-up: " + warmUp + " ms\n";
+        } else if (tuneBeamPolicy) {
+            return ("tune beam policy" + "\n") +
+                    "model file: " + modelFile + "\n" +
+                    "dev file: " + inputFile + "\n" +
+                    "target speed: " + targetSpeed + " sentences per second\n";
+        } else if (benchmark) {
+            return ("benchmark" + "\n") +
+                    "treebank: " + (inputFile.length() > 0 ? inputFile : "sample") + "\n" +
+                    "cluster file: " + clusterFile + "\n" +
+                    "benchmarks: " + (benchmarkFilter.length() > 0 ? benchmarkFilter + "*" : "all") + "\n" +
+                    "report file: " + outputFile + "\n";
+        } else if (generate || throughput || trainBenchmark || allocation) {
+            return (generate ? "generate synthetic treebank" : throughput ? "throughput benchmark" :
+                    trainBenchmark ? "training benchmark" : "allocation benchmark") + "\n" +
+                    "output file: " + outputFile + "\n" +
+                    "sentences: " + sentenceCount + "\n" +
+                    "vocabulary: " + vocabularySize + "\n" +
+                    "zipf exponent: " + zipfExponent + "\n" +
+                    "mean length: " + meanLength + "\n" +
+                    "seed: " + seed + "\n" +
+                    (throughput ? "feature sets: " + featureSets + "\n" +
+                            "beam widths: " + beamWidths + "\n" +
+                            "threads: " + threadCounts + "\n" : "") +
+                    (allocation ? "feature sets: " + featureSets + "\n" +
+                            "beam widths: " + beamWidths + "\n" : "") +
+                    (trainBenchmark ? "feature sets: " + featureSets + "\n" +
+                            "epochs: " + epochs + "\n" +
+                            "beam width: " + beamWidth + "\n" +
+                            "threads: " + numOfThreads + "\n" +
+                            "dynamic oracle: " + useDynamicOracle + "\n" +
+                            "update model: " + (useMaxViol ? "max violation" : "early") + "\n" : "");
         } else if (evaluate) {
             return ("Evaluate" + "\n") +
                     "gold file: " + goldFile + "\n" +
@@ -361,6 +673,7 @@ public class Options implements Serializable {
         options.useMaxViol = useMaxViol;
         options.beamWidth = beamWidth;
         options.devPath = devPath;
+        options.devCorpus = devCorpus;
         options.evaluate = evaluate;
         options.goldFile = goldFile;
         options.inputFile = inputFile;
@@ -379,6 +692,42 @@ public class Options implements Serializable {
         options.useExtendedFeatures = useExtendedFeatures;
         options.parsePartialConll = parsePartialConll;
         options.partialTrainingStartingIteration = partialTrainingStartingIteration;
+        options.streamTraining = streamTraining;
+        options.shuffleWindow = shuffleWindow;
+        options.serve = serve;
+        options.port = port;
+        options.host = host;
+        options.batchSize = batchSize;
+        options.virtualThreads = virtualThreads;
+        options.cacheSize = cacheSize;
+        options.latencyBudget = latencyBudget;
+        options.beamPolicy = beamPolicy;
+        options.tuneBeamPolicy = tuneBeamPolicy;
+        options.targetSpeed = targetSpeed;
+        options.models = models;
+        options.modelQuota = modelQuota;
+        options.queueCapacity = queueCapacity;
+        options.overloadPolicy = overloadPolicy;
+        options.queueWait = queueWait;
+        options.warmUp = warmUp;
+        options.benchmark = benchmark;
+        options.benchmarkFilter = benchmarkFilter;
+        options.generate = generate;
+        options.throughput = throughput;
+        options.sentenceCount = sentenceCount;
+        options.vocabularySize = vocabularySize;
+        options.zipfExponent = zipfExponent;
+        options.meanLength = meanLength;
+        options.seed = seed;
+        options.featureSets = featureSets;
+        options.beamWidths = beamWidths;
+        options.threadCounts = threadCounts;
+        options.trainBenchmark = trainBenchmark;
+        options.allocation = allocation;
+        options.metricsPath = metricsPath;
+        options.epochs = epochs;
+        options.diagnosticsPath = diagnosticsPath;
+        options.diagnosticsSampleRate = diagnosticsSampleRate;
         return options;
     }
 }
@@ -0,0 +1,230 @@
+package YaraParser.Accessories;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Counters and timers of the stages of the beam search, for finding out which stage to optimize: feature extraction,
+ * the score of each action, keeping the best candidates, cloning configurations, and the oracle expansion, binary
+ * classifier checks and perceptron updates of the trainer. The trainer measures its stages once for both these
+ * timers and its {@code TrainingProfile}. Each thread adds to its own timers, so the hot path has no shared
+ * writes; {@link #table()} and {@link #json()} sum them up and list them by thread.
+ * <p/>
+ * The timers are switched on with {@code -Dyara.timers=true}. {@link #ENABLED} is a constant, so when they are off
+ * the JIT removes the calls and a parse costs the same as without them. When they are on, every stage reads the
+ * clock twice; that adds some tens of nanoseconds to each stage, so compare the stages with each other, not with a
+ * run without timers.
+ * <p/>
+ * The totals are read without locking; read them at the end of a run, when the threads are done. The totals of the
+ * threads that have ended are added up by thread name, so short-lived threads (e.g. a virtual thread per sentence)
+ * do not pile up.
+ */
+public class PhaseTimers {
+    public static final boolean ENABLED = Boolean.getBoolean("yara.timers");
+
+    public static final int FEATURES = 0;
+    public static final int SCORE_SHIFT = 1;
+    public static final int SCORE_REDUCE = 2;
+    public static final int SCORE_RIGHT_ARC = 3;
+    public static final int SCORE_LEFT_ARC = 4;
+    public static final int CANDIDATES = 5;
+    public static final int CLONE = 6;
+    public static final int ORACLE = 7;
+    public static final int BINARY_CHECK = 8;
+    public static final int UPDATE = 9;
+    public static final String[] PHASES = {"features", "score.shift", "score.reduce", "score.rightArc",
+            "score.leftArc", "candidates", "clone", "oracle", "binaryCheck", "update"};
+
+    /**
+     * the timers of the threads that may still be running; guards {@link #ended} as well
+     */
+    private static final ArrayList<PhaseTimers> threads = new ArrayList<>();
+    /**
+     * the totals of the threads that have ended, by thread name
+     */
+    private static final LinkedHashMap<String, PhaseTimers> ended = new LinkedHashMap<>();
+    /**
+     * the number of timers in threads after the ended ones were last taken out; they are taken out again when it
+     * doubles, so a new thread costs the same on average however many came before it
+     */
+    private static int foldedSize;
+    private static final ThreadLocal<PhaseTimers> local = ThreadLocal.withInitial(() -> {
+        Thread thread = Thread.currentThread();
+        PhaseTimers timers = new PhaseTimers(thread.getName().isEmpty() ? "unnamed" : thread.getName(), thread);
+        synchronized (threads) {
+            if (threads.size() >= Math.max(16, 2 * foldedSize))
+                foldEnded();
+            threads.add(timers);
+        }
+        return timers;
+    });
+
+    private final String thread;
+    /**
+     * the thread that adds to these timers; null for the totals of ended threads
+     */
+    private final WeakReference<Thread> owner;
+    private final long[] nanos;
+    private final long[] counts;
+
+    private PhaseTimers(String thread, Thread owner) {
+        this.thread = thread;
+        this.owner = owner == null ? null : new WeakReference<>(owner);
+        nanos = new long[PHASES.length];
+        counts = new long[PHASES.length];
+    }
+
+    /**
+     * Moves the timers of the threads that have ended to the totals of their name; the caller holds the lock of
+     * threads. A thread that has ended has made its last write to its timers.
+     */
+    private static void foldEnded() {
+        Iterator<PhaseTimers> iterator = threads.iterator();
+        while (iterator.hasNext()) {
+            PhaseTimers timers = iterator.next();
+            Thread owner = timers.owner.get();
+            if (owner != null && owner.isAlive())
+                continue;
+            PhaseTimers total = ended.computeIfAbsent(timers.thread, name -> new PhaseTimers(name, null));
+            for (int phase = 0; phase < PHASES.length; phase++) {
+                total.nanos[phase] += timers.nanos[phase];
+                total.counts[phase] += timers.counts[phase];
+            }
+            iterator.remove();
+        }
+        foldedSize = threads.size();
+    }
+
+    /**
+     * @return the totals of the ended threads and the timers of the others; the caller holds the lock of threads
+     */
+    private static ArrayList<PhaseTimers> all() {
+        foldEnded();
+        ArrayList<PhaseTimers> all = new ArrayList<>(ended.values());
+        all.addAll(threads);
+        return all;
+    }
+
+    /**
+     * @return the time to measure the first stage from, or 0 when the timers are off
+     */
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Adds the time since start to the phase of this thread.
+     *
+     * @return the time to measure the next stage from
+     */
+    public static long lap(int phase, long start) {
+        if (!ENABLED)
+            return 0;
+        long now = System.nanoTime();
+        add(phase, now - start);
+        return now;
+    }
+
+    /**
+     * Adds a time that was measured elsewhere to the phase of this thread
+     */
+    public static void add(int phase, long nanos) {
+        if (!ENABLED)
+            return;
+        PhaseTimers timers = local.get();
+        timers.nanos[phase] += nanos;
+        timers.counts[phase]++;
+    }
+
+    /**
+     * Forgets the totals of all threads, e.g. after warming up
+     */
+    public static void reset() {
+        synchronized (threads) {
+            for (PhaseTimers timers : threads) {
+                Arrays.fill(timers.nanos, 0);
+                Arrays.fill(timers.counts, 0);
+            }
+            ended.clear();
+        }
+    }
+
+    /**
+     * @return the total time, count and mean time of each phase over all threads, and the share of each thread
+     */
+    public static String table() {
+        StringBuilder output = new StringBuilder();
+        synchronized (threads) {
+            ArrayList<PhaseTimers> timersByThread = all();
+            long[] nanos = new long[PHASES.length];
+            long[] counts = new long[PHASES.length];
+            long all = 0;
+            for (PhaseTimers timers : timersByThread) {
+                for (int phase = 0; phase < PHASES.length; phase++) {
+                    nanos[phase] += timers.nanos[phase];
+                    counts[phase] += timers.counts[phase];
+                    all += timers.nanos[phase];
+                }
+            }
+            output.append(String.format("%-16s %12s %8s %14s %12s%n", "phase", "ms", "%", "count", "ns/call"));
+            for (int phase = 0; phase < PHASES.length; phase++) {
+                output.append(String.format("%-16s %12.1f %8.2f %14d %12.1f%n", PHASES[phase], nanos[phase] / 1e6,
+                        all == 0 ? 0 : 100.0 * nanos[phase] / all, counts[phase],
+                        counts[phase] == 0 ? 0 : (double) nanos[phase] / counts[phase]));
+            }
+            output.append(timersByThread.size()).append(" threads:\n");
+            for (PhaseTimers timers : timersByThread) {
+                long total = 0;
+                for (long phaseNanos : timers.nanos)
+                    total += phaseNanos;
+                output.append(String.format("  %-30s %12.1f ms%n", timers.thread, total / 1e6));
+            }
+        }
+        return output.toString();
+    }
+
+    /**
+     * @return {"threads": [{"thread": name, "phases": {phase: {"nanos": n, "count": c}, ...}}, ...]}
+     */
+    public static String json() {
+        StringBuilder output = new StringBuilder("{\"threads\": [");
+        synchronized (threads) {
+            ArrayList<PhaseTimers> timersByThread = all();
+            for (int t = 0; t < timersByThread.size(); t++) {
+                PhaseTimers timers = timersByThread.get(t);
+                output.append(t == 0 ? "\n" : ",\n").append("  {\"thread\": \"")
+                        .append(timers.thread.replace("\\", "\\\\").replace("\"", "\\\""))
+                        .append("\", \"phases\": {");
+                for (int phase = 0; phase < PHASES.length; phase++) {
+                    output.append(phase == 0 ? "" : ", ").append("\"").append(PHASES[phase])
+                            .append("\": {\"nanos\": ").append(timers.nanos[phase])
+                            .append(", \"count\": ").append(timers.counts[phase]).append("}");
+                }
+                output.append("}}");
+            }
+        }
+        output.append("\n]}\n");
+        return output.toString();
+    }
+
+    /**
+     * Prints the table, and writes the JSON to the file given with {@code -Dyara.timers.json=[file]}, if any
+     */
+    public static void dump() throws Exception {
+        if (!ENABLED)
+            return;
+        System.out.print(table());
+        String path = System.getProperty("yara.timers.json", "");
+        if (path.length() > 0) {
+            BufferedWriter writer = new BufferedWriter(new FileWriter(path));
+            writer.write(json());
+            writer.close();
+            System.out.println("phase timers written to " + path);
+        }
+    }
+}
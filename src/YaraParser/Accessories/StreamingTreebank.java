@@ -0,0 +1,177 @@
+package YaraParser.Accessories;
+
+import YaraParser.Structures.IndexMaps;
+import YaraParser.TransitionBasedSystem.Configuration.GoldConfiguration;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * A training treebank that is read from disk again in every iteration instead of being kept in memory. Only the
+ * index maps are built up front; the sentences are read in small chunks (from a CoNLL file or a binary corpus) and,
+ * if a shuffle window is given, mixed in a buffer of that many sentences.
+ */
+public class StreamingTreebank implements Iterable<GoldConfiguration> {
+    /**
+     * Number of sentences that are read from a CoNLL file at a time
+     */
+    private static final int CHUNK_SIZE = 1000;
+
+    private final String path;
+    private final IndexMaps maps;
+    private final BinaryCorpus corpus;
+    private final int size;
+    private final boolean labeled;
+    private final boolean rootFirst;
+    private final boolean lowercase;
+    private final int shuffleWindow;
+    private final Random randGen;
+
+    public StreamingTreebank(String path, Options options) throws Exception {
+        this.path = path;
+        labeled = options.labeled;
+        rootFirst = options.rootFirst;
+        lowercase = options.lowercase;
+        shuffleWindow = options.shuffleWindow;
+        randGen = new Random();
+        if (BinaryCorpus.isBinaryCorpus(path)) {
+            corpus = new BinaryCorpus(path);
+            if (corpus.isLabeled() != labeled || corpus.isLowercase() != lowercase)
+                throw new Exception(path + " was indexed with labeled=" + corpus.isLabeled() + " and lowercase="
+                        + corpus.isLowercase());
+            maps = corpus.getMaps();
+            size = corpus.size();
+        } else {
+            corpus = null;
+            Pair<IndexMaps, Integer> vocabulary = CoNLLReader.createIndicesAndCount(path, labeled, lowercase,
+                    options.clusterFile);
+            maps = vocabulary.first;
+            size = vocabulary.second;
+        }
+    }
+
+    public IndexMaps getMaps() {
+        return maps;
+    }
+
+    /**
+     * @return number of sentences in the treebank, including the non-projective ones that are skipped
+     */
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Iterator<GoldConfiguration> iterator() {
+        Iterator<GoldConfiguration> source = corpus != null ? new CorpusIterator() : new FileIterator();
+        if (shuffleWindow > 1)
+            return new ShuffleIterator(source);
+        return source;
+    }
+
+    private class FileIterator implements Iterator<GoldConfiguration> {
+        private CoNLLReader reader;
+        private ArrayList<GoldConfiguration> chunk;
+        private int position;
+
+        FileIterator() {
+            try {
+                reader = new CoNLLReader(path);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+            chunk = new ArrayList<>();
+            position = 0;
+        }
+
+        @Override
+        public boolean hasNext() {
+            try {
+                while (reader != null && position == chunk.size()) {
+                    chunk = reader.readData(CHUNK_SIZE, false, labeled, rootFirst, lowercase, maps);
+                    position = 0;
+                    // a chunk of dropped non-projective trees is empty before the end of the file
+                    if (reader.isEndOfFile()) {
+                        reader.close();
+                        reader = null;
+                    }
+                }
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+            return position < chunk.size();
+        }
+
+        @Override
+        public GoldConfiguration next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            GoldConfiguration configuration = chunk.get(position);
+            chunk.set(position++, null);
+            return configuration;
+        }
+    }
+
+    private class CorpusIterator implements Iterator<GoldConfiguration> {
+        private int sentence = nextProjective(0);
+
+        private int nextProjective(int s) {
+            while (s < corpus.size() && !corpus.isProjective(s))
+                s++;
+            return s;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return sentence < corpus.size();
+        }
+
+        @Override
+        public GoldConfiguration next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            GoldConfiguration configuration = corpus.getConfiguration(sentence, rootFirst);
+            sentence = nextProjective(sentence + 1);
+            return configuration;
+        }
+    }
+
+    /**
+     * Keeps shuffleWindow sentences in a buffer and returns a random one of them each time, refilling its place
+     * from the source.
+     */
+    private class ShuffleIterator implements Iterator<GoldConfiguration> {
+        private final Iterator<GoldConfiguration> source;
+        private final ArrayList<GoldConfiguration> buffer;
+
+        ShuffleIterator(Iterator<GoldConfiguration> source) {
+            this.source = source;
+            buffer = new ArrayList<>(shuffleWindow);
+            while (buffer.size() < shuffleWindow && source.hasNext())
+                buffer.add(source.next());
+        }
+
+        @Override
+        public boolean hasNext() {
+            return buffer.size() > 0;
+        }
+
+        @Override
+        public GoldConfiguration next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            int index = randGen.nextInt(buffer.size());
+            GoldConfiguration configuration = buffer.get(index);
+            if (source.hasNext()) {
+                buffer.set(index, source.next());
+            } else {
+                int last = buffer.size() - 1;
+                buffer.set(index, buffer.get(last));
+                buffer.remove(last);
+            }
+            return configuration;
+        }
+    }
+}
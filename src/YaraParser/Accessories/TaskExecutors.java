@@ -0,0 +1,85 @@
+package YaraParser.Accessories;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Executors for running one task per sentence or request. On a JVM with virtual threads (Java 21 and later) every
+ * task gets its own virtual thread, so tasks that wait for input or output do not hold a platform thread. The
+ * parser is compiled for Java 11, so the virtual thread factory is looked up by reflection. On older JVMs
+ * {@link #useVirtualThreads} turns the option off, so the callers keep their fixed pool of nt threads instead of
+ * starting a platform thread for every task.
+ * <p/>
+ * The beam search itself is CPU-bound, so it should be run under a {@link #newCpuGate()} permit: otherwise
+ * thousands of tasks would compete for the cores at once.
+ */
+public class TaskExecutors {
+    private static final Method VIRTUAL_THREAD_FACTORY = findVirtualThreadFactory();
+
+    private static Method findVirtualThreadFactory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    public static boolean hasVirtualThreads() {
+        return VIRTUAL_THREAD_FACTORY != null;
+    }
+
+    /**
+     * @param requested whether the virtual option was given
+     * @return whether the tasks can run on virtual threads; says so if they were asked for but the JVM does not
+     * have them
+     */
+    public static boolean useVirtualThreads(boolean requested) {
+        if (requested && VIRTUAL_THREAD_FACTORY == null) {
+            System.out.println("virtual threads need Java 21 or later (this is Java "
+                    + System.getProperty("java.specification.version") + "); using nt platform threads instead");
+            return false;
+        }
+        return requested;
+    }
+
+    /**
+     * @param fallbackThreads the size of the fixed pool that is used if virtual threads cannot be created
+     * @return an executor that starts a virtual thread for each task
+     */
+    public static ExecutorService newPerTaskExecutor(int fallbackThreads) {
+        if (VIRTUAL_THREAD_FACTORY != null) {
+            try {
+                return (ExecutorService) VIRTUAL_THREAD_FACTORY.invoke(null);
+            } catch (Exception e) {
+                System.out.println("could not create virtual threads: " + e);
+            }
+        }
+        return Executors.newFixedThreadPool(fallbackThreads);
+    }
+
+    /**
+     * @return a semaphore with one permit for each available core
+     */
+    public static Semaphore newCpuGate() {
+        return new Semaphore(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @return the task, running under a permit of the gate if the gate is not null
+     */
+    public static <T> Callable<T> gated(Semaphore gate, Callable<T> task) {
+        if (gate == null)
+            return task;
+        return () -> {
+            gate.acquire();
+            try {
+                return task.call();
+            } finally {
+                gate.release();
+            }
+        };
+    }
+}
@@ -0,0 +1,212 @@
+package YaraParser.Benchmark;
+
+import YaraParser.Learning.AveragedPerceptron;
+import YaraParser.Structures.InfStruct;
+import YaraParser.Structures.Sentence;
+import YaraParser.TransitionBasedSystem.Parser.ParserContext;
+import YaraParser.TransitionBasedSystem.Parser.ParserSession;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the bytes allocated per parsed sentence in the steady state of a {@link ParserSession}: trains a small
+ * model for each feature set on a {@link SyntheticTreebank}, parses the generated test sentences a few times so the
+ * JIT has compiled the parse path, and then reads the allocation counter of the parsing thread
+ * ({@code com.sun.management.ThreadMXBean#getThreadAllocatedBytes}) around further rounds over the same sentences.
+ * <p/>
+ * Two paths are measured for each beam width: the full path from words and tags to the best configuration
+ * ({@link ParserSession#parse(String[], String[])}, which also looks up the words and builds the sentence), and the
+ * beam search alone on sentences that were built before. The session keeps its buffers between sentences, so
+ * whatever is counted is allocated again for every sentence.
+ */
+public class AllocationBenchmark {
+    private static final int TRAIN_SENTENCES = 100;
+    private static final int TRAINING_ITERATIONS = 2;
+    private static final int WARM_UP_ROUNDS = 20;
+    private static final int ROUNDS = 5;
+
+    public static class Result {
+        public final String featureSet;
+        public final int beamWidth;
+        public final int sentences;
+        public final int tokens;
+        /**
+         * bytes per sentence from words and tags to the best configuration
+         */
+        public final double parseBytes;
+        /**
+         * bytes per sentence of the beam search on a built sentence
+         */
+        public final double searchBytes;
+
+        Result(String featureSet, int beamWidth, int sentences, int tokens, double parseBytes, double searchBytes) {
+            this.featureSet = featureSet;
+            this.beamWidth = beamWidth;
+            this.sentences = sentences;
+            this.tokens = tokens;
+            this.parseBytes = parseBytes;
+            this.searchBytes = searchBytes;
+        }
+
+        public String toString() {
+            DecimalFormat format = new DecimalFormat("0.0");
+            return featureSet + ", beam " + beamWidth + ": " + format.format(parseBytes) + " bytes/sentence ("
+                    + format.format(parseBytes * sentences / tokens) + " bytes/token), search alone "
+                    + format.format(searchBytes) + " bytes/sentence";
+        }
+    }
+
+    /**
+     * Measures and writes a JSON report with one object per feature set and beam width.
+     *
+     * @param sentences  number of test sentences
+     * @param reportPath the report is written there, or printed if it is empty
+     */
+    public static void run(int sentences, int vocabularySize, double zipfExponent, double meanLength, long seed,
+                           List<String> featureSets, List<Integer> beamWidths, String reportPath) throws Exception {
+        ArrayList<Result> results = measure(sentences, vocabularySize, zipfExponent, meanLength, seed, featureSets,
+                beamWidths);
+        StringBuilder report = new StringBuilder();
+        report.append("{\n  \"generator\": {\"trainSentences\": ").append(TRAIN_SENTENCES)
+                .append(", \"testSentences\": ").append(sentences)
+                .append(", \"vocabulary\": ").append(vocabularySize)
+                .append(", \"zipfExponent\": ").append(zipfExponent)
+                .append(", \"meanLength\": ").append(meanLength)
+                .append(", \"seed\": ").append(seed).append("},\n")
+                .append("  \"warmUpRounds\": ").append(WARM_UP_ROUNDS)
+                .append(", \"rounds\": ").append(ROUNDS).append(",\n  \"runs\": [");
+        for (int r = 0; r < results.size(); r++) {
+            Result result = results.get(r);
+            report.append(r == 0 ? "\n" : ",\n");
+            report.append("    {\"features\": \"").append(result.featureSet)
+                    .append("\", \"beamWidth\": ").append(result.beamWidth)
+                    .append(", \"sentences\": ").append(result.sentences)
+                    .append(", \"tokens\": ").append(result.tokens)
+                    .append(", \"parseBytesPerSentence\": ").append(result.parseBytes)
+                    .append(", \"searchBytesPerSentence\": ").append(result.searchBytes).append("}");
+        }
+        report.append("\n  ]\n}\n");
+
+        if (reportPath.length() > 0) {
+            BufferedWriter writer = new BufferedWriter(new FileWriter(reportPath));
+            writer.write(report.toString());
+            writer.close();
+            System.out.println("report written to " + reportPath);
+        } else {
+            System.out.print(report);
+        }
+    }
+
+    /**
+     * Generates the sentences, trains a model for each feature set and measures each beam width on the current
+     * thread.
+     */
+    public static ArrayList<Result> measure(int sentences, int vocabularySize, double zipfExponent,
+                                            double meanLength, long seed, List<String> featureSets,
+                                            List<Integer> beamWidths) throws Exception {
+        com.sun.management.ThreadMXBean threads = threadBean();
+        File directory = Files.createTempDirectory("yara-allocation").toFile();
+        try {
+            SyntheticTreebank generator = new SyntheticTreebank(vocabularySize, zipfExponent, meanLength, seed);
+            String trainPath = new File(directory, "train.conll").getPath();
+            String clusterPath = new File(directory, "clusters.txt").getPath();
+            generator.write(trainPath, TRAIN_SENTENCES);
+            generator.writeClusters(clusterPath);
+            ArrayList<String[]> words = new ArrayList<>(sentences);
+            ArrayList<String[]> tags = new ArrayList<>(sentences);
+            int tokens = 0;
+            for (int s = 0; s < sentences; s++) {
+                String[] rows = generator.sentence();
+                String[] sentenceWords = new String[rows.length];
+                String[] sentenceTags = new String[rows.length];
+                for (int i = 0; i < rows.length; i++) {
+                    String[] fields = rows[i].split("\t");
+                    sentenceWords[i] = fields[1];
+                    sentenceTags[i] = fields[3];
+                }
+                words.add(sentenceWords);
+                tags.add(sentenceTags);
+                tokens += rows.length;
+            }
+
+            ArrayList<Result> results = new ArrayList<>();
+            for (String featureSet : featureSets) {
+                int featureLength = ThroughputBenchmark.featureLength(featureSet);
+                String modelPath = ParserBenchmarks.train(featureSet, featureLength, trainPath, clusterPath,
+                        directory, TRAINING_ITERATIONS);
+                InfStruct infStruct = new InfStruct(modelPath);
+                AveragedPerceptron classifier = new AveragedPerceptron(infStruct);
+                for (int beamWidth : beamWidths) {
+                    ParserContext context = new ParserContext(classifier, infStruct.dependencyLabels, featureLength,
+                            infStruct.maps, infStruct.options.rootFirst, infStruct.options.lowercase, beamWidth);
+                    ParserSession session = context.newSession();
+                    ArrayList<Sentence> built = new ArrayList<>(sentences);
+                    for (int s = 0; s < sentences; s++)
+                        built.add(context.maps.makeSentence(words.get(s), tags.get(s), context.rootFirst,
+                                context.lowercase));
+
+                    long sum = 0;
+                    for (int round = 0; round < WARM_UP_ROUNDS; round++)
+                        sum += parseAll(session, words, tags) + searchAll(session, built, beamWidth);
+                    long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+                    for (int round = 0; round < ROUNDS; round++)
+                        sum += parseAll(session, words, tags);
+                    long middle = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+                    for (int round = 0; round < ROUNDS; round++)
+                        sum += searchAll(session, built, beamWidth);
+                    long after = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+                    MicroBenchmark.sink += sum;
+
+                    Result result = new Result(featureSet, beamWidth, sentences, tokens,
+                            (double) (middle - before) / (ROUNDS * sentences),
+                            (double) (after - middle) / (ROUNDS * sentences));
+                    System.out.println(result);
+                    results.add(result);
+                }
+            }
+            return results;
+        } finally {
+            File[] files = directory.listFiles();
+            if (files != null)
+                for (File file : files)
+                    file.delete();
+            directory.delete();
+        }
+    }
+
+    /**
+     * @return the thread bean of the JVM with allocation counting switched on
+     * @throws Exception if the JVM does not count the allocations of each thread
+     */
+    private static com.sun.management.ThreadMXBean threadBean() throws Exception {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean))
+            throw new Exception("this JVM does not count the allocated bytes of each thread");
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+                .getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported())
+            throw new Exception("this JVM does not count the allocated bytes of each thread");
+        threads.setThreadAllocatedMemoryEnabled(true);
+        return threads;
+    }
+
+    private static long parseAll(ParserSession session, ArrayList<String[]> words, ArrayList<String[]> tags) {
+        long sum = 0;
+        for (int s = 0; s < words.size(); s++)
+            sum += session.parse(words.get(s), tags.get(s)).state.getHead(1);
+        return sum;
+    }
+
+    private static long searchAll(ParserSession session, ArrayList<Sentence> sentences, int beamWidth) {
+        long sum = 0;
+        for (Sentence sentence : sentences)
+            sum += session.parse(sentence, beamWidth).state.getHead(1);
+        return sum;
+    }
+}
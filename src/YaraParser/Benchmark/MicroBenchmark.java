@@ -0,0 +1,132 @@
+package YaraParser.Benchmark;
+
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+
+/**
+ * Times one operation at a time in the way of JMH: a few warm-up iterations so the JIT compiles the operation, then
+ * measured iterations of a fixed time, each of which calls the operation in batches and reports the mean time per
+ * call. The results of the calls are summed up and published, so the JIT cannot drop the work.
+ * <p/>
+ * The batch size is chosen in the warm-up so that a batch takes at least {@link #MIN_BATCH_NANOS}; reading the clock
+ * then costs little compared to the operation.
+ */
+public class MicroBenchmark {
+    private static final long MIN_BATCH_NANOS = 100000;
+
+    /**
+     * the sums of the results end up here
+     */
+    public static volatile long sink;
+
+    /**
+     * One call of the measured code.
+     */
+    public interface Operation {
+        /**
+         * @param call number of the call, e.g. for cycling through the inputs of the benchmark
+         * @return any value that depends on the work done
+         */
+        long run(int call) throws Exception;
+    }
+
+    public static class Result {
+        public final String name;
+        public final int iterations;
+        public final double meanNanos;
+        public final double deviationNanos;
+        public final long calls;
+
+        Result(String name, int iterations, double meanNanos, double deviationNanos, long calls) {
+            this.name = name;
+            this.iterations = iterations;
+            this.meanNanos = meanNanos;
+            this.deviationNanos = deviationNanos;
+            this.calls = calls;
+        }
+
+        /**
+         * @return name, iterations, mean and standard deviation (ns/op) and calls, tab-separated
+         */
+        public String toRow() {
+            return name + "\t" + iterations + "\t" + meanNanos + "\t" + deviationNanos + "\t" + calls;
+        }
+
+        public String toString() {
+            DecimalFormat format = new DecimalFormat("0.000");
+            return String.format("%-36s %4d %16s +- %12s  ns/op", name, iterations, format.format(meanNanos),
+                    format.format(deviationNanos));
+        }
+    }
+
+    private final int warmUpIterations;
+    private final int iterations;
+    private final long iterationNanos;
+    private final String filter;
+    private final ArrayList<Result> results;
+
+    /**
+     * @param filter only the benchmarks whose names start with this are measured
+     */
+    public MicroBenchmark(int warmUpIterations, int iterations, long iterationMillis, String filter) {
+        this.warmUpIterations = warmUpIterations;
+        this.iterations = iterations;
+        iterationNanos = iterationMillis * 1000000L;
+        this.filter = filter;
+        results = new ArrayList<>();
+    }
+
+    /**
+     * @return the result, or null if the name does not match the filter
+     */
+    public Result measure(String name, Operation operation) throws Exception {
+        if (!name.startsWith(filter))
+            return null;
+        int batch = 1;
+        int call = 0;
+        long sum = 0;
+        for (int i = 0; i < warmUpIterations; i++) {
+            long start = System.nanoTime();
+            while (System.nanoTime() - start < iterationNanos) {
+                long batchStart = System.nanoTime();
+                for (int b = 0; b < batch; b++)
+                    sum += operation.run(call++);
+                if (System.nanoTime() - batchStart < MIN_BATCH_NANOS && batch < (1 << 20))
+                    batch *= 2;
+            }
+        }
+        double[] means = new double[iterations];
+        long calls = 0;
+        for (int i = 0; i < iterations; i++) {
+            long count = 0;
+            long start = System.nanoTime();
+            long elapsed;
+            do {
+                for (int b = 0; b < batch; b++)
+                    sum += operation.run(call++);
+                count += batch;
+                elapsed = System.nanoTime() - start;
+            } while (elapsed < iterationNanos);
+            means[i] = (double) elapsed / count;
+            calls += count;
+        }
+        sink = sum;
+
+        double mean = 0;
+        for (double value : means)
+            mean += value;
+        mean /= iterations;
+        double variance = 0;
+        for (double value : means)
+            variance += (value - mean) * (value - mean);
+        double deviation = iterations > 1 ? Math.sqrt(variance / (iterations - 1)) : 0;
+        Result result = new Result(name, iterations, mean, deviation, calls);
+        results.add(result);
+        System.out.println(result);
+        return result;
+    }
+
+    public ArrayList<Result> getResults() {
+        return results;
+    }
+}
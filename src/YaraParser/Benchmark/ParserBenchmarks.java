@@ -0,0 +1,377 @@
+package YaraParser.Benchmark;
+
+import YaraParser.Accessories.CoNLLReader;
+import YaraParser.Accessories.CompactTreebank;
+import YaraParser.Accessories.Options;
+import YaraParser.Learning.AveragedPerceptron;
+import YaraParser.Learning.BinaryPerceptron;
+import YaraParser.Structures.IndexMaps;
+import YaraParser.Structures.InfStruct;
+import YaraParser.TransitionBasedSystem.Configuration.BeamElement;
+import YaraParser.TransitionBasedSystem.Configuration.Configuration;
+import YaraParser.TransitionBasedSystem.Configuration.GoldConfiguration;
+import YaraParser.TransitionBasedSystem.Configuration.State;
+import YaraParser.TransitionBasedSystem.Features.FeatureExtractor;
+import YaraParser.TransitionBasedSystem.Parser.Actions;
+import YaraParser.TransitionBasedSystem.Parser.ArcEager;
+import YaraParser.TransitionBasedSystem.Trainer.ArcEagerBeamTrainer;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * Microbenchmarks of the hot paths of the parser: feature extraction for each feature set, the perceptron score of
+ * each action, cloning a state, the arc-eager transitions, choosing the top k candidates of a beam step and loading
+ * a model. The numbers are meant to be compared before and after a change on the same machine.
+ * <p/>
+ * The fixture trains a small model for each feature set (basic, extended and extended with Brown clusters) on a
+ * treebank, by default the sample treebank in this class, and parses its sentences greedily; the configurations met
+ * on the way are the inputs of the benchmarks. Without a cluster file, the words get clusters made from their hash.
+ * Everything is seeded, so two runs measure the same work.
+ */
+public class ParserBenchmarks {
+    private static final int WARM_UP_ITERATIONS = 5;
+    private static final int ITERATIONS = 10;
+    private static final long ITERATION_MILLIS = 200;
+    private static final int TRAINING_ITERATIONS = 2;
+    private static final int TRAINING_BEAM = 8;
+
+    /**
+     * A few hand-written projective trees in CoNLL 2006 format
+     */
+    private static final String[][] SAMPLE = {
+            {"The DT 2 det", "parser NN 3 nsubj", "reads VBZ 0 root", "the DT 5 det", "sentence NN 3 dobj",
+                    ". . 3 punct"},
+            {"A DT 3 det", "small JJ 3 amod", "model NN 4 nsubj", "parses VBZ 0 root", "short JJ 6 amod",
+                    "sentences NNS 4 dobj", "quickly RB 4 advmod", ". . 4 punct"},
+            {"He PRP 2 nsubj", "is VBZ 0 root", "nice JJ 2 acomp", ". . 2 punct"},
+            {"The DT 2 det", "students NNS 4 nsubj", "have VBP 4 aux", "trained VBN 0 root", "their PRP$ 6 poss",
+                    "models NNS 4 dobj", "on IN 4 prep", "the DT 10 det", "new JJ 10 amod", "treebank NN 7 pobj",
+                    ". . 4 punct"},
+            {"She PRP 2 nsubj", "wrote VBD 0 root", "a DT 4 det", "paper NN 2 dobj", "and CC 2 cc",
+                    "gave VBD 2 conj", "a DT 8 det", "talk NN 6 dobj", ". . 2 punct"},
+            {"Beam NN 2 nn", "search NN 3 nsubj", "keeps VBZ 0 root", "the DT 6 det", "best JJS 6 amod",
+                    "configurations NNS 3 dobj", "at IN 3 prep", "every DT 9 det", "step NN 7 pobj", ". . 3 punct"},
+            {"The DT 2 det", "weights NNS 4 nsubjpass", "are VBP 4 auxpass", "averaged VBN 0 root",
+                    "after IN 4 prep", "each DT 7 det", "iteration NN 5 pobj", ". . 4 punct"},
+            {"Many JJ 2 amod", "features NNS 3 nsubj", "use VBP 0 root", "the DT 5 det", "words NNS 3 dobj",
+                    "of IN 5 prep", "the DT 8 det", "stack NN 6 pobj", ". . 3 punct"},
+            {"They PRP 2 nsubj", "evaluated VBD 0 root", "the DT 5 det", "labeled JJ 5 amod", "accuracy NN 2 dobj",
+                    "on IN 2 prep", "the DT 9 det", "development NN 9 nn", "set NN 6 pobj", ". . 2 punct"},
+            {"The DT 2 det", "server NN 3 nsubj", "answers VBZ 0 root", "requests NNS 3 dobj", "from IN 4 prep",
+                    "several JJ 7 amod", "clients NNS 5 pobj", ". . 3 punct"}
+    };
+
+    /**
+     * A trained model of one feature set and the configurations it goes through when parsing the treebank
+     */
+    static class Fixture {
+        final String name;
+        final int featureLength;
+        final String modelPath;
+        final AveragedPerceptron classifier;
+        final ArrayList<Integer> dependencyRelations;
+        final ArrayList<Configuration> configurations;
+
+        Fixture(String name, int featureLength, String modelPath, AveragedPerceptron classifier,
+                ArrayList<Integer> dependencyRelations, ArrayList<Configuration> configurations) {
+            this.name = name;
+            this.featureLength = featureLength;
+            this.modelPath = modelPath;
+            this.classifier = classifier;
+            this.dependencyRelations = dependencyRelations;
+            this.configurations = configurations;
+        }
+    }
+
+    /**
+     * @param treebankPath CoNLL file to train the fixture models on; empty for the sample treebank
+     * @param clusterFile  Brown clusters for the cluster features; empty for clusters made from the word hashes
+     * @param filter       only the benchmarks whose names start with this are measured
+     * @param reportPath   if not empty, the results are written there as tab-separated rows
+     */
+    public static ArrayList<MicroBenchmark.Result> run(String treebankPath, String clusterFile, String filter,
+                                                       String reportPath) throws Exception {
+        File directory = Files.createTempDirectory("yara-bench").toFile();
+        try {
+            if (treebankPath.length() == 0)
+                treebankPath = writeSample(directory);
+            if (clusterFile.length() == 0)
+                clusterFile = writeHashClusters(treebankPath, directory);
+            ArrayList<Fixture> fixtures = new ArrayList<>();
+            fixtures.add(fixture("basic", 26, treebankPath, "", directory));
+            fixtures.add(fixture("extended", 72, treebankPath, "", directory));
+            fixtures.add(fixture("brown", 153, treebankPath, clusterFile, directory));
+
+            MicroBenchmark benchmark = new MicroBenchmark(WARM_UP_ITERATIONS, ITERATIONS, ITERATION_MILLIS, filter);
+            for (Fixture fixture : fixtures)
+                benchmarkFeatures(benchmark, fixture);
+            // the extended feature set is the default of the trainer
+            benchmarkScores(benchmark, fixtures.get(1));
+            benchmarkStates(benchmark, fixtures.get(1));
+            benchmarkTransitions(benchmark, fixtures.get(1));
+            benchmarkTopK(benchmark, fixtures.get(1));
+            for (Fixture fixture : fixtures)
+                benchmark.measure("load." + fixture.name, call -> new InfStruct(fixture.modelPath).dependencySize);
+
+            if (reportPath.length() > 0) {
+                BufferedWriter writer = new BufferedWriter(new FileWriter(reportPath));
+                writer.write("benchmark\titerations\tns/op\tdeviation\tcalls\n");
+                for (MicroBenchmark.Result result : benchmark.getResults())
+                    writer.write(result.toRow() + "\n");
+                writer.close();
+            }
+            return benchmark.getResults();
+        } finally {
+            File[] files = directory.listFiles();
+            if (files != null)
+                for (File file : files)
+                    file.delete();
+            directory.delete();
+        }
+    }
+
+    private static void benchmarkFeatures(MicroBenchmark benchmark, Fixture fixture) throws Exception {
+        ArrayList<Configuration> configurations = fixture.configurations;
+        Object[] featureMap = new Object[fixture.featureLength];
+        benchmark.measure("features." + fixture.name + "(" + fixture.featureLength + ")", call -> {
+            FeatureExtractor.extractAllParseFeatures(configurations.get(call % configurations.size()), featureMap);
+            return featureMap[0] == null ? 0 : 1;
+        });
+    }
+
+    private static void benchmarkScores(MicroBenchmark benchmark, Fixture fixture) throws Exception {
+        AveragedPerceptron classifier = fixture.classifier;
+        ArrayList<Object[]> features = new ArrayList<>();
+        for (Configuration configuration : fixture.configurations)
+            features.add(FeatureExtractor.extractAllParseFeatures(configuration, fixture.featureLength));
+        float[] scores = new float[classifier.dependencySize];
+        benchmark.measure("score.shift", call ->
+                Float.floatToRawIntBits(classifier.shiftScore(features.get(call % features.size()), true)));
+        benchmark.measure("score.reduce", call ->
+                Float.floatToRawIntBits(classifier.reduceScore(features.get(call % features.size()), true)));
+        benchmark.measure("score.rightArc", call ->
+                Float.floatToRawIntBits(classifier.rightArcScores(features.get(call % features.size()), true,
+                        scores)[0]));
+        benchmark.measure("score.leftArc", call ->
+                Float.floatToRawIntBits(classifier.leftArcScores(features.get(call % features.size()), true,
+                        scores)[0]));
+    }
+
+    private static void benchmarkStates(MicroBenchmark benchmark, Fixture fixture) throws Exception {
+        ArrayList<Configuration> configurations = fixture.configurations;
+        State scratch = new State(0);
+        benchmark.measure("state.clone", call ->
+                configurations.get(call % configurations.size()).state.clone().bufferHead());
+        benchmark.measure("state.copyFrom", call -> {
+            scratch.copyFrom(configurations.get(call % configurations.size()).state);
+            return scratch.bufferHead();
+        });
+    }
+
+    /**
+     * Each transition is applied to a copy of a state in which it is allowed; state.copyFrom is the cost of the
+     * copy alone.
+     */
+    private static void benchmarkTransitions(MicroBenchmark benchmark, Fixture fixture) throws Exception {
+        Actions[] actions = {Actions.Shift, Actions.Reduce, Actions.RightArc, Actions.LeftArc};
+        int label = fixture.dependencyRelations.get(0);
+        for (Actions action : actions) {
+            ArrayList<State> states = new ArrayList<>();
+            for (Configuration configuration : fixture.configurations)
+                if (ArcEager.canDo(action, configuration.state))
+                    states.add(configuration.state);
+            if (states.isEmpty())
+                continue;
+            State scratch = new State(0);
+            benchmark.measure("transition." + action, call -> {
+                scratch.copyFrom(states.get(call % states.size()));
+                if (action == Actions.Shift)
+                    ArcEager.shift(scratch);
+                else if (action == Actions.Reduce)
+                    ArcEager.reduce(scratch);
+                else if (action == Actions.RightArc)
+                    ArcEager.rightArc(scratch, label);
+                else
+                    ArcEager.leftArc(scratch, label);
+                return scratch.bufferHead();
+            });
+        }
+    }
+
+    /**
+     * Keeps the k best of the candidates of a full beam of 64 configurations, with shift, reduce and an arc of each
+     * label for each configuration, the same way as the parser does.
+     */
+    private static void benchmarkTopK(MicroBenchmark benchmark, Fixture fixture) throws Exception {
+        int beamWidth = 64;
+        int labels = fixture.dependencyRelations.size();
+        int perConfiguration = 2 + 2 * labels;
+        int candidates = beamWidth * perConfiguration;
+        Random random = new Random(0);
+        float[][] scoreSets = new float[16][candidates];
+        for (float[] scores : scoreSets)
+            for (int i = 0; i < candidates; i++)
+                scores[i] = (float) random.nextGaussian();
+        for (int k : new int[]{1, 8, 64}) {
+            benchmark.measure("beam.top" + k, call -> {
+                float[] scores = scoreSets[call % scoreSets.length];
+                TreeSet<BeamElement> beamPreserver = new TreeSet<>();
+                for (int i = 0; i < candidates; i++) {
+                    int j = i % perConfiguration;
+                    int action = j < 2 ? j : (j < 2 + labels ? 2 : 3);
+                    beamPreserver.add(new BeamElement(scores[i], i / perConfiguration, action,
+                            j < 2 ? -1 : (j - 2) % labels));
+                    if (beamPreserver.size() > k)
+                        beamPreserver.pollFirst();
+                }
+                return beamPreserver.last().number;
+            });
+        }
+    }
+
+    private static Fixture fixture(String name, int featureLength, String treebankPath, String clusterFile,
+                                   File directory) throws Exception {
+        String modelPath = train(name, featureLength, treebankPath, clusterFile, directory, TRAINING_ITERATIONS);
+        InfStruct infStruct = new InfStruct(modelPath);
+        AveragedPerceptron classifier = new AveragedPerceptron(infStruct);
+        ArrayList<Configuration> configurations = new ArrayList<>();
+        for (GoldConfiguration goldConfiguration : new CoNLLReader(treebankPath).readData(Integer.MAX_VALUE, false,
+                true, infStruct.options.rootFirst, infStruct.options.lowercase, infStruct.maps))
+            parseGreedily(new Configuration(goldConfiguration.getSentence(), infStruct.options.rootFirst),
+                    classifier, infStruct.dependencyLabels, featureLength, configurations);
+        return new Fixture(name, featureLength, modelPath, classifier, infStruct.dependencyLabels, configurations);
+    }
+
+    /**
+     * Trains a model with a small beam and the static oracle on one thread and saves it in the directory.
+     *
+     * @param clusterFile Brown clusters; only used by the cluster feature set (153 features)
+     * @return the path of the model
+     */
+    static String train(String name, int featureLength, String treebankPath, String clusterFile, File directory,
+                        int iterations) throws Exception {
+        System.out.println("training the " + name + " model");
+        Options options = new Options();
+        options.beamWidth = TRAINING_BEAM;
+        options.numOfThreads = 1;
+        // the static oracle trains faster; the models only have to be good enough to parse like real ones
+        options.useDynamicOracle = false;
+        options.useExtendedFeatures = featureLength == 72;
+        options.useExtendedWithBrownClusterFeatures = featureLength == 153;
+        options.clusterFile = featureLength == 153 ? clusterFile : "";
+        CompactTreebank treebank = CoNLLReader.createCompactTreebank(treebankPath, options.labeled,
+                options.lowercase, options.clusterFile, options.rootFirst, false);
+        IndexMaps maps = treebank.getMaps();
+        ArrayList<Integer> dependencyRelations = new ArrayList<>(maps.getLabels().keySet());
+        ArcEagerBeamTrainer trainer = new ArcEagerBeamTrainer("max_violation",
+                new AveragedPerceptron(featureLength, dependencyRelations.size()),
+                new BinaryPerceptron(featureLength, dependencyRelations.size()), options, dependencyRelations,
+                featureLength, maps);
+        String modelPath = new File(directory, name).getPath();
+        trainer.train(treebank, treebank.size(), "", iterations, modelPath, options.lowercase,
+                options.punctuations, options.partialTrainingStartingIteration);
+        return modelPath + "_iter" + iterations;
+    }
+
+    /**
+     * Parses with a beam of one and adds a copy of each configuration on the way to the list.
+     */
+    private static void parseGreedily(Configuration configuration, AveragedPerceptron classifier,
+                                      ArrayList<Integer> dependencyRelations, int featureLength,
+                                      ArrayList<Configuration> configurations) {
+        State state = configuration.state;
+        while (state.isNotTerminalState()) {
+            configurations.add(configuration.clone());
+            Object[] features = FeatureExtractor.extractAllParseFeatures(configuration, featureLength);
+            float bestScore = Float.NEGATIVE_INFINITY;
+            int bestAction = -1;
+            int bestLabel = -1;
+            if (ArcEager.canDo(Actions.Shift, state)) {
+                bestScore = classifier.shiftScore(features, true);
+                bestAction = 0;
+            }
+            if (ArcEager.canDo(Actions.Reduce, state) && classifier.reduceScore(features, true) > bestScore) {
+                bestScore = classifier.reduceScore(features, true);
+                bestAction = 1;
+            }
+            if (ArcEager.canDo(Actions.RightArc, state)) {
+                float[] scores = classifier.rightArcScores(features, true);
+                for (int dependency : dependencyRelations) {
+                    if (scores[dependency] > bestScore) {
+                        bestScore = scores[dependency];
+                        bestAction = 2;
+                        bestLabel = dependency;
+                    }
+                }
+            }
+            if (ArcEager.canDo(Actions.LeftArc, state)) {
+                float[] scores = classifier.leftArcScores(features, true);
+                for (int dependency : dependencyRelations) {
+                    if (scores[dependency] > bestScore) {
+                        bestScore = scores[dependency];
+                        bestAction = 3;
+                        bestLabel = dependency;
+                    }
+                }
+            }
+            if (bestAction == 0)
+                ArcEager.shift(state);
+            else if (bestAction == 1)
+                ArcEager.reduce(state);
+            else if (bestAction == 2)
+                ArcEager.rightArc(state, bestLabel);
+            else if (bestAction == 3)
+                ArcEager.leftArc(state, bestLabel);
+            else
+                break;
+        }
+    }
+
+    private static String writeSample(File directory) throws Exception {
+        File file = new File(directory, "sample.conll");
+        BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+        for (String[] sentence : SAMPLE) {
+            for (int i = 0; i < sentence.length; i++) {
+                String[] token = sentence[i].split(" ");
+                writer.write((i + 1) + "\t" + token[0] + "\t_\t" + token[1] + "\t" + token[1] + "\t_\t" + token[2]
+                        + "\t" + token[3] + "\t_\t_\n");
+            }
+            writer.write("\n");
+        }
+        writer.close();
+        return file.getPath();
+    }
+
+    /**
+     * Writes a cluster file in the format of Percy Liang's Brown clustering, with a 12-bit path made from the hash of
+     * each word of the treebank.
+     */
+    private static String writeHashClusters(String treebankPath, File directory) throws Exception {
+        LinkedHashSet<String> words = new LinkedHashSet<>();
+        BufferedReader reader = new BufferedReader(new FileReader(treebankPath));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String[] fields = line.split("\t");
+            if (fields.length > 1)
+                words.add(fields[1]);
+        }
+        reader.close();
+        File file = new File(directory, "clusters.txt");
+        BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+        for (String word : words) {
+            String path = Integer.toBinaryString((word.hashCode() & 0xfff) | 0x1000).substring(1);
+            writer.write(path + "\t" + word + "\t1\n");
+        }
+        writer.close();
+        return file.getPath();
+    }
+}
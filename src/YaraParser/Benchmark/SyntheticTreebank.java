@@ -0,0 +1,366 @@
+package YaraParser.Benchmark;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Random;
+
+/**
+ * Writes synthetic treebanks in CoNLL 2006 format that can be given away, for measuring speed where the licensed
+ * treebanks cannot be copied to.
+ * <p/>
+ * Each sentence is grown from a root verb with its subject and final punctuation by attaching dependents to random
+ * words, following a small dependency grammar over Penn Treebank tags and Stanford basic labels (determiners and
+ * adjectives on the left of nouns, prepositions with their objects on the right, and so on), until it has the length
+ * drawn for it. The lengths follow a log-normal distribution with the given mean. The dependents of a word are
+ * written on its side, outside the ones it already has, so all trees are projective. The open-class words are drawn
+ * from a Zipfian distribution over a made-up vocabulary of the given size, with the usual suffixes of their tags;
+ * the closed classes have their real words.
+ * <p/>
+ * The Brown cluster file of the vocabulary puts the words of each tag under one prefix, with the rest of the bit
+ * string made from the hash of the word.
+ */
+public class SyntheticTreebank {
+    /**
+     * spread of the log-normal sentence length distribution
+     */
+    private static final double LENGTH_SIGMA = 0.5;
+    private static final String[] SYLLABLES = {"ba", "ce", "di", "fo", "gu", "ha", "ke", "li", "mo", "nu", "pa",
+            "re", "si", "to", "vu", "wa", "xe", "yo", "za", "lu"};
+
+    /**
+     * open word classes: the tag (or family of tags) and its share of the vocabulary
+     */
+    private static final String[] OPEN_CLASSES = {"NN", "NNS", "NNP", "VB", "JJ", "RB", "CD"};
+    private static final double[] OPEN_SHARES = {0.35, 0.15, 0.15, 0.15, 0.12, 0.05, 0.03};
+    private static final String[] VERB_TAGS = {"VBD", "VBZ", "VBP", "VB"};
+
+    private static final String[][] CLOSED_CLASSES = {
+            {"DT", "the", "a", "an", "this", "that", "every", "some", "no", "these", "those"},
+            {"IN", "of", "in", "on", "for", "with", "at", "from", "by", "about", "after", "under", "over"},
+            {"PRP", "he", "she", "it", "they", "we", "I", "you"},
+            {"PRP$", "his", "her", "its", "their", "our", "my", "your"},
+            {"MD", "will", "can", "would", "could", "should", "may", "must"},
+            {"CC", "and", "or", "but"},
+            {"TO", "to"},
+            {".", ".", "?", "!"},
+            {",", ","}
+    };
+
+    /**
+     * The dependents a word can take: head category, label, dependent category, side, weight, at most this many per
+     * head. The categories are the open classes (V stands for all verb tags) and the closed-class tags.
+     */
+    private static final Rule[] RULES = {
+            new Rule("V", "dobj", "NN", false, 6, 1),
+            new Rule("V", "dobj", "NNS", false, 3, 1),
+            new Rule("V", "aux", "MD", true, 2, 1),
+            new Rule("V", "advmod", "RB", true, 2, 1),
+            new Rule("V", "advmod", "RB", false, 2, 2),
+            new Rule("V", "prep", "IN", false, 6, 3),
+            new Rule("V", "ccomp", "V", false, 1, 1),
+            new Rule("V", "xcomp", "TO", false, 1, 1),
+            new Rule("V", "cc", "CC", false, 1, 1),
+            new Rule("V", "conj", "V", false, 1, 1),
+            new Rule("V", "punct", ",", false, 1, 1),
+            new Rule("NN", "det", "DT", true, 8, 1),
+            new Rule("NN", "amod", "JJ", true, 5, 2),
+            new Rule("NN", "nn", "NN", true, 3, 2),
+            new Rule("NN", "poss", "PRP$", true, 2, 1),
+            new Rule("NN", "prep", "IN", false, 4, 2),
+            new Rule("NN", "rcmod", "V", false, 1, 1),
+            new Rule("NNS", "det", "DT", true, 4, 1),
+            new Rule("NNS", "amod", "JJ", true, 5, 2),
+            new Rule("NNS", "num", "CD", true, 3, 1),
+            new Rule("NNS", "prep", "IN", false, 3, 2),
+            new Rule("NNS", "cc", "CC", false, 1, 1),
+            new Rule("NNS", "conj", "NNS", false, 1, 1),
+            new Rule("NNP", "nn", "NNP", true, 3, 2),
+            new Rule("NNP", "appos", "NN", false, 1, 1),
+            new Rule("JJ", "advmod", "RB", true, 2, 1),
+            new Rule("CD", "quantmod", "RB", true, 1, 1)
+    };
+
+    private static class Rule {
+        final String head;
+        final String label;
+        final String dependent;
+        final boolean left;
+        final int weight;
+        final int max;
+
+        Rule(String head, String label, String dependent, boolean left, int weight, int max) {
+            this.head = head;
+            this.label = label;
+            this.dependent = dependent;
+            this.left = left;
+            this.weight = weight;
+            this.max = max;
+        }
+    }
+
+    private static class Node {
+        final String category;
+        final String label;
+        String tag;
+        String word;
+        final ArrayList<Node> left;
+        final ArrayList<Node> right;
+        /**
+         * position in the sentence, from 1
+         */
+        int index;
+
+        Node(String category, String label) {
+            this.category = category;
+            this.label = label;
+            left = new ArrayList<>();
+            right = new ArrayList<>();
+        }
+
+        int count(String dependentLabel) {
+            int count = 0;
+            for (Node node : left)
+                if (node.label.equals(dependentLabel))
+                    count++;
+            for (Node node : right)
+                if (node.label.equals(dependentLabel))
+                    count++;
+            return count;
+        }
+    }
+
+    private final Random random;
+    private final double meanLength;
+    private final String[][] vocabularies;
+    private final double[][] cumulativeWeights;
+
+    /**
+     * @param vocabularySize number of different open-class words
+     * @param zipfExponent   exponent s of the word distribution; the word of rank r has a weight of 1/r^s
+     * @param meanLength     mean number of tokens of a sentence, punctuation included
+     */
+    public SyntheticTreebank(int vocabularySize, double zipfExponent, double meanLength, long seed) {
+        random = new Random(seed);
+        this.meanLength = meanLength;
+        vocabularies = new String[OPEN_CLASSES.length][];
+        cumulativeWeights = new double[OPEN_CLASSES.length][];
+        int first = 0;
+        for (int c = 0; c < OPEN_CLASSES.length; c++) {
+            int size = Math.max(1, (int) (vocabularySize * OPEN_SHARES[c]));
+            vocabularies[c] = new String[size];
+            cumulativeWeights[c] = new double[size];
+            double sum = 0;
+            for (int r = 0; r < size; r++) {
+                vocabularies[c][r] = stem(first + r);
+                sum += 1 / Math.pow(r + 1, zipfExponent);
+                cumulativeWeights[c][r] = sum;
+            }
+            first += size;
+        }
+    }
+
+    /**
+     * Writes the sentences to a CoNLL file.
+     */
+    public void write(String path, int sentences) throws Exception {
+        BufferedWriter writer = new BufferedWriter(new FileWriter(path));
+        for (int s = 0; s < sentences; s++) {
+            for (String row : sentence())
+                writer.write(row + "\n");
+            writer.write("\n");
+        }
+        writer.close();
+    }
+
+    /**
+     * Writes a Brown cluster file with every word the generator can produce.
+     */
+    public void writeClusters(String path) throws Exception {
+        LinkedHashSet<String> lines = new LinkedHashSet<>();
+        for (int c = 0; c < OPEN_CLASSES.length; c++) {
+            for (int r = 0; r < vocabularies[c].length; r++) {
+                if (OPEN_CLASSES[c].equals("VB")) {
+                    for (String tag : VERB_TAGS)
+                        lines.add(clusterLine(c, inflect(vocabularies[c][r], tag)));
+                } else {
+                    lines.add(clusterLine(c, inflect(vocabularies[c][r], OPEN_CLASSES[c])));
+                }
+            }
+        }
+        for (int c = 0; c < CLOSED_CLASSES.length; c++)
+            for (int w = 1; w < CLOSED_CLASSES[c].length; w++)
+                lines.add(clusterLine(OPEN_CLASSES.length + c, CLOSED_CLASSES[c][w]));
+        BufferedWriter writer = new BufferedWriter(new FileWriter(path));
+        for (String line : lines)
+            writer.write(line + "\n");
+        writer.close();
+    }
+
+    private static String clusterLine(int wordClass, String word) {
+        String prefix = Integer.toBinaryString(wordClass | 0x10).substring(1);
+        String suffix = Integer.toBinaryString((word.hashCode() & 0xff) | 0x100).substring(1);
+        return prefix + suffix + "\t" + word + "\t1";
+    }
+
+    /**
+     * @return the CoNLL rows of a new sentence
+     */
+    public String[] sentence() {
+        int length = (int) Math.round(Math.exp(Math.log(meanLength) - LENGTH_SIGMA * LENGTH_SIGMA / 2
+                + LENGTH_SIGMA * random.nextGaussian()));
+        length = Math.max(3, Math.min(length, (int) (5 * meanLength)));
+
+        Node root = node("V", "root");
+        attach(root, true, node(random.nextInt(3) == 0 ? "PRP" : "NN", "nsubj"));
+        ArrayList<Node> nodes = new ArrayList<>();
+        collect(root, nodes);
+        // the final punctuation is not in the tree until the end, so it stays the last word
+        while (nodes.size() + 1 < length) {
+            Node head = nodes.get(random.nextInt(nodes.size()));
+            Rule rule = rule(head);
+            if (rule == null)
+                continue;
+            Node dependent = node(rule.dependent, rule.label);
+            attach(head, rule.left, dependent);
+            collect(dependent, nodes);
+        }
+        Node punctuation = node(".", "punct");
+        root.right.add(punctuation);
+
+        ArrayList<Node> order = new ArrayList<>();
+        linearize(root, order);
+        for (int i = 0; i < order.size(); i++)
+            order.get(i).index = i + 1;
+        String[] rows = new String[order.size()];
+        fillRows(root, 0, rows);
+        return rows;
+    }
+
+    private Node node(String category, String label) {
+        Node node = new Node(category, label);
+        int openClass = Arrays.asList(OPEN_CLASSES).indexOf(category.equals("V") ? "VB" : category);
+        if (category.equals("V")) {
+            node.tag = VERB_TAGS[random.nextInt(VERB_TAGS.length)];
+            node.word = inflect(zipfWord(openClass), node.tag);
+        } else if (openClass >= 0) {
+            node.tag = category;
+            node.word = inflect(zipfWord(openClass), category);
+        } else {
+            for (String[] closedClass : CLOSED_CLASSES) {
+                if (closedClass[0].equals(category)) {
+                    node.tag = category;
+                    node.word = closedClass[1 + random.nextInt(closedClass.length - 1)];
+                }
+            }
+        }
+        // the words that cannot stand alone get their obligatory dependents
+        if (category.equals("IN"))
+            attach(node, false, node(random.nextInt(3) == 0 ? "NNS" : "NN", "pobj"));
+        else if (category.equals("TO"))
+            attach(node, false, node("V", "pcomp"));
+        else if (category.equals("V") && (label.equals("ccomp") || label.equals("rcmod")))
+            attach(node, true, node(random.nextInt(2) == 0 ? "PRP" : "NN", "nsubj"));
+        return node;
+    }
+
+    /**
+     * @return a rule of the head chosen by weight, or null if the head cannot take more dependents
+     */
+    private Rule rule(Node head) {
+        int total = 0;
+        for (Rule rule : RULES)
+            if (rule.head.equals(head.category) && head.count(rule.label) < rule.max)
+                total += rule.weight;
+        if (total == 0)
+            return null;
+        int pick = random.nextInt(total);
+        for (Rule rule : RULES) {
+            if (rule.head.equals(head.category) && head.count(rule.label) < rule.max) {
+                pick -= rule.weight;
+                if (pick < 0)
+                    return rule;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Puts the dependent outside the ones the head already has on that side.
+     */
+    private static void attach(Node head, boolean left, Node dependent) {
+        if (left)
+            head.left.add(0, dependent);
+        else
+            head.right.add(dependent);
+    }
+
+    private static void collect(Node node, ArrayList<Node> nodes) {
+        nodes.add(node);
+        for (Node dependent : node.left)
+            collect(dependent, nodes);
+        for (Node dependent : node.right)
+            collect(dependent, nodes);
+    }
+
+    private static void linearize(Node node, ArrayList<Node> order) {
+        for (Node dependent : node.left)
+            linearize(dependent, order);
+        order.add(node);
+        for (Node dependent : node.right)
+            linearize(dependent, order);
+    }
+
+    private static void fillRows(Node node, int head, String[] rows) {
+        rows[node.index - 1] = node.index + "\t" + node.word + "\t_\t" + node.tag + "\t" + node.tag + "\t_\t"
+                + head + "\t" + node.label + "\t_\t_";
+        for (Node dependent : node.left)
+            fillRows(dependent, node.index, rows);
+        for (Node dependent : node.right)
+            fillRows(dependent, node.index, rows);
+    }
+
+    private String zipfWord(int openClass) {
+        double[] cumulative = cumulativeWeights[openClass];
+        double value = random.nextDouble() * cumulative[cumulative.length - 1];
+        int rank = Arrays.binarySearch(cumulative, value);
+        if (rank < 0)
+            rank = -rank - 1;
+        return vocabularies[openClass][Math.min(rank, cumulative.length - 1)];
+    }
+
+    /**
+     * @return a made-up word stem of two or more syllables for the id
+     */
+    private static String stem(int id) {
+        StringBuilder stem = new StringBuilder();
+        int rest = id;
+        do {
+            stem.append(SYLLABLES[rest % SYLLABLES.length]);
+            rest /= SYLLABLES.length;
+        } while (rest > 0 || stem.length() < 4);
+        return stem.toString();
+    }
+
+    private static String inflect(String stem, String tag) {
+        switch (tag) {
+            case "NNS":
+            case "VBZ":
+                return stem + "s";
+            case "NNP":
+                return Character.toUpperCase(stem.charAt(0)) + stem.substring(1);
+            case "VBD":
+                return stem + "ed";
+            case "JJ":
+                return stem + "ous";
+            case "RB":
+                return stem + "ly";
+            case "CD":
+                return Integer.toString(stem.hashCode() & 0xffff);
+            default:
+                return stem;
+        }
+    }
+}
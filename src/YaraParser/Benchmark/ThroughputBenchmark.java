@@ -0,0 +1,193 @@
+package YaraParser.Benchmark;
+
+import YaraParser.Accessories.CoNLLReader;
+import YaraParser.Learning.AveragedPerceptron;
+import YaraParser.Structures.InfStruct;
+import YaraParser.Structures.Sentence;
+import YaraParser.TransitionBasedSystem.Configuration.Configuration;
+import YaraParser.TransitionBasedSystem.Configuration.GoldConfiguration;
+import YaraParser.TransitionBasedSystem.Parser.KBeamArcEagerParser;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the end-to-end parsing speed on a {@link SyntheticTreebank}: trains a small model for each feature set on
+ * a generated training set and parses a generated test set with {@link KBeamArcEagerParser#parseBatch} for every
+ * combination of beam width and number of threads. Each run reports sentences per second, milliseconds per arc, the
+ * unlabeled attachment score and the peak heap (the sum of the peaks of the heap pools during the run). The report
+ * is a JSON document with the settings of the generator and one object per run.
+ * <p/>
+ * Before each run, the parser is warmed up with the first sentences of the test set with the same beam width and
+ * threads, and the heap is collected.
+ */
+public class ThroughputBenchmark {
+    private static final int TRAIN_SENTENCES = 100;
+    private static final int TRAINING_ITERATIONS = 2;
+    private static final int WARM_UP_SENTENCES = 100;
+
+    /**
+     * @param sentences      number of sentences of the test set
+     * @param vocabularySize open-class words of the generator
+     * @param zipfExponent   exponent of the word distribution
+     * @param meanLength     mean sentence length
+     * @param seed           seed of the generator
+     * @param featureSets    names of the feature sets: basic, extended or brown
+     * @param reportPath     the report is written there, or printed if it is empty
+     */
+    public static void run(int sentences, int vocabularySize, double zipfExponent, double meanLength, long seed,
+                           List<String> featureSets, List<Integer> beamWidths, List<Integer> threadCounts,
+                           String reportPath) throws Exception {
+        File directory = Files.createTempDirectory("yara-throughput").toFile();
+        try {
+            SyntheticTreebank generator = new SyntheticTreebank(vocabularySize, zipfExponent, meanLength, seed);
+            String trainPath = new File(directory, "train.conll").getPath();
+            String testPath = new File(directory, "test.conll").getPath();
+            String clusterPath = new File(directory, "clusters.txt").getPath();
+            generator.write(trainPath, TRAIN_SENTENCES);
+            generator.write(testPath, sentences);
+            generator.writeClusters(clusterPath);
+
+            StringBuilder report = new StringBuilder();
+            report.append("{\n  \"generator\": {\"trainSentences\": ").append(TRAIN_SENTENCES)
+                    .append(", \"testSentences\": ").append(sentences)
+                    .append(", \"vocabulary\": ").append(vocabularySize)
+                    .append(", \"zipfExponent\": ").append(zipfExponent)
+                    .append(", \"meanLength\": ").append(meanLength)
+                    .append(", \"seed\": ").append(seed).append("},\n")
+                    .append("  \"trainingIterations\": ").append(TRAINING_ITERATIONS).append(",\n")
+                    .append("  \"availableProcessors\": ").append(Runtime.getRuntime().availableProcessors())
+                    .append(",\n  \"runs\": [");
+            boolean first = true;
+            for (String featureSet : featureSets) {
+                int featureLength = featureLength(featureSet);
+                String modelPath = ParserBenchmarks.train(featureSet, featureLength, trainPath, clusterPath,
+                        directory, TRAINING_ITERATIONS);
+                InfStruct infStruct = new InfStruct(modelPath);
+                AveragedPerceptron classifier = new AveragedPerceptron(infStruct);
+                boolean rootFirst = infStruct.options.rootFirst;
+                ArrayList<GoldConfiguration> data = new CoNLLReader(testPath).readData(Integer.MAX_VALUE, true, true,
+                        rootFirst, infStruct.options.lowercase, infStruct.maps);
+                ArrayList<Sentence> testSentences = new ArrayList<>(data.size());
+                int arcs = 0;
+                for (GoldConfiguration goldConfiguration : data) {
+                    testSentences.add(goldConfiguration.getSentence());
+                    arcs += length(goldConfiguration, rootFirst);
+                }
+                List<Sentence> warmUpSentences = testSentences.subList(0,
+                        Math.min(WARM_UP_SENTENCES, testSentences.size()));
+
+                for (int threads : threadCounts) {
+                    KBeamArcEagerParser parser = new KBeamArcEagerParser(classifier, infStruct.dependencyLabels,
+                            featureLength, infStruct.maps, threads);
+                    try {
+                        for (int beamWidth : beamWidths) {
+                            parser.parseBatch(warmUpSentences, rootFirst, beamWidth).join();
+                            System.gc();
+                            List<MemoryPoolMXBean> heapPools = heapPools();
+                            for (MemoryPoolMXBean pool : heapPools)
+                                pool.resetPeakUsage();
+                            long start = System.nanoTime();
+                            List<Configuration> parses = parser.parseBatch(testSentences, rootFirst, beamWidth)
+                                    .join();
+                            long nanos = System.nanoTime() - start;
+                            long peakHeap = 0;
+                            for (MemoryPoolMXBean pool : heapPools)
+                                peakHeap += pool.getPeakUsage().getUsed();
+
+                            double seconds = nanos / 1e9;
+                            double sentencesPerSecond = testSentences.size() / seconds;
+                            double msPerArc = nanos / 1e6 / arcs;
+                            double uas = 100.0 * correctHeads(data, parses, rootFirst) / arcs;
+                            DecimalFormat format = new DecimalFormat("0.00");
+                            System.out.println(featureSet + ", beam " + beamWidth + ", " + threads + " threads: "
+                                    + format.format(sentencesPerSecond) + " sentences/s, "
+                                    + format.format(msPerArc * 1000) + " us/arc, uas " + format.format(uas)
+                                    + ", peak heap " + peakHeap / (1024 * 1024) + " MB");
+
+                            report.append(first ? "\n" : ",\n");
+                            first = false;
+                            report.append("    {\"features\": \"").append(featureSet)
+                                    .append("\", \"featureLength\": ").append(featureLength)
+                                    .append(", \"beamWidth\": ").append(beamWidth)
+                                    .append(", \"threads\": ").append(threads)
+                                    .append(", \"sentences\": ").append(testSentences.size())
+                                    .append(", \"arcs\": ").append(arcs)
+                                    .append(", \"seconds\": ").append(seconds)
+                                    .append(", \"sentencesPerSecond\": ").append(sentencesPerSecond)
+                                    .append(", \"msPerArc\": ").append(msPerArc)
+                                    .append(", \"uas\": ").append(uas)
+                                    .append(", \"peakHeapBytes\": ").append(peakHeap).append("}");
+                        }
+                    } finally {
+                        parser.shutDownLiveThreads();
+                    }
+                }
+            }
+            report.append("\n  ]\n}\n");
+
+            if (reportPath.length() > 0) {
+                BufferedWriter writer = new BufferedWriter(new FileWriter(reportPath));
+                writer.write(report.toString());
+                writer.close();
+                System.out.println("report written to " + reportPath);
+            } else {
+                System.out.print(report);
+            }
+        } finally {
+            File[] files = directory.listFiles();
+            if (files != null)
+                for (File file : files)
+                    file.delete();
+            directory.delete();
+        }
+    }
+
+    static int featureLength(String featureSet) throws Exception {
+        switch (featureSet) {
+            case "basic":
+                return 26;
+            case "extended":
+                return 72;
+            case "brown":
+                return 153;
+            default:
+                throw new Exception("unknown feature set " + featureSet + "; use basic, extended or brown");
+        }
+    }
+
+    private static List<MemoryPoolMXBean> heapPools() {
+        ArrayList<MemoryPoolMXBean> pools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+            if (pool.getType() == MemoryType.HEAP && pool.isValid())
+                pools.add(pool);
+        return pools;
+    }
+
+    private static int length(GoldConfiguration goldConfiguration, boolean rootFirst) {
+        int size = goldConfiguration.getSentence().size();
+        return rootFirst ? size : size - 1;
+    }
+
+    private static int correctHeads(ArrayList<GoldConfiguration> data, List<Configuration> parses,
+                                    boolean rootFirst) {
+        int correct = 0;
+        for (int s = 0; s < data.size(); s++) {
+            GoldConfiguration goldConfiguration = data.get(s);
+            Configuration bestParse = parses.get(s);
+            int length = length(goldConfiguration, rootFirst);
+            for (int i = 1; i <= length; i++)
+                if (goldConfiguration.hasHead(i) && goldConfiguration.head(i) == bestParse.state.getHead(i))
+                    correct++;
+        }
+        return correct;
+    }
+}
@@ -0,0 +1,142 @@
+package YaraParser.Benchmark;
+
+import YaraParser.Accessories.CoNLLReader;
+import YaraParser.Accessories.CompactTreebank;
+import YaraParser.Accessories.Options;
+import YaraParser.Learning.AveragedPerceptron;
+import YaraParser.Learning.BinaryPerceptron;
+import YaraParser.Structures.IndexMaps;
+import YaraParser.TransitionBasedSystem.Trainer.ArcEagerBeamTrainer;
+import YaraParser.TransitionBasedSystem.Trainer.TrainingProfile;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.nio.file.Files;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the training speed on a {@link SyntheticTreebank}: runs a fixed number of epochs of
+ * {@link ArcEagerBeamTrainer} for each feature set with a {@link TrainingProfile}, and reports for each epoch the
+ * sentences per minute, the time of the oracle, beam scoring, isOracle, the weight updates and saving the models,
+ * and the number of features and weights of the classifier and the binary classifier. The report is a JSON document
+ * with the settings of the run and one object per epoch.
+ * <p/>
+ * The treebank is generated with a fixed seed and the trainer is given the same options in every run, so two runs
+ * train on the same sentences in the same order.
+ */
+public class TrainingBenchmark {
+    /**
+     * @param sentences    number of training sentences
+     * @param featureSets  names of the feature sets: basic, extended or brown
+     * @param options      beam width, threads, oracle and update mode of the trainer
+     * @param epochs       iterations over the training sentences
+     * @param reportPath   the report is written there, or printed if it is empty
+     */
+    public static void run(int sentences, int vocabularySize, double zipfExponent, double meanLength, long seed,
+                           List<String> featureSets, Options options, int epochs, String reportPath)
+            throws Exception {
+        File directory = Files.createTempDirectory("yara-training").toFile();
+        try {
+            SyntheticTreebank generator = new SyntheticTreebank(vocabularySize, zipfExponent, meanLength, seed);
+            String trainPath = new File(directory, "train.conll").getPath();
+            String clusterPath = new File(directory, "clusters.txt").getPath();
+            generator.write(trainPath, sentences);
+            generator.writeClusters(clusterPath);
+
+            StringBuilder report = new StringBuilder();
+            report.append("{\n  \"generator\": {\"sentences\": ").append(sentences)
+                    .append(", \"vocabulary\": ").append(vocabularySize)
+                    .append(", \"zipfExponent\": ").append(zipfExponent)
+                    .append(", \"meanLength\": ").append(meanLength)
+                    .append(", \"seed\": ").append(seed).append("},\n")
+                    .append("  \"beamWidth\": ").append(options.beamWidth)
+                    .append(", \"threads\": ").append(options.numOfThreads)
+                    .append(", \"dynamicOracle\": ").append(options.useDynamicOracle)
+                    .append(", \"updateMode\": \"").append(options.useMaxViol ? "max_violation" : "early")
+                    .append("\",\n  \"availableProcessors\": ").append(Runtime.getRuntime().availableProcessors())
+                    .append(",\n  \"runs\": [");
+            for (int r = 0; r < featureSets.size(); r++) {
+                String featureSet = featureSets.get(r);
+                int featureLength = ThroughputBenchmark.featureLength(featureSet);
+                TrainingProfile profile = train(featureSet, featureLength, trainPath, clusterPath, directory,
+                        options.clone(), epochs);
+
+                report.append(r == 0 ? "\n" : ",\n");
+                report.append("    {\"features\": \"").append(featureSet)
+                        .append("\", \"featureLength\": ").append(featureLength).append(", \"epochs\": [");
+                DecimalFormat format = new DecimalFormat("0.00");
+                ArrayList<TrainingProfile.Epoch> profileEpochs = profile.getEpochs();
+                for (int e = 0; e < profileEpochs.size(); e++) {
+                    TrainingProfile.Epoch epoch = profileEpochs.get(e);
+                    StringBuilder line = new StringBuilder();
+                    line.append(featureSet).append(", epoch ").append(epoch.iteration).append(": ")
+                            .append(format.format(epoch.sentencesPerMinute())).append(" sentences/min");
+                    report.append(e == 0 ? "\n" : ",\n");
+                    report.append("      {\"epoch\": ").append(epoch.iteration)
+                            .append(", \"sentences\": ").append(epoch.sentences)
+                            .append(", \"seconds\": ").append(epoch.trainNanos / 1e9)
+                            .append(", \"sentencesPerMinute\": ").append(epoch.sentencesPerMinute())
+                            .append(", \"phaseSeconds\": {");
+                    for (int phase = 0; phase < TrainingProfile.PHASES.length; phase++) {
+                        double seconds = epoch.phaseNanos[phase] / 1e9;
+                        report.append("\"").append(TrainingProfile.PHASES[phase]).append("\": ").append(seconds)
+                                .append(", ");
+                        line.append(", ").append(TrainingProfile.PHASES[phase]).append(" ")
+                                .append(format.format(seconds)).append(" s");
+                    }
+                    report.append("\"other\": ").append(epoch.otherNanos() / 1e9).append("}")
+                            .append(", \"updates\": ").append(epoch.updates)
+                            .append(", \"binaryUpdates\": ").append(epoch.binaryUpdates)
+                            .append(", \"features\": ").append(epoch.features)
+                            .append(", \"weights\": ").append(epoch.weights)
+                            .append(", \"binaryFeatures\": ").append(epoch.binaryFeatures)
+                            .append(", \"binaryWeights\": ").append(epoch.binaryWeights).append("}");
+                    line.append(", other ").append(format.format(epoch.otherNanos() / 1e9)).append(" s, ")
+                            .append(epoch.features).append(" features, ").append(epoch.weights).append(" weights");
+                    System.out.println(line);
+                }
+                report.append("\n    ]}");
+            }
+            report.append("\n  ]\n}\n");
+
+            if (reportPath.length() > 0) {
+                BufferedWriter writer = new BufferedWriter(new FileWriter(reportPath));
+                writer.write(report.toString());
+                writer.close();
+                System.out.println("report written to " + reportPath);
+            } else {
+                System.out.print(report);
+            }
+        } finally {
+            File[] files = directory.listFiles();
+            if (files != null)
+                for (File file : files)
+                    file.delete();
+            directory.delete();
+        }
+    }
+
+    private static TrainingProfile train(String name, int featureLength, String treebankPath, String clusterFile,
+                                         File directory, Options options, int epochs) throws Exception {
+        System.out.println("training the " + name + " model");
+        options.useExtendedFeatures = featureLength == 72;
+        options.useExtendedWithBrownClusterFeatures = featureLength == 153;
+        options.clusterFile = featureLength == 153 ? clusterFile : "";
+        CompactTreebank treebank = CoNLLReader.createCompactTreebank(treebankPath, options.labeled,
+                options.lowercase, options.clusterFile, options.rootFirst, false);
+        IndexMaps maps = treebank.getMaps();
+        ArrayList<Integer> dependencyRelations = new ArrayList<>(maps.getLabels().keySet());
+        ArcEagerBeamTrainer trainer = new ArcEagerBeamTrainer(options.useMaxViol ? "max_violation" : "early",
+                new AveragedPerceptron(featureLength, dependencyRelations.size()),
+                new BinaryPerceptron(featureLength, dependencyRelations.size()), options, dependencyRelations,
+                featureLength, maps);
+        TrainingProfile profile = new TrainingProfile();
+        trainer.setProfile(profile);
+        trainer.train(treebank, treebank.size(), "", epochs, new File(directory, name).getPath(), options.lowercase,
+                options.punctuations, options.partialTrainingStartingIteration);
+        return profile;
+    }
+}
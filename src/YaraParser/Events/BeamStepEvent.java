@@ -0,0 +1,29 @@
+package YaraParser.Events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * One transition of the beam: scoring the configurations and keeping the best candidates. There are tens of steps
+ * per sentence, so the event is off unless a recording enables it.
+ */
+@Name("yara.BeamStep")
+@Label("Beam Step")
+@Category({"YaraParser", "Parser"})
+@Description("One transition of the beam search")
+@Enabled(false)
+public class BeamStepEvent extends Event {
+    @Label("Step")
+    public int step;
+
+    @Label("Beam Size")
+    @Description("Configurations scored in this step")
+    public int beamSize;
+
+    @Label("Beam Width")
+    public int beamWidth;
+}
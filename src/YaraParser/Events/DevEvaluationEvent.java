@@ -0,0 +1,23 @@
+package YaraParser.Events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Parsing and scoring the dev set with the model of an iteration
+ */
+@Name("yara.DevEvaluation")
+@Label("Dev Evaluation")
+@Category({"YaraParser", "Trainer"})
+public class DevEvaluationEvent extends Event {
+    @Label("Iteration")
+    public int iteration;
+
+    @Label("Dev Path")
+    public String devPath;
+
+    @Label("Classifier")
+    public String classifier;
+}
@@ -0,0 +1,23 @@
+package YaraParser.Events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Reading a model file into an {@link YaraParser.Structures.InfStruct}
+ */
+@Name("yara.ModelLoad")
+@Label("Model Load")
+@Category({"YaraParser", "Model"})
+public class ModelLoadEvent extends Event {
+    @Label("Path")
+    public String path;
+
+    @Label("Feature Templates")
+    public int featureLength;
+
+    @Label("Labels")
+    public int labels;
+}
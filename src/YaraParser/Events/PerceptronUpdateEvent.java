@@ -0,0 +1,23 @@
+package YaraParser.Events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * One update of the averaged perceptron or the binary perceptron towards an oracle and away from a prediction
+ */
+@Name("yara.PerceptronUpdate")
+@Label("Perceptron Update")
+@Category({"YaraParser", "Trainer"})
+public class PerceptronUpdateEvent extends Event {
+    @Label("Binary")
+    @Description("The binary classifier was updated, not the parser's classifier")
+    public boolean binary;
+
+    @Label("Features Touched")
+    @Description("Weights changed by the update")
+    public int featuresTouched;
+}
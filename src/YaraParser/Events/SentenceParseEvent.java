@@ -0,0 +1,36 @@
+package YaraParser.Events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The beam search of one sentence, from the initial configuration to the best parse
+ */
+@Name("yara.SentenceParse")
+@Label("Sentence Parse")
+@Category({"YaraParser", "Parser"})
+@Description("Beam search of one sentence")
+public class SentenceParseEvent extends Event {
+    @Label("Length")
+    @Description("Number of words, with the root")
+    public int length;
+
+    @Label("Beam Width")
+    @Description("The beam width that was asked for")
+    public int beamWidth;
+
+    @Label("Final Beam Width")
+    @Description("The beam width of the last transition, after the latency budget narrowed it")
+    public int finalBeamWidth;
+
+    @Label("Degraded")
+    @Description("The latency budget narrowed the beam")
+    public boolean degraded;
+
+    @Label("Partial")
+    @Description("The sentence has some gold dependencies that the parse keeps")
+    public boolean partial;
+}
@@ -0,0 +1,23 @@
+package YaraParser.Events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * One iteration of the trainer over the training data, without saving and evaluating the model
+ */
+@Name("yara.TrainingEpoch")
+@Label("Training Epoch")
+@Category({"YaraParser", "Trainer"})
+public class TrainingEpochEvent extends Event {
+    @Label("Iteration")
+    public int iteration;
+
+    @Label("Sentences")
+    public int sentences;
+
+    @Label("Beam Width")
+    public int beamWidth;
+}
@@ -4,6 +4,7 @@ import YaraParser.Structures.CompactArray;
 import YaraParser.Structures.InfStruct;
 import YaraParser.TransitionBasedSystem.Parser.Actions;
 
+import java.util.Arrays;
 import java.util.HashMap;
 
 /**
@@ -172,7 +173,15 @@ public class AveragedPerceptron {
     }
 
     public float[] leftArcScores(final Object[] features, boolean decode) {
-        float[] scores = new float[dependencySize];
+        return leftArcScores(features, decode, new float[dependencySize]);
+    }
+
+    /**
+     * Same as {@link #leftArcScores(Object[], boolean)} but writes the scores into the given array of length
+     * dependencySize
+     */
+    public float[] leftArcScores(final Object[] features, boolean decode, float[] scores) {
+        Arrays.fill(scores, 0.0f);
         HashMap<Object, CompactArray>[] map = decode ? leftArcFeatureAveragedWeights : leftArcFeatureWeights;
         for (int i = 0; i < features.length; i++) {
             if (features[i] == null)
@@ -190,7 +199,15 @@ public class AveragedPerceptron {
     }
 
     public float[] rightArcScores(final Object[] features, boolean decode) {
-        float[] scores = new float[dependencySize];
+        return rightArcScores(features, decode, new float[dependencySize]);
+    }
+
+    /**
+     * Same as {@link #rightArcScores(Object[], boolean)} but writes the scores into the given array of length
+     * dependencySize
+     */
+    public float[] rightArcScores(final Object[] features, boolean decode, float[] scores) {
+        Arrays.fill(scores, 0.0f);
         HashMap<Object, CompactArray>[] map = decode ? rightArcFeatureAveragedWeights : rightArcFeatureWeights;
         for (int i = 0; i < features.length; i++) {
             if (features[i] == null)
@@ -0,0 +1,141 @@
+package YaraParser.Parser;
+
+import java.text.DecimalFormat;
+
+/**
+ * Bounds the work that waits in the queues of a {@link ParseServer}. The cost of a sentence is its number of words
+ * times its beam width, which is roughly the time and memory its beam search needs; a request is admitted only if
+ * the cost of its sentences fits next to the cost that is already waiting. When it does not fit, the policy decides:
+ * <ul>
+ * <li>reject: the request is turned away at once</li>
+ * <li>block: the request waits for room up to a maximum time and is turned away after that</li>
+ * <li>shed: the request is admitted and the oldest waiting sentences are dropped to make room</li>
+ * </ul>
+ * A request is always admitted when nothing is waiting, so a request that costs more than the whole capacity is
+ * still parsed, alone. It also keeps the queue depth and how long sentences waited before a worker took them.
+ */
+public class AdmissionControl {
+    public enum Policy {
+        REJECT, BLOCK, SHED
+    }
+
+    public final long capacity;
+    public final Policy policy;
+    private final long maxWaitNanos;
+
+    private long queuedCost;
+    private long queuedSentences;
+    private long maxQueuedCost;
+    private long rejectedRequests;
+    private long shedSentences;
+    private long dequeuedSentences;
+    private long waitNanos;
+    private long maxSentenceWaitNanos;
+
+    /**
+     * @param capacity      maximum cost of the waiting sentences; zero or less for no bound
+     * @param maxWaitMillis how long a request may wait for room with the block policy
+     */
+    public AdmissionControl(long capacity, Policy policy, long maxWaitMillis) {
+        this.capacity = capacity > 0 ? capacity : Long.MAX_VALUE;
+        this.policy = policy;
+        maxWaitNanos = maxWaitMillis * 1000000L;
+    }
+
+    public static Policy policy(String name) throws Exception {
+        for (Policy policy : Policy.values())
+            if (policy.name().equalsIgnoreCase(name))
+                return policy;
+        throw new Exception("unknown overload policy " + name + " (reject, block or shed)");
+    }
+
+    /**
+     * @return cost of parsing a sentence of that many words with that beam
+     */
+    public static long cost(int words, int beamWidth) {
+        return (long) Math.max(1, words) * Math.max(1, beamWidth);
+    }
+
+    /**
+     * Adds the sentences to the queue if they fit; with the block policy, waits for room first.
+     *
+     * @return false if the request is turned away; never with the shed policy, which adds the sentences anyway (the
+     * caller first sheds old sentences with {@link #tryAdmit} and {@link #shed} while there are any)
+     */
+    public synchronized boolean admit(long cost, int sentences) throws InterruptedException {
+        if (tryAdmit(cost, sentences))
+            return true;
+        if (policy == Policy.BLOCK) {
+            long deadline = System.nanoTime() + maxWaitNanos;
+            long left;
+            while ((left = deadline - System.nanoTime()) > 0) {
+                wait(left / 1000000L, (int) (left % 1000000L));
+                if (tryAdmit(cost, sentences))
+                    return true;
+            }
+        } else if (policy == Policy.SHED) {
+            add(cost, sentences);
+            return true;
+        }
+        rejectedRequests++;
+        return false;
+    }
+
+    /**
+     * Adds the sentences to the queue if they fit or nothing is waiting.
+     */
+    public synchronized boolean tryAdmit(long cost, int sentences) {
+        if (queuedCost > 0 && queuedCost + cost > capacity)
+            return false;
+        add(cost, sentences);
+        return true;
+    }
+
+    private void add(long cost, int sentences) {
+        queuedCost += cost;
+        queuedSentences += sentences;
+        maxQueuedCost = Math.max(maxQueuedCost, queuedCost);
+    }
+
+    /**
+     * A waiting sentence was dropped to make room.
+     */
+    public synchronized void shed(long cost) {
+        queuedCost -= cost;
+        queuedSentences--;
+        shedSentences++;
+        notifyAll();
+    }
+
+    /**
+     * A worker took a sentence from the queue after it had waited that long.
+     */
+    public synchronized void dequeued(long cost, long waitedNanos) {
+        queuedCost -= cost;
+        queuedSentences--;
+        dequeuedSentences++;
+        waitNanos += waitedNanos;
+        maxSentenceWaitNanos = Math.max(maxSentenceWaitNanos, waitedNanos);
+        notifyAll();
+    }
+
+    public synchronized long queuedCost() {
+        return queuedCost;
+    }
+
+    public synchronized long queuedSentences() {
+        return queuedSentences;
+    }
+
+    public synchronized String stats() {
+        DecimalFormat format = new DecimalFormat("0.00");
+        double averageWait = dequeuedSentences == 0 ? 0 : waitNanos / 1e6 / dequeuedSentences;
+        return "queue: " + queuedSentences + " sentences, cost " + queuedCost + " of "
+                + (capacity == Long.MAX_VALUE ? "unbounded" : Long.toString(capacity)) + " (" + policy.name()
+                .toLowerCase() + "), highest cost " + maxQueuedCost + "\n"
+                + "queue wait: " + format.format(averageWait) + " ms on average, "
+                + format.format(maxSentenceWaitNanos / 1e6) + " ms at most\n"
+                + "rejected requests: " + rejectedRequests + "\n"
+                + "shed sentences: " + shedSentences;
+    }
+}
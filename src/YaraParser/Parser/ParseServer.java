@@ -0,0 +1,868 @@
+package YaraParser.Parser;
+
+import YaraParser.Accessories.Metrics;
+import YaraParser.Accessories.TaskExecutors;
+import YaraParser.Structures.IndexMaps;
+import YaraParser.Structures.Sentence;
+import YaraParser.TransitionBasedSystem.Configuration.Configuration;
+import YaraParser.TransitionBasedSystem.Parser.BeamPolicy;
+import YaraParser.TransitionBasedSystem.Parser.InFlightParses;
+import YaraParser.TransitionBasedSystem.Parser.ModelHolder;
+import YaraParser.TransitionBasedSystem.Parser.ModelRegistry;
+import YaraParser.TransitionBasedSystem.Parser.ParseCache;
+import YaraParser.TransitionBasedSystem.Parser.ParserContext;
+import YaraParser.TransitionBasedSystem.Parser.ParserSession;
+import YaraParser.TransitionBasedSystem.Parser.WarmUp;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the models of a {@link ModelRegistry} in memory and parses the sentences posted to them over HTTP.
+ * <p/>
+ * POST /parse with tagged sentences (one per line, space-delimited word_tag pairs) or CoNLL blocks; the input format
+ * is taken from the format parameter (tagged or conll) and otherwise guessed from the tabs. The trees are returned
+ * in CoNLL format, or as JSON with output=json. GET /health answers "ok".
+ * <p/>
+ * With a warm-up time, the models are warmed up with {@link WarmUp} after the server starts listening, and GET /ready
+ * answers 503 until all of them are warmed up and then "ready", so a load balancer only sends traffic once the JIT
+ * has compiled the parser. Reloaded models are warmed up before they are swapped in. Without a warm-up, the server
+ * is ready at once.
+ * <p/>
+ * The sentences of each model go to a queue of that model. Whenever a worker is free, the scheduler takes up to
+ * batchSize sentences at once from the next model (in turn) that has sentences waiting and has not used up its
+ * quota, so requests are batched together only when the workers are busy and an idle server does not wait for a
+ * batch to fill up. All models share the same workers. The model parameter of /parse names the model; without it,
+ * the first registered model is used.
+ * <p/>
+ * With a {@link ParseCache}, repeated sentences are answered from the cache without a beam search; GET /stats shows
+ * its hit rate. A sentence that comes again while it is still being parsed (e.g. the same headline from several feeds)
+ * is not parsed twice: it waits for the running parse and gets the same tree. GET /stats shows how many sentences
+ * were coalesced this way.
+ * <p/>
+ * With a latency budget, each sentence narrows its beam when it runs behind (see {@link ParserSession}); the JSON
+ * output then has the final beam width of each sentence and GET /stats counts the degraded sentences. A
+ * {@link BeamPolicy} chooses the beam width of each sentence from its length.
+ * <p/>
+ * POST /reload?model=[name] loads the file of that model again, as it was registered at startup, in the
+ * background and swaps it in through its {@link ModelHolder}: requests that started before the swap finish on the
+ * old model. Clients cannot name another file; the server has no authentication and a model file is deserialized
+ * when it is loaded. For the same reason the server only listens on the loopback interface unless it is given
+ * another address.
+ * <p/>
+ * The waiting sentences are bounded by an {@link AdmissionControl}: a request whose sentences do not fit is rejected,
+ * blocked or makes room by shedding the oldest waiting sentences, and is answered with 503 when it is turned away or
+ * its sentences are shed. GET /stats shows the queue depth and how long sentences waited. A request that is not
+ * parsed within a minute is answered with 503 as well, and its waiting sentences are dropped.
+ * <p/>
+ * With virtual threads, every HTTP exchange and every batch gets its own (virtual) thread and the number of batches
+ * parsed at the same time is limited by the number of cores instead of the number of worker threads.
+ * <p/>
+ * GET /metrics answers with all {@link Metrics} in the Prometheus text format: the parsed sentences, words, parse
+ * times and beam widths, the cache hits, the model load times, and the sentences waiting in the queue of each model.
+ */
+public class ParseServer {
+    /**
+     * a request whose sentences are not parsed by then is answered with 503; its sentences that are still waiting
+     * are not parsed
+     */
+    private static final long REQUEST_TIMEOUT_MILLIS = 60000;
+
+    private final ModelRegistry registry;
+    private final String separator;
+    private final int batchSize;
+    private final int numOfThreads;
+    private final LinkedHashMap<String, ModelQueue> queues;
+    private final ArrayList<ModelQueue> queueList;
+    /**
+     * the model that gets the next batch if it has sentences waiting
+     */
+    private int nextQueue;
+    private final Object dispatchLock;
+    private final ExecutorService workers;
+    private final Semaphore freeWorkers;
+    private final Thread batcher;
+    private final boolean virtualThreads;
+    private ParseCache cache;
+    private final InFlightParses<ParseJob> inFlight;
+    private long budgetNanos;
+    private BeamPolicy beamPolicy;
+    private AdmissionControl admission;
+    private long warmUpMillis;
+    private final AtomicLong parsedSentences;
+    private final AtomicLong degradedSentences;
+    private final AtomicBoolean loading;
+    private HttpServer server;
+
+    /**
+     * @param registry the models to serve; all of them must be registered before the server is created
+     */
+    public ParseServer(ModelRegistry registry, String separator, int numOfThreads, int batchSize,
+                       boolean virtualThreads) throws Exception {
+        this.registry = registry;
+        queues = new LinkedHashMap<>();
+        queueList = new ArrayList<>();
+        for (ModelRegistry.Entry entry : registry.entries()) {
+            ModelQueue modelQueue = new ModelQueue(entry);
+            queues.put(entry.name, modelQueue);
+            queueList.add(modelQueue);
+            Metrics.gauge("yara_server_queue_sentences", "Sentences waiting in the queue of a model",
+                    modelQueue.jobs::size, "model", entry.name);
+        }
+        if (queueList.isEmpty())
+            throw new Exception("no model to serve");
+        dispatchLock = new Object();
+        loading = new AtomicBoolean();
+        this.separator = separator;
+        this.batchSize = Math.max(1, batchSize);
+        this.numOfThreads = numOfThreads;
+        this.virtualThreads = TaskExecutors.useVirtualThreads(virtualThreads);
+        parsedSentences = new AtomicLong();
+        degradedSentences = new AtomicLong();
+        inFlight = new InFlightParses<>();
+        if (this.virtualThreads) {
+            workers = TaskExecutors.newPerTaskExecutor(numOfThreads);
+            freeWorkers = TaskExecutors.newCpuGate();
+        } else {
+            workers = Executors.newFixedThreadPool(numOfThreads);
+            freeWorkers = new Semaphore(numOfThreads);
+        }
+        admission = new AdmissionControl(0, AdmissionControl.Policy.REJECT, 0);
+        batcher = new Thread(this::dispatchBatches, "parse-batcher");
+    }
+
+    /**
+     * The waiting sentences, quota and idle sessions of one model
+     */
+    private static class ModelQueue {
+        final ModelRegistry.Entry entry;
+        final LinkedBlockingQueue<ParseJob> jobs;
+        final Semaphore quota;
+        /**
+         * idle parser sessions; a batch borrows one and gives it back when it is done, so there are never more
+         * sessions than batches of this model running at the same time
+         */
+        final ConcurrentLinkedQueue<ParserSession> sessions;
+        final AtomicLong parsedSentences;
+
+        ModelQueue(ModelRegistry.Entry entry) {
+            this.entry = entry;
+            jobs = new LinkedBlockingQueue<>();
+            quota = new Semaphore(entry.quota);
+            sessions = new ConcurrentLinkedQueue<>();
+            parsedSentences = new AtomicLong();
+        }
+
+        /**
+         * @return an idle session of the context; sessions of older models are dropped
+         */
+        ParserSession borrowSession(ParserContext context) {
+            ParserSession session;
+            while ((session = sessions.poll()) != null) {
+                if (session.getContext() == context)
+                    return session;
+            }
+            return context.newSession();
+        }
+    }
+
+    /**
+     * Must be called before {@link #start}; the cache is shared by all workers.
+     */
+    public void setCache(ParseCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Must be called before {@link #start}.
+     *
+     * @param budgetMillis latency budget of each sentence; zero or less for no budget
+     */
+    public void setLatencyBudget(long budgetMillis) {
+        budgetNanos = budgetMillis * 1000000L;
+    }
+
+    /**
+     * Must be called before {@link #start}; without a policy every sentence gets the beam width of the model.
+     */
+    public void setBeamPolicy(BeamPolicy beamPolicy) {
+        this.beamPolicy = beamPolicy;
+    }
+
+    /**
+     * Must be called before {@link #start}; without it the queues are unbounded.
+     */
+    public void setAdmissionControl(AdmissionControl admission) {
+        this.admission = admission;
+    }
+
+    /**
+     * Must be called before {@link #start}.
+     *
+     * @param warmUpMillis maximum warm-up time of each model; zero or less for no warm-up
+     */
+    public void setWarmUp(long warmUpMillis) {
+        this.warmUpMillis = warmUpMillis;
+    }
+
+    /**
+     * @return true if there is no warm-up or all models are warmed up
+     */
+    public boolean isReady() {
+        if (warmUpMillis <= 0)
+            return true;
+        for (ModelQueue modelQueue : queueList)
+            if (!modelQueue.entry.models.current().isReady())
+                return false;
+        return true;
+    }
+
+    /**
+     * Listens on the loopback interface only
+     */
+    public void start(int port) throws Exception {
+        start(InetAddress.getLoopbackAddress().getHostAddress(), port);
+    }
+
+    /**
+     * @param host address to listen on, e.g. 0.0.0.0 for all interfaces
+     */
+    public void start(String host, int port) throws Exception {
+        server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        server.createContext("/parse", this::handleParse);
+        server.createContext("/health", exchange -> respond(exchange, 200, "text/plain", "ok\n"));
+        server.createContext("/ready", exchange -> {
+            if (isReady())
+                respond(exchange, 200, "text/plain", "ready\n");
+            else
+                respond(exchange, 503, "text/plain", "warming up\n");
+        });
+        server.createContext("/stats", exchange -> respond(exchange, 200, "text/plain", stats()));
+        server.createContext("/metrics", exchange -> respond(exchange, 200, "text/plain; version=0.0.4",
+                Metrics.prometheus()));
+        server.createContext("/reload", this::handleReload);
+        server.setExecutor(virtualThreads ? TaskExecutors.newPerTaskExecutor(numOfThreads) :
+                Executors.newCachedThreadPool());
+        batcher.start();
+        server.start();
+        System.out.println("parse server listening on " + server.getAddress().getHostString() + ":"
+                + server.getAddress().getPort());
+        if (warmUpMillis > 0) {
+            Thread warmUp = new Thread(() -> {
+                for (ModelQueue modelQueue : queueList) {
+                    try (ModelHolder.Lease lease = modelQueue.entry.models.acquire()) {
+                        WarmUp.run(lease.getContext(), warmUpMillis);
+                    }
+                }
+                System.out.println("parse server is ready");
+            }, "warm-up");
+            warmUp.setDaemon(true);
+            warmUp.start();
+        }
+    }
+
+    /**
+     * Blocks until {@link #stop} is called.
+     */
+    public void join() throws InterruptedException {
+        batcher.join();
+    }
+
+    public void stop() {
+        if (server != null)
+            server.stop(0);
+        batcher.interrupt();
+        workers.shutdownNow();
+    }
+
+    private String stats() {
+        StringBuilder stats = new StringBuilder();
+        int liveModels = 0;
+        for (ModelQueue modelQueue : queueList) {
+            ModelHolder models = modelQueue.entry.models;
+            stats.append("model ").append(modelQueue.entry.name).append(": ").append(models.current().version)
+                    .append(", quota ").append(modelQueue.entry.quota)
+                    .append(", waiting sentences ").append(modelQueue.jobs.size())
+                    .append(", parsed sentences ").append(modelQueue.parsedSentences.get()).append("\n");
+            liveModels += models.liveModels();
+        }
+        return stats.append("ready: ").append(isReady()).append("\n")
+                .append("models in memory: ").append(liveModels).append("\n")
+                .append("parsed sentences: ").append(parsedSentences.get()).append("\n")
+                .append("degraded sentences: ").append(degradedSentences.get()).append("\n")
+                .append(admission.stats()).append("\n")
+                .append(inFlight.stats()).append("\n")
+                .append(cache == null ? "parse cache: off" : cache.stats()).append("\n").toString();
+    }
+
+    private void dispatchBatches() {
+        try {
+            while (true) {
+                freeWorkers.acquire();
+                ModelQueue modelQueue;
+                synchronized (dispatchLock) {
+                    while ((modelQueue = nextQueue()) == null)
+                        dispatchLock.wait();
+                }
+                ArrayList<ParseJob> batch = new ArrayList<>(batchSize);
+                modelQueue.jobs.drainTo(batch, batchSize);
+                long now = System.nanoTime();
+                for (ParseJob job : batch)
+                    admission.dequeued(job.cost, now - job.queuedAt);
+                ModelQueue batchQueue = modelQueue;
+                workers.execute(() -> {
+                    ParserSession session = null;
+                    int next = 0;
+                    try {
+                        for (; next < batch.size(); next++) {
+                            ParseJob job = batch.get(next);
+                            try {
+                                // around a model swap, one batch can have sentences of both versions
+                                if (session == null || session.getContext() != job.context)
+                                    session = batchQueue.borrowSession(job.context);
+                                job.run(session, cache, inFlight, beamPolicy, budgetNanos);
+                            } catch (Throwable e) {
+                                // the session may have stopped in the middle of a parse, so it is not reused
+                                session = null;
+                                job.fail(e);
+                            }
+                        }
+                    } finally {
+                        // the requests of jobs that were not run would otherwise wait for them forever
+                        for (int j = next; j < batch.size(); j++)
+                            batch.get(j).fail(new Exception("the parse worker stopped"));
+                        if (session != null && session.getContext() == batchQueue.entry.models.current())
+                            batchQueue.sessions.offer(session);
+                        batchQueue.parsedSentences.addAndGet(batch.size());
+                        batchQueue.quota.release();
+                        freeWorkers.release();
+                        wakeDispatcher();
+                    }
+                });
+            }
+        } catch (InterruptedException e) {
+            // stopped
+        }
+    }
+
+    /**
+     * @return the next model, in turn, that has sentences waiting and a free permit of its quota (which is then
+     * taken), or null if there is none
+     */
+    private ModelQueue nextQueue() {
+        for (int i = 0; i < queueList.size(); i++) {
+            ModelQueue modelQueue = queueList.get((nextQueue + i) % queueList.size());
+            if (!modelQueue.jobs.isEmpty() && modelQueue.quota.tryAcquire()) {
+                nextQueue = (nextQueue + i + 1) % queueList.size();
+                return modelQueue;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Puts the sentences of a request in the queue of its model if the admission control lets them in.
+     *
+     * @return false if the request is turned away
+     */
+    private boolean enqueue(ModelQueue modelQueue, ArrayList<ParseJob> jobs) throws InterruptedException {
+        long cost = 0;
+        for (ParseJob job : jobs)
+            cost += job.cost;
+        if (admission.policy == AdmissionControl.Policy.SHED) {
+            while (!admission.tryAdmit(cost, jobs.size())) {
+                ParseJob oldest = pollOldest();
+                if (oldest == null) {
+                    admission.admit(cost, jobs.size());
+                    break;
+                }
+                admission.shed(oldest.cost);
+                oldest.shed();
+            }
+        } else if (!admission.admit(cost, jobs.size())) {
+            return false;
+        }
+        long now = System.nanoTime();
+        for (ParseJob job : jobs) {
+            job.queuedAt = now;
+            modelQueue.jobs.add(job);
+        }
+        wakeDispatcher();
+        return true;
+    }
+
+    /**
+     * @return the sentence that has waited longest over all models, taken out of its queue, or null if none is
+     * waiting
+     */
+    private ParseJob pollOldest() {
+        ModelQueue oldest = null;
+        long oldestTime = 0;
+        for (ModelQueue modelQueue : queueList) {
+            ParseJob head = modelQueue.jobs.peek();
+            if (head != null && (oldest == null || head.queuedAt - oldestTime < 0)) {
+                oldest = modelQueue;
+                oldestTime = head.queuedAt;
+            }
+        }
+        // the head may have been taken by a batch in the meantime; then the next one is shed
+        return oldest == null ? null : oldest.jobs.poll();
+    }
+
+    private void wakeDispatcher() {
+        synchronized (dispatchLock) {
+            dispatchLock.notifyAll();
+        }
+    }
+
+    private void handleReload(HttpExchange exchange) {
+        try {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                respond(exchange, 405, "text/plain", "use POST\n");
+                return;
+            }
+            HashMap<String, String> parameters = parameters(exchange.getRequestURI().getRawQuery());
+            ModelQueue modelQueue = modelQueue(parameters);
+            if (modelQueue == null) {
+                respond(exchange, 404, "text/plain", "unknown model " + parameters.get("model") + "\n");
+                return;
+            }
+            if (parameters.containsKey("path")) {
+                respond(exchange, 400, "text/plain", "the model file cannot be changed; it is set at startup\n");
+                return;
+            }
+            String name = modelQueue.entry.name;
+            String path = modelQueue.entry.modelPath;
+            if (!loading.compareAndSet(false, true)) {
+                respond(exchange, 409, "text/plain", "a model is already loading\n");
+                return;
+            }
+            Thread loader = new Thread(() -> {
+                try {
+                    registry.reload(name, path, warmUpMillis);
+                    modelQueue.sessions.clear();
+                } catch (Exception e) {
+                    System.out.println("could not load " + path + ": " + e);
+                } finally {
+                    loading.set(false);
+                }
+            }, "model-loader");
+            loader.start();
+            respond(exchange, 202, "text/plain", "loading " + path + " as " + name + "\n");
+        } catch (Exception e) {
+            try {
+                respond(exchange, 400, "text/plain", e + "\n");
+            } catch (Exception ignored) {
+            }
+        }
+    }
+
+    /**
+     * @return the queue of the model named by the model parameter, the first model without it, or null for an
+     * unknown name
+     */
+    private ModelQueue modelQueue(HashMap<String, String> parameters) {
+        String name = parameters.get("model");
+        return name == null ? queueList.get(0) : queues.get(name);
+    }
+
+    private static class ParseJob {
+        final ParserContext context;
+        final Sentence sentence;
+        final CountDownLatch done;
+        /**
+         * words times beam width; see {@link AdmissionControl#cost}
+         */
+        final long cost;
+        long queuedAt;
+        /**
+         * predicted head (0 for the root) and label id of each word
+         */
+        int[] heads;
+        int[] labels;
+        /**
+         * beam width of the last transition
+         */
+        int beamWidth;
+        /**
+         * true if the latency budget narrowed the beam
+         */
+        boolean degraded;
+        Throwable error;
+        /**
+         * shared by the sentences of a request; set when one of them is dropped from the queue to make room, after
+         * which the others are not parsed either
+         */
+        final AtomicBoolean shed;
+        /**
+         * the same sentences of other requests that wait for this one to be parsed; null once it is finished
+         */
+        private ArrayList<ParseJob> followers;
+        private boolean finished;
+        /**
+         * set when done has been counted down for this job, which happens exactly once
+         */
+        private final AtomicBoolean answered;
+
+        ParseJob(ParserContext context, Sentence sentence, CountDownLatch done, long cost, AtomicBoolean shed) {
+            this.context = context;
+            this.sentence = sentence;
+            this.done = done;
+            this.cost = cost;
+            this.shed = shed;
+            followers = new ArrayList<>();
+            answered = new AtomicBoolean();
+        }
+
+        void shed() {
+            shed.set(true);
+            answer();
+        }
+
+        private void answer() {
+            if (answered.compareAndSet(false, true))
+                done.countDown();
+        }
+
+        /**
+         * Answers the job with the error, unless it has been answered already
+         */
+        void fail(Throwable e) {
+            if (answered.compareAndSet(false, true)) {
+                error = e;
+                done.countDown();
+            }
+        }
+
+        /**
+         * Parses the sentence, or, if the same sentence is already being parsed, leaves it to that job to finish
+         * this one as well, so that the worker can go on with its batch.
+         */
+        void run(ParserSession session, ParseCache cache, InFlightParses<ParseJob> inFlight, BeamPolicy beamPolicy,
+                 long budgetNanos) {
+            if (shed.get()) {
+                answer();
+                return;
+            }
+            int sentenceBeamWidth = beamPolicy == null ? context.beamWidth :
+                    beamPolicy.beamWidth(sentence, context.rootFirst);
+            Configuration cached = null;
+            if (cache != null)
+                cached = cache.get(sentence, context.rootFirst, sentenceBeamWidth, context.version);
+            if (cached != null) {
+                beamWidth = sentenceBeamWidth;
+                setTree(cached);
+                answer();
+                return;
+            }
+            ParseJob leader = inFlight.join(sentence, sentenceBeamWidth, context.version, this);
+            if (leader != null) {
+                leader.follow(this);
+                return;
+            }
+            try {
+                Configuration bestParse = session.parse(sentence, sentenceBeamWidth, budgetNanos);
+                beamWidth = session.getLastDegradation().finalBeamWidth;
+                degraded = session.getLastDegradation().isDegraded();
+                // a degraded parse is not what the full beam would give
+                if (cache != null && !degraded)
+                    cache.put(sentence, sentenceBeamWidth, context.version, bestParse);
+                setTree(bestParse);
+            } catch (Throwable e) {
+                // the followers get the error as well; the worker drops the session
+                error = e;
+                throw e;
+            } finally {
+                inFlight.done(sentence, sentenceBeamWidth, context.version, this);
+                finish();
+            }
+        }
+
+        private void setTree(Configuration bestParse) {
+            int length = context.rootFirst ? sentence.size() : sentence.size() - 1;
+            heads = new int[length];
+            labels = new int[length];
+            for (int i = 0; i < length; i++) {
+                int head = bestParse.state.getHead(i + 1);
+                heads[i] = head == bestParse.state.rootIndex ? 0 : head;
+                labels[i] = bestParse.state.getDependency(i + 1);
+            }
+        }
+
+        /**
+         * The follower gets the tree of this job when it is finished, or at once if it is finished already.
+         */
+        private void follow(ParseJob follower) {
+            synchronized (this) {
+                if (!finished) {
+                    followers.add(follower);
+                    return;
+                }
+            }
+            follower.copy(this);
+        }
+
+        private void finish() {
+            ArrayList<ParseJob> waiting;
+            synchronized (this) {
+                finished = true;
+                waiting = followers;
+                followers = null;
+            }
+            for (ParseJob follower : waiting)
+                follower.copy(this);
+            answer();
+        }
+
+        private void copy(ParseJob leader) {
+            // the arrays are only read when the response is written
+            heads = leader.heads;
+            labels = leader.labels;
+            beamWidth = leader.beamWidth;
+            degraded = leader.degraded;
+            error = leader.error;
+            answer();
+        }
+    }
+
+    private void handleParse(HttpExchange exchange) {
+        try {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                respond(exchange, 405, "text/plain", "use POST\n");
+                return;
+            }
+            HashMap<String, String> parameters = parameters(exchange.getRequestURI().getRawQuery());
+            ModelQueue modelQueue = modelQueue(parameters);
+            if (modelQueue == null) {
+                respond(exchange, 404, "text/plain", "unknown model " + parameters.get("model") + "\n");
+                return;
+            }
+            String input = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            String format = parameters.getOrDefault("format", input.indexOf('\t') >= 0 ? "conll" : "tagged");
+            ArrayList<String[][]> sentences;
+            if (format.equals("conll"))
+                sentences = readCoNLL(input);
+            else if (format.equals("tagged"))
+                sentences = readTagged(input);
+            else {
+                respond(exchange, 400, "text/plain", "unknown format " + format + "\n");
+                return;
+            }
+
+            // the lease keeps the model of this request in memory until its sentences are parsed
+            try (ModelHolder.Lease lease = modelQueue.entry.models.acquire()) {
+                ParserContext context = lease.getContext();
+                CountDownLatch done = new CountDownLatch(sentences.size());
+                AtomicBoolean shed = new AtomicBoolean();
+                ArrayList<ParseJob> jobs = new ArrayList<>(sentences.size());
+                for (String[][] rows : sentences) {
+                    String[] words = new String[rows.length];
+                    String[] tags = new String[rows.length];
+                    for (int i = 0; i < rows.length; i++) {
+                        words[i] = rows[i][1];
+                        tags[i] = rows[i][3];
+                    }
+                    Sentence sentence = context.maps.makeSentence(words, tags, context.rootFirst, context.lowercase);
+                    int beamWidth = beamPolicy == null ? context.beamWidth :
+                            beamPolicy.beamWidth(sentence, context.rootFirst);
+                    jobs.add(new ParseJob(context, sentence, done, AdmissionControl.cost(rows.length, beamWidth),
+                            shed));
+                }
+                if (!enqueue(modelQueue, jobs)) {
+                    respondBusy(exchange, "the parse queue is full\n");
+                    return;
+                }
+                if (!done.await(REQUEST_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                    shed.set(true);
+                    respondBusy(exchange, "the sentences were not parsed within " + REQUEST_TIMEOUT_MILLIS / 1000
+                            + " seconds\n");
+                    return;
+                }
+                if (shed.get()) {
+                    respondBusy(exchange, "the request was dropped to make room for newer ones\n");
+                    return;
+                }
+                for (int s = 0; s < jobs.size(); s++) {
+                    if (jobs.get(s).error != null) {
+                        respond(exchange, 500, "text/plain", jobs.get(s).error + "\n");
+                        return;
+                    }
+                    setHeads(sentences.get(s), jobs.get(s), context.maps);
+                }
+                parsedSentences.addAndGet(jobs.size());
+                int[] beamWidths = null;
+                if (budgetNanos > 0 || beamPolicy != null) {
+                    beamWidths = new int[jobs.size()];
+                    for (int s = 0; s < jobs.size(); s++) {
+                        beamWidths[s] = jobs.get(s).beamWidth;
+                        if (jobs.get(s).degraded)
+                            degradedSentences.incrementAndGet();
+                    }
+                }
+                if (parameters.getOrDefault("output", "conll").equals("json"))
+                    respond(exchange, 200, "application/json", toJson(sentences, beamWidths));
+                else
+                    respond(exchange, 200, "text/plain", toCoNLL(sentences));
+            }
+        } catch (Exception e) {
+            try {
+                respond(exchange, 400, "text/plain", e + "\n");
+            } catch (Exception ignored) {
+            }
+        }
+    }
+
+    /**
+     * Writes the predicted heads and labels into the CoNLL rows of the sentence.
+     */
+    private static void setHeads(String[][] rows, ParseJob job, IndexMaps maps) {
+        for (int i = 0; i < rows.length; i++) {
+            int head = job.heads[i];
+            rows[i][6] = Integer.toString(head);
+            rows[i][7] = head == 0 ? maps.rootString : maps.revWords[job.labels[i]];
+        }
+    }
+
+    private ArrayList<String[][]> readTagged(String input) throws Exception {
+        ArrayList<String[][]> sentences = new ArrayList<>();
+        for (String line : input.split("\n")) {
+            line = line.trim();
+            if (line.length() == 0)
+                continue;
+            ArrayList<String[]> rows = new ArrayList<>();
+            for (String token : line.split(" ")) {
+                if (token.length() == 0)
+                    continue;
+                int index = token.lastIndexOf(separator);
+                if (index <= 0)
+                    throw new Exception("no tag in " + token);
+                String[] row = {Integer.toString(rows.size() + 1), token.substring(0, index), "_",
+                        token.substring(index + separator.length()), "_", "_", "_", "_", "_", "_"};
+                rows.add(row);
+            }
+            sentences.add(rows.toArray(new String[0][]));
+        }
+        return sentences;
+    }
+
+    private ArrayList<String[][]> readCoNLL(String input) throws Exception {
+        ArrayList<String[][]> sentences = new ArrayList<>();
+        ArrayList<String[]> rows = new ArrayList<>();
+        for (String line : input.split("\n")) {
+            line = line.trim();
+            if (line.length() == 0) {
+                if (rows.size() > 0)
+                    sentences.add(rows.toArray(new String[0][]));
+                rows = new ArrayList<>();
+                continue;
+            }
+            String[] fields = line.split("\t");
+            if (fields.length < 8)
+                throw new Exception("wrong file format");
+            rows.add(fields);
+        }
+        if (rows.size() > 0)
+            sentences.add(rows.toArray(new String[0][]));
+        return sentences;
+    }
+
+    private static String toCoNLL(ArrayList<String[][]> sentences) {
+        StringBuilder output = new StringBuilder();
+        for (String[][] rows : sentences) {
+            for (String[] row : rows)
+                output.append(String.join("\t", row)).append("\n");
+            output.append("\n");
+        }
+        return output.toString();
+    }
+
+    /**
+     * @param beamWidths final beam width of each sentence, or null without a latency budget or beam policy
+     */
+    private static String toJson(ArrayList<String[][]> sentences, int[] beamWidths) {
+        StringBuilder output = new StringBuilder("{\"sentences\":[");
+        for (int s = 0; s < sentences.size(); s++) {
+            if (s > 0)
+                output.append(",");
+            output.append("[");
+            String[][] rows = sentences.get(s);
+            for (int i = 0; i < rows.length; i++) {
+                if (i > 0)
+                    output.append(",");
+                output.append("{\"id\":").append(i + 1)
+                        .append(",\"form\":").append(quote(rows[i][1]))
+                        .append(",\"pos\":").append(quote(rows[i][3]))
+                        .append(",\"head\":").append(rows[i][6])
+                        .append(",\"label\":").append(quote(rows[i][7])).append("}");
+            }
+            output.append("]");
+        }
+        output.append("]");
+        if (beamWidths != null) {
+            output.append(",\"beamWidths\":[");
+            for (int s = 0; s < beamWidths.length; s++)
+                output.append(s > 0 ? "," : "").append(beamWidths[s]);
+            output.append("]");
+        }
+        return output.append("}\n").toString();
+    }
+
+    private static String quote(String value) {
+        StringBuilder builder = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\')
+                builder.append('\\').append(c);
+            else if (c < 0x20)
+                builder.append(String.format("\\u%04x", (int) c));
+            else
+                builder.append(c);
+        }
+        return builder.append("\"").toString();
+    }
+
+    private static HashMap<String, String> parameters(String query) throws Exception {
+        HashMap<String, String> parameters = new HashMap<>();
+        if (query == null)
+            return parameters;
+        for (String pair : query.split("&")) {
+            int index = pair.indexOf('=');
+            if (index > 0)
+                parameters.put(URLDecoder.decode(pair.substring(0, index), "UTF-8"),
+                        URLDecoder.decode(pair.substring(index + 1), "UTF-8"));
+        }
+        return parameters;
+    }
+
+    private static void respondBusy(HttpExchange exchange, String message) throws IOException {
+        exchange.getResponseHeaders().set("Retry-After", "1");
+        respond(exchange, 503, "text/plain", message);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String contentType, String body)
+            throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType + "; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        OutputStream output = exchange.getResponseBody();
+        output.write(bytes);
+        output.close();
+    }
+}
@@ -1,21 +1,56 @@
 package YaraParser.Parser;
 
-import YaraParser.Accessories.CoNLLReader;
+import YaraParser.Accessories.BeamPolicyTuner;
+import YaraParser.Accessories.BinaryCorpus;
+import YaraParser.Accessories.CompactTreebank;
 import YaraParser.Accessories.Evaluator;
+import YaraParser.Accessories.Metrics;
 import YaraParser.Accessories.Options;
+import YaraParser.Accessories.PhaseTimers;
+import YaraParser.Accessories.StreamingTreebank;
+import YaraParser.Benchmark.AllocationBenchmark;
+import YaraParser.Benchmark.ParserBenchmarks;
+import YaraParser.Benchmark.SyntheticTreebank;
+import YaraParser.Benchmark.ThroughputBenchmark;
+import YaraParser.Benchmark.TrainingBenchmark;
 import YaraParser.Learning.AveragedPerceptron;
 import YaraParser.Learning.BinaryPerceptron;
 import YaraParser.Structures.IndexMaps;
 import YaraParser.Structures.InfStruct;
 import YaraParser.TransitionBasedSystem.Configuration.GoldConfiguration;
+import YaraParser.TransitionBasedSystem.Parser.BeamDiagnostics;
+import YaraParser.TransitionBasedSystem.Parser.BeamPolicy;
 import YaraParser.TransitionBasedSystem.Parser.KBeamArcEagerParser;
+import YaraParser.TransitionBasedSystem.Parser.ModelRegistry;
+import YaraParser.TransitionBasedSystem.Parser.ParseCache;
+import YaraParser.TransitionBasedSystem.Parser.ParserContext;
 import YaraParser.TransitionBasedSystem.Trainer.ArcEagerBeamTrainer;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 public class YaraParser {
     public static void main(String[] args) throws Exception {
         Options options = Options.processArgs(args);
+        if (PhaseTimers.ENABLED) {
+            // also prints the timers of a server that is stopped with a signal
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    PhaseTimers.dump();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }));
+        }
+        if (options.metricsPath.length() > 0) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    Metrics.write(options.metricsPath);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            }));
+        }
         if (options.showHelp) {
             Options.showHelp();
         } else {
@@ -26,6 +61,38 @@ public class YaraParser {
                 parse(options);
             } else if (options.evaluate) {
                 evaluate(options);
+            } else if (options.indexCorpus) {
+                index(options);
+            } else if (options.serve) {
+                serve(options);
+            } else if (options.tuneBeamPolicy) {
+                tuneBeamPolicy(options);
+            } else if (options.benchmark) {
+                ParserBenchmarks.run(options.inputFile, options.clusterFile, options.benchmarkFilter,
+                        options.outputFile);
+            } else if (options.generate) {
+                generate(options);
+            } else if (options.throughput) {
+                ArrayList<Integer> beamWidths = new ArrayList<>();
+                for (String beamWidth : options.beamWidths.split(","))
+                    beamWidths.add(Integer.parseInt(beamWidth));
+                ArrayList<Integer> threadCounts = new ArrayList<>();
+                for (String threads : options.threadCounts.split(","))
+                    threadCounts.add(Integer.parseInt(threads));
+                ThroughputBenchmark.run(options.sentenceCount, options.vocabularySize, options.zipfExponent,
+                        options.meanLength, options.seed, Arrays.asList(options.featureSets.split(",")), beamWidths,
+                        threadCounts, options.outputFile);
+            } else if (options.trainBenchmark) {
+                TrainingBenchmark.run(options.sentenceCount, options.vocabularySize, options.zipfExponent,
+                        options.meanLength, options.seed, Arrays.asList(options.featureSets.split(",")), options,
+                        options.epochs, options.outputFile);
+            } else if (options.allocation) {
+                ArrayList<Integer> beamWidths = new ArrayList<>();
+                for (String beamWidth : options.beamWidths.split(","))
+                    beamWidths.add(Integer.parseInt(beamWidth));
+                AllocationBenchmark.run(options.sentenceCount, options.vocabularySize, options.zipfExponent,
+                        options.meanLength, options.seed, Arrays.asList(options.featureSets.split(",")), beamWidths,
+                        options.outputFile);
             } else {
                 Options.showHelp();
             }
@@ -41,6 +108,72 @@ public class YaraParser {
         }
     }
 
+    private static void index(Options options) throws Exception {
+        if (options.inputFile.equals("") || options.outputFile.equals(""))
+            Options.showHelp();
+        else
+            BinaryCorpus.convert(options.inputFile, options.clusterFile, options.labeled, options.lowercase,
+                    options.outputFile);
+    }
+
+    private static void serve(Options options) throws Exception {
+        if (options.modelFile.equals("") && options.models.equals("")) {
+            Options.showHelp();
+        } else {
+            int quota = options.modelQuota > 0 ? options.modelQuota : options.numOfThreads;
+            ModelRegistry registry = new ModelRegistry();
+            if (!options.modelFile.equals(""))
+                registry.register("default", options.modelFile, quota);
+            if (!options.models.equals("")) {
+                for (String model : options.models.split(",")) {
+                    int index = model.indexOf('=');
+                    if (index <= 0)
+                        throw new Exception("models should be given as name=model-file: " + model);
+                    String name = model.substring(0, index);
+                    String modelPath = model.substring(index + 1);
+                    int modelQuota = quota;
+                    int quotaIndex = modelPath.lastIndexOf('@');
+                    if (quotaIndex > 0) {
+                        modelQuota = Integer.parseInt(modelPath.substring(quotaIndex + 1));
+                        modelPath = modelPath.substring(0, quotaIndex);
+                    }
+                    registry.register(name, modelPath, modelQuota);
+                }
+            }
+            ParseServer server = new ParseServer(registry, options.separator, options.numOfThreads,
+                    options.batchSize, options.virtualThreads);
+            if (options.cacheSize > 0)
+                server.setCache(new ParseCache(options.cacheSize));
+            server.setLatencyBudget(options.latencyBudget);
+            server.setWarmUp(options.warmUp);
+            server.setAdmissionControl(new AdmissionControl(options.queueCapacity,
+                    AdmissionControl.policy(options.overloadPolicy), options.queueWait));
+            if (options.beamPolicy.length() > 0)
+                server.setBeamPolicy(BeamPolicy.parse(options.beamPolicy));
+            server.start(options.host, options.port);
+            Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+            server.join();
+        }
+    }
+
+    private static void generate(Options options) throws Exception {
+        if (options.outputFile.equals(""))
+            Options.showHelp();
+        else {
+            SyntheticTreebank treebank = new SyntheticTreebank(options.vocabularySize, options.zipfExponent,
+                    options.meanLength, options.seed);
+            treebank.write(options.outputFile, options.sentenceCount);
+            treebank.writeClusters(options.outputFile + ".clusters");
+        }
+    }
+
+    private static void tuneBeamPolicy(Options options) throws Exception {
+        if (options.modelFile.equals("") || options.inputFile.equals(""))
+            Options.showHelp();
+        else
+            BeamPolicyTuner.tune(options.modelFile, options.inputFile, options.targetSpeed);
+    }
+
     private static void parse(Options options) throws Exception {
         if (options.outputFile.equals("") || options.inputFile.equals("") || options.modelFile.equals("")) {
             Options.showHelp();
@@ -48,13 +181,32 @@ public class YaraParser {
             InfStruct infStruct = new InfStruct(options.modelFile);
             ArrayList<Integer> dependencyLabels = infStruct.dependencyLabels;
             IndexMaps maps = infStruct.maps;
-            InfStruct bInfStruct = new InfStruct(options.binaryModelFile);
             Options inf_options = infStruct.options;
             AveragedPerceptron averagedPerceptron = new AveragedPerceptron(infStruct);
-            BinaryPerceptron bPerceptron = new BinaryPerceptron(bInfStruct);
             int featureSize = averagedPerceptron.featureSize();
-            KBeamArcEagerParser parser = new KBeamArcEagerParser(bPerceptron, averagedPerceptron, dependencyLabels, featureSize,
-                    maps, options.numOfThreads);
+            // the binary model is only needed for the beam diagnostics
+            KBeamArcEagerParser parser;
+            if (options.binaryModelFile.equals("")) {
+                parser = new KBeamArcEagerParser(averagedPerceptron, dependencyLabels, featureSize, maps,
+                        options.numOfThreads);
+            } else {
+                BinaryPerceptron bPerceptron = new BinaryPerceptron(new InfStruct(options.binaryModelFile));
+                parser = new KBeamArcEagerParser(bPerceptron, averagedPerceptron, dependencyLabels, featureSize,
+                        maps, options.numOfThreads);
+            }
+            BeamDiagnostics diagnostics = null;
+            if (!options.diagnosticsPath.equals("")) {
+                if (options.binaryModelFile.equals(""))
+                    throw new Exception("beam diagnostics need a binary model (-b-model)");
+                diagnostics = new BeamDiagnostics(options.diagnosticsPath, options.diagnosticsSampleRate);
+                parser.setDiagnostics(diagnostics);
+            }
+            parser.setVirtualThreads(options.virtualThreads);
+            if (options.cacheSize > 0)
+                parser.setCache(new ParseCache(options.cacheSize), ParseCache.modelVersion(options.modelFile));
+            if (options.beamPolicy.length() > 0)
+                parser.setBeamPolicy(BeamPolicy.parse(options.beamPolicy));
+            parser.setLatencyBudget(options.latencyBudget);
             if (options.parseTaggedFile)
                 parser.parseTaggedFile(options.inputFile, options.outputFile, inf_options.rootFirst,
                         inf_options.beamWidth, inf_options.lowercase, options.separator, options.numOfThreads);
@@ -66,6 +218,13 @@ public class YaraParser {
                 parser.parseCoNLLFile(options.inputFile, options.outputFile, inf_options.rootFirst,
                         inf_options.beamWidth, options.labeled, inf_options.lowercase, options.numOfThreads, true,
                         options.scorePath);
+            if (parser.getCache() != null)
+                System.out.println(parser.getCache().stats());
+            if (diagnostics != null) {
+                diagnostics.close();
+                if (diagnostics.dropped() > 0)
+                    System.out.println(diagnostics.dropped() + " beam diagnostics dropped");
+            }
             parser.shutDownLiveThreads();
         }
     }
@@ -74,11 +233,22 @@ public class YaraParser {
         if (options.inputFile.equals("") || options.modelFile.equals("")) {
             Options.showHelp();
         } else {
-            IndexMaps maps = CoNLLReader.createIndices(options.inputFile, options.labeled, options.lowercase,
-                    options.clusterFile);
-            CoNLLReader reader = new CoNLLReader(options.inputFile);
-            ArrayList<GoldConfiguration> dataSet = reader.readData(Integer.MAX_VALUE, false, options.labeled,
-                    options.rootFirst, options.lowercase, maps);
+            IndexMaps maps;
+            Iterable<GoldConfiguration> dataSet;
+            int trainSize;
+            if (options.streamTraining) {
+                StreamingTreebank treebank = new StreamingTreebank(options.inputFile, options);
+                maps = treebank.getMaps();
+                dataSet = treebank;
+                trainSize = treebank.size();
+            } else {
+                CompactTreebank treebank = BinaryCorpus.readCompactTreebank(options.inputFile, options);
+                maps = treebank.getMaps();
+                dataSet = treebank;
+                trainSize = treebank.size();
+                System.out.println("treebank columns: " + treebank.tokenCount() + " tokens, "
+                        + treebank.columnBytes() / 1024 + " KB");
+            }
             ArrayList<Integer> dependencyLabels = new ArrayList<>(maps.getLabels().keySet());
             int featureLength;
             if (options.useExtendedFeatures)
@@ -87,7 +257,7 @@ public class YaraParser {
                 featureLength = 153;
             else
                 featureLength = 26;
-            System.out.println("# of sentences in train dataset: " + dataSet.size());
+            System.out.println("# of sentences in train dataset: " + trainSize);
             System.out.println("# of features: " + featureLength);
             /*HashMap<String, Integer> labels = new HashMap<>();
             int labIndex = 0;
@@ -107,7 +277,7 @@ public class YaraParser {
                     new AveragedPerceptron(featureLength, dependencyLabels.size()),
                     new BinaryPerceptron(featureLength, dependencyLabels.size()), options, dependencyLabels,
                     featureLength, maps);
-            trainer.train(dataSet, options.devPath, options.trainingIter, options.modelFile, options.lowercase,
+            trainer.train(dataSet, trainSize, options.devPath, options.trainingIter, options.modelFile, options.lowercase,
                     options.punctuations, options.partialTrainingStartingIteration);
         }
     }
@@ -3,8 +3,10 @@ package YaraParser.Structures;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Objects;
 
 public class IndexMaps implements Serializable {
+    private static final long serialVersionUID = -326017904551091355L;
     public final String rootString;
     public String[] revWords;
     private HashMap<String, Integer> wordMap;
@@ -12,10 +14,14 @@ public class IndexMaps implements Serializable {
     private HashMap<Integer, Integer> brown4Clusters;
     private HashMap<Integer, Integer> brown6Clusters;
     private HashMap<String, Integer> brownFullClusters;
+    /**
+     * ids of the POS tags, sorted; null in maps that were saved before the tags were kept
+     */
+    private int[] tags;
 
     public IndexMaps(HashMap<String, Integer> wordMap, HashMap<Integer, Integer> labels, String rootString,
                      HashMap<Integer, Integer> brown4Clusters, HashMap<Integer, Integer> brown6Clusters,
-                     HashMap<String, Integer> brownFullClusters) {
+                     HashMap<String, Integer> brownFullClusters, int[] tags) {
         this.wordMap = wordMap;
         this.labels = labels;
         revWords = new String[wordMap.size() + 1];
@@ -27,6 +33,7 @@ public class IndexMaps implements Serializable {
         this.brown6Clusters = brown6Clusters;
         this.brownFullClusters = brownFullClusters;
         this.rootString = rootString;
+        this.tags = tags;
     }
 
     public Sentence makeSentence(String[] words, String[] posTags, boolean rootFirst, boolean lowerCased) {
@@ -75,6 +82,13 @@ public class IndexMaps implements Serializable {
         return labels;
     }
 
+    /**
+     * @return the ids of the POS tags of the treebank, or null for maps of older models
+     */
+    public int[] getTags() {
+        return tags;
+    }
+
     public int[] clusterId(String word) {
         int[] ids = new int[3];
         ids[0] = -100;
@@ -92,4 +106,55 @@ public class IndexMaps implements Serializable {
     public boolean hasClusters() {
         return brownFullClusters != null && brownFullClusters.size() > 0;
     }
+
+    /**
+     * @return maps with the same content as these, that use the tables of the other maps wherever they are equal,
+     * so that models trained on the same vocabulary, tag set or clusters keep only one copy of them
+     */
+    public IndexMaps shareTables(IndexMaps other) {
+        IndexMaps maps = new IndexMaps(this);
+        if (Objects.equals(wordMap, other.wordMap)) {
+            maps.wordMap = other.wordMap;
+            maps.revWords = other.revWords;
+        }
+        if (Objects.equals(labels, other.labels))
+            maps.labels = other.labels;
+        if (Objects.equals(brown4Clusters, other.brown4Clusters))
+            maps.brown4Clusters = other.brown4Clusters;
+        if (Objects.equals(brown6Clusters, other.brown6Clusters))
+            maps.brown6Clusters = other.brown6Clusters;
+        if (Objects.equals(brownFullClusters, other.brownFullClusters))
+            maps.brownFullClusters = other.brownFullClusters;
+        return maps;
+    }
+
+    /**
+     * @return number of tables (words and tags, labels and the three cluster maps) that are the same objects in both
+     * maps
+     */
+    public int sharedTables(IndexMaps other) {
+        int shared = 0;
+        if (wordMap == other.wordMap)
+            shared++;
+        if (labels == other.labels)
+            shared++;
+        if (brown4Clusters == other.brown4Clusters)
+            shared++;
+        if (brown6Clusters == other.brown6Clusters)
+            shared++;
+        if (brownFullClusters == other.brownFullClusters)
+            shared++;
+        return shared;
+    }
+
+    private IndexMaps(IndexMaps maps) {
+        rootString = maps.rootString;
+        revWords = maps.revWords;
+        wordMap = maps.wordMap;
+        labels = maps.labels;
+        brown4Clusters = maps.brown4Clusters;
+        brown6Clusters = maps.brown6Clusters;
+        brownFullClusters = maps.brownFullClusters;
+        tags = maps.tags;
+    }
 }
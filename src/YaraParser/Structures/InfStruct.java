@@ -1,6 +1,8 @@
 package YaraParser.Structures;
 
+import YaraParser.Accessories.Metrics;
 import YaraParser.Accessories.Options;
+import YaraParser.Events.ModelLoadEvent;
 import YaraParser.Learning.AveragedPerceptron;
 import YaraParser.Learning.BinaryPerceptron;
 
@@ -19,6 +21,9 @@ import java.util.zip.GZIPOutputStream;
  */
 
 public class InfStruct {
+    private static final Metrics.Histogram loadSeconds = Metrics.histogram("yara_model_load_seconds",
+            "Time of reading a model file", new double[]{0.1, 0.25, 0.5, 1, 2.5, 5, 10, 25, 60, 120});
+
     public HashMap<Object, Float>[] shiftFeatureAveragedWeights;
     public HashMap<Object, Float>[] reduceFeatureAveragedWeights;
     public HashMap<Object, CompactArray>[] leftArcFeatureAveragedWeights;
@@ -159,6 +164,9 @@ public class InfStruct {
     }
 
     public InfStruct(String modelPath) throws Exception {
+        ModelLoadEvent event = new ModelLoadEvent();
+        event.begin();
+        long start = System.nanoTime();
         FileInputStream fos = new FileInputStream(modelPath);
         GZIPInputStream gz = new GZIPInputStream(fos);
         ObjectInputStream reader = new ObjectInputStream(gz);
@@ -170,6 +178,13 @@ public class InfStruct {
         leftArcFeatureAveragedWeights = (HashMap<Object, CompactArray>[]) reader.readObject();
         rightArcFeatureAveragedWeights = (HashMap<Object, CompactArray>[]) reader.readObject();
         dependencySize = reader.readInt();
+        loadSeconds.observe((System.nanoTime() - start) / 1e9);
+        if (event.shouldCommit()) {
+            event.path = modelPath;
+            event.featureLength = shiftFeatureAveragedWeights.length;
+            event.labels = dependencySize;
+            event.commit();
+        }
     }
 
     public void saveModel(String modelPath) throws Exception {
@@ -34,6 +34,15 @@ public class Sentence implements Comparable {
         }
     }
 
+    public Sentence(int[] words, int[] tags, int[] brownCluster4thPrefix, int[] brownCluster6thPrefix,
+                    int[] brownClusterFullString) {
+        this.words = words;
+        this.tags = tags;
+        this.brownCluster4thPrefix = brownCluster4thPrefix;
+        this.brownCluster6thPrefix = brownCluster6thPrefix;
+        this.brownClusterFullString = brownClusterFullString;
+    }
+
     public int size() {
         return words.length;
     }
@@ -82,6 +82,28 @@ public class Configuration implements Comparable, Cloneable, Serializable {
         return false;
     }
 
+    /**
+     * Turns this configuration into the initial configuration of the sentence, reusing its state
+     */
+    public void reset(Sentence sentence, boolean rootFirst) {
+        this.sentence = sentence;
+        state.reset(sentence.size(), rootFirst);
+        score = 0.0f;
+        actionHistory.clear();
+    }
+
+    /**
+     * Same as {@link #clone()} but copies into this configuration instead of a new one
+     */
+    public void copyFrom(Configuration configuration) {
+        sentence = configuration.sentence;
+        state.copyFrom(configuration.state);
+        score = configuration.score;
+        actionHistory.clear();
+        for (int i = 0; i < configuration.actionHistory.size(); i++)
+            actionHistory.add(configuration.actionHistory.get(i));
+    }
+
     @Override
     public Configuration clone() {
         Configuration configuration = new Configuration(sentence);
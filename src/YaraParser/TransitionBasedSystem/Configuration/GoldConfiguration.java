@@ -5,45 +5,120 @@ import YaraParser.Structures.Sentence;
 import YaraParser.TransitionBasedSystem.Parser.Actions;
 import YaraParser.TransitionBasedSystem.Parser.ArcEager;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 
+/**
+ * The gold tree of a training sentence. Heads, labels and the number of gold dependents of each token are kept in
+ * int arrays indexed by token position; the arrays may be columns shared by a whole treebank (see
+ * {@link YaraParser.Accessories.CompactTreebank}), in which case this object is only a view on one sentence.
+ */
 public class GoldConfiguration {
-    private HashMap<Integer, Pair<Integer, Integer>> goldDependencies;
-    private HashMap<Integer, HashSet<Integer>> reversedDependencies;
-    private Sentence sentence;
+    private final Sentence sentence;
+    private final int[] heads;
+    private final int[] labels;
+    private final int[] dependents;
+    /**
+     * position of token 1 in the arrays
+     */
+    private final int offset;
+    /**
+     * number of tokens that can have a gold head
+     */
+    private final int length;
 
     public GoldConfiguration(Sentence sentence, HashMap<Integer, Pair<Integer, Integer>> goldDependencies) {
-        this.goldDependencies = new HashMap<>();
-        reversedDependencies = new HashMap<>();
-        for (int head : goldDependencies.keySet())
-            this.goldDependencies.put(head, goldDependencies.get(head).clone());
+        int length = sentence.size();
+        for (int dependent : goldDependencies.keySet())
+            length = Math.max(length, dependent);
+        this.sentence = sentence;
+        this.length = length;
+        offset = 0;
+        heads = new int[length];
+        labels = new int[length];
+        dependents = new int[length];
+        Arrays.fill(heads, -1);
+        Arrays.fill(labels, -1);
         for (int dependent : goldDependencies.keySet()) {
-            int head = goldDependencies.get(dependent).first;
-            if (!reversedDependencies.containsKey(head))
-                reversedDependencies.put(head, new HashSet<>());
-            reversedDependencies.get(head).add(dependent);
+            if (dependent < 1)
+                continue;
+            Pair<Integer, Integer> dependency = goldDependencies.get(dependent);
+            heads[dependent - 1] = dependency.first;
+            labels[dependent - 1] = dependency.second;
+            if (dependency.first >= 1 && dependency.first <= length)
+                dependents[dependency.first - 1]++;
         }
+    }
+
+    /**
+     * Creates a view on the tokens offset..offset+length-1 of the given columns. A head or label of -1 means that
+     * the token has no gold head.
+     */
+    public GoldConfiguration(Sentence sentence, int[] heads, int[] labels, int[] dependents, int offset, int length) {
         this.sentence = sentence;
+        this.heads = heads;
+        this.labels = labels;
+        this.dependents = dependents;
+        this.offset = offset;
+        this.length = length;
     }
 
     public Sentence getSentence() {
         return sentence;
     }
 
+    public boolean hasHead(int dependent) {
+        return dependent >= 1 && dependent <= length && heads[offset + dependent - 1] >= 0;
+    }
+
     public int head(int dependent) {
-        if (!goldDependencies.containsKey(dependent))
+        if (dependent < 1 || dependent > length)
             return -1;
-        return goldDependencies.get(dependent).first;
+        return heads[offset + dependent - 1];
+    }
+
+    /**
+     * @return the gold label id of the dependent, or -1 if it does not have a gold head
+     */
+    public int label(int dependent) {
+        if (!hasHead(dependent))
+            return -1;
+        return labels[offset + dependent - 1];
     }
 
     public String relation(int dependent) {
-        if (!goldDependencies.containsKey(dependent))
+        if (!hasHead(dependent))
             return "_";
-        return goldDependencies.get(dependent).second + "";
+        return labels[offset + dependent - 1] + "";
+    }
+
+    /**
+     * @return number of gold dependents of the head
+     */
+    public int dependentCount(int head) {
+        if (head >= 1 && head <= length)
+            return dependents[offset + head - 1];
+        int count = 0;
+        for (int i = 0; i < length; i++)
+            if (heads[offset + i] == head)
+                count++;
+        return count;
+    }
+
+    private boolean isGoldArc(int head, int dependent) {
+        return hasHead(dependent) && heads[offset + dependent - 1] == head;
     }
 
+    /**
+     * Builds a map from each dependent to its gold head and label; the arrays are the actual representation, so
+     * use {@link #head} and {@link #label} where speed matters.
+     */
     public HashMap<Integer, Pair<Integer, Integer>> getGoldDependencies() {
+        HashMap<Integer, Pair<Integer, Integer>> goldDependencies = new HashMap<>();
+        for (int dependent = 1; dependent <= length; dependent++)
+            if (hasHead(dependent))
+                goldDependencies.put(dependent, new Pair<>(head(dependent), label(dependent)));
         return goldDependencies;
     }
 
@@ -53,11 +128,13 @@ public class GoldConfiguration {
      * @return true if the tree is non-projective
      */
     public boolean isNonprojective() {
-        for (int dep1 : goldDependencies.keySet()) {
-            int head1 = goldDependencies.get(dep1).first;
-            for (int dep2 : goldDependencies.keySet()) {
-                int head2 = goldDependencies.get(dep2).first;
-                if (head1 < 0 || head2 < 0)
+        for (int dep1 = 1; dep1 <= length; dep1++) {
+            int head1 = head(dep1);
+            if (head1 < 0)
+                continue;
+            for (int dep2 = 1; dep2 <= length; dep2++) {
+                int head2 = head(dep2);
+                if (head2 < 0)
                     continue;
                 if (dep1 > head1 && head1 != head2)
                     if ((dep1 > head2 && dep1 < dep2 && head1 < head2) || (dep1 < head2 && dep1 > dep2 && head1 < dep2))
@@ -73,14 +150,26 @@ public class GoldConfiguration {
     public boolean isPartial(boolean rootFirst) {
         for (int i = 0; i < sentence.size(); i++) {
             if (rootFirst || i < sentence.size() - 1) {
-                if (!goldDependencies.containsKey(i + 1))
+                if (!hasHead(i + 1))
                     return true;
             }
         }
         return false;
     }
 
+    /**
+     * Builds a map from each head to its gold dependents; see {@link #dependentCount} for the fast path.
+     */
     public HashMap<Integer, HashSet<Integer>> getReversedDependencies() {
+        HashMap<Integer, HashSet<Integer>> reversedDependencies = new HashMap<>();
+        for (int dependent = 1; dependent <= length; dependent++) {
+            if (!hasHead(dependent))
+                continue;
+            int head = head(dependent);
+            if (!reversedDependencies.containsKey(head))
+                reversedDependencies.put(head, new HashSet<>());
+            reversedDependencies.get(head).add(dependent);
+        }
         return reversedDependencies;
     }
 
@@ -103,38 +192,36 @@ public class GoldConfiguration {
         if (action == Actions.LeftArc) { // left arc
             int bufferHead = state.bufferHead();
             int stackHead = state.peek();
-            if (goldDependencies.containsKey(stackHead) && goldDependencies.get(stackHead).first == bufferHead
-                    && goldDependencies.get(stackHead).second != (dependency))
+            if (isGoldArc(bufferHead, stackHead) && label(stackHead) != dependency)
                 cost += 1;
         } else if (action == Actions.RightArc) { //right arc
             int bufferHead = state.bufferHead();
             int stackHead = state.peek();
-            if (goldDependencies.containsKey(bufferHead) && goldDependencies.get(bufferHead).first == stackHead
-                    && goldDependencies.get(bufferHead).second != (dependency))
+            if (isGoldArc(stackHead, bufferHead) && label(bufferHead) != dependency)
                 cost += 1;
         }
         if (action == Actions.Shift) { //shift
             int bufferHead = state.bufferHead();
             for (int stackItem : state.getStack()) {
-                if (goldDependencies.containsKey(stackItem) && goldDependencies.get(stackItem).first == (bufferHead))
+                if (isGoldArc(bufferHead, stackItem))
                     cost += 1;
-                if (goldDependencies.containsKey(bufferHead) && goldDependencies.get(bufferHead).first == (stackItem))
+                if (isGoldArc(stackItem, bufferHead))
                     cost += 1;
             }
         } else if (action == Actions.Reduce) { //reduce
             int stackHead = state.peek();
             if (!state.bufferEmpty())
                 for (int bufferItem = state.bufferHead(); bufferItem <= state.maxSentenceSize; bufferItem++) {
-                    if (goldDependencies.containsKey(bufferItem) && goldDependencies.get(bufferItem).first == (stackHead))
+                    if (isGoldArc(stackHead, bufferItem))
                         cost += 1;
                 }
         } else if (action == Actions.LeftArc && cost == 0) { //left arc
             int stackHead = state.peek();
             if (!state.bufferEmpty())
                 for (int bufferItem = state.bufferHead(); bufferItem <= state.maxSentenceSize; bufferItem++) {
-                    if (goldDependencies.containsKey(bufferItem) && goldDependencies.get(bufferItem).first == (stackHead))
+                    if (isGoldArc(stackHead, bufferItem))
                         cost += 1;
-                    if (goldDependencies.containsKey(stackHead) && goldDependencies.get(stackHead).first == (bufferItem))
+                    if (isGoldArc(bufferItem, stackHead))
                         if (bufferItem != state.bufferHead())
                             cost += 1;
                 }
@@ -142,15 +229,15 @@ public class GoldConfiguration {
             int stackHead = state.peek();
             int bufferHead = state.bufferHead();
             for (int stackItem : state.getStack()) {
-                if (goldDependencies.containsKey(bufferHead) && goldDependencies.get(bufferHead).first == (stackItem))
+                if (isGoldArc(stackItem, bufferHead))
                     if (stackItem != stackHead)
                         cost += 1;
-                if (goldDependencies.containsKey(stackItem) && goldDependencies.get(stackItem).first == (bufferHead))
+                if (isGoldArc(bufferHead, stackItem))
                     cost += 1;
             }
             if (!state.bufferEmpty())
                 for (int bufferItem = state.bufferHead(); bufferItem <= state.maxSentenceSize; bufferItem++) {
-                    if (goldDependencies.containsKey(bufferHead) && goldDependencies.get(bufferHead).first == (bufferItem))
+                    if (isGoldArc(bufferItem, bufferHead))
                         cost += 1;
                 }
         }
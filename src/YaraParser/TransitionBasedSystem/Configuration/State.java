@@ -8,6 +8,7 @@ package YaraParser.TransitionBasedSystem.Configuration;
 import YaraParser.Accessories.Pair;
 
 import java.util.ArrayDeque;
+import java.util.Arrays;
 
 public class State implements Cloneable {
     public int rootIndex;
@@ -37,7 +38,7 @@ public class State implements Cloneable {
     public State(int size) {
         emptyFlag = false;
         stack = new ArrayDeque<>();
-        arcs = new Pair[size + 1];
+        arcs = newArcs(size + 1);
         leftMostArcs = new int[size + 1];
         rightMostArcs = new int[size + 1];
         leftValency = new int[size + 1];
@@ -210,6 +211,69 @@ public class State implements Cloneable {
         this.bufferH = bufferH;
     }
 
+    /**
+     * Turns this state into the initial state of a sentence of the given size, reusing the arrays if they are
+     * large enough
+     */
+    public void reset(int sentenceSize, boolean rootFirst) {
+        allocate(sentenceSize + 1);
+        Arrays.fill(arcs, null);
+        Arrays.fill(leftMostArcs, 0);
+        Arrays.fill(rightMostArcs, 0);
+        Arrays.fill(leftValency, 0);
+        Arrays.fill(rightValency, 0);
+        Arrays.fill(rightDepLabels, 0);
+        Arrays.fill(leftDepLabels, 0);
+        emptyFlag = false;
+        stack.clear();
+        bufferH = 1;
+        maxSentenceSize = sentenceSize;
+        if (rootFirst) {
+            stack.push(0);
+            rootIndex = 0;
+        } else {
+            rootIndex = sentenceSize;
+        }
+    }
+
+    /**
+     * Makes this state a copy of the given one without allocating, as long as the sentence size does not change
+     */
+    public void copyFrom(State state) {
+        int length = state.arcs.length;
+        allocate(length);
+        System.arraycopy(state.arcs, 0, arcs, 0, length);
+        System.arraycopy(state.leftMostArcs, 0, leftMostArcs, 0, length);
+        System.arraycopy(state.rightMostArcs, 0, rightMostArcs, 0, length);
+        System.arraycopy(state.leftValency, 0, leftValency, 0, length);
+        System.arraycopy(state.rightValency, 0, rightValency, 0, length);
+        System.arraycopy(state.rightDepLabels, 0, rightDepLabels, 0, length);
+        System.arraycopy(state.leftDepLabels, 0, leftDepLabels, 0, length);
+        stack.clear();
+        stack.addAll(state.stack);
+        rootIndex = state.rootIndex;
+        bufferH = state.bufferH;
+        maxSentenceSize = state.maxSentenceSize;
+        emptyFlag = state.emptyFlag;
+    }
+
+    private void allocate(int length) {
+        if (arcs.length == length)
+            return;
+        arcs = newArcs(length);
+        leftMostArcs = new int[length];
+        rightMostArcs = new int[length];
+        leftValency = new int[length];
+        rightValency = new int[length];
+        rightDepLabels = new long[length];
+        leftDepLabels = new long[length];
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Pair<Integer, Integer>[] newArcs(int length) {
+        return (Pair<Integer, Integer>[]) new Pair<?, ?>[length];
+    }
+
     @Override
     public State clone() {
         State state = new State(arcs.length - 1);
@@ -4,6 +4,8 @@ import YaraParser.Structures.Sentence;
 import YaraParser.TransitionBasedSystem.Configuration.Configuration;
 import YaraParser.TransitionBasedSystem.Configuration.State;
 
+import java.util.Arrays;
+
 public class FeatureExtractor {
     /**
      * Given a list of templates, extracts all features for the given state
@@ -11,12 +13,23 @@ public class FeatureExtractor {
      * @return Object[]
      */
     public static Object[] extractAllParseFeatures(Configuration configuration, int length) {
-        if (length == 26)
-            return extractBasicFeatures(configuration, length);
-        else if (length == 72)
-            return extractExtendedFeatures(configuration, length);
+        return extractAllParseFeatures(configuration, new Object[length]);
+    }
+
+    /**
+     * Same as {@link #extractAllParseFeatures(Configuration, int)} but writes the features into the given array,
+     * whose length is the number of features.
+     *
+     * @return featureMap
+     */
+    public static Object[] extractAllParseFeatures(Configuration configuration, Object[] featureMap) {
+        Arrays.fill(featureMap, null);
+        if (featureMap.length == 26)
+            return extractBasicFeatures(configuration, featureMap);
+        else if (featureMap.length == 72)
+            return extractExtendedFeatures(configuration, featureMap);
         else
-            return extractExtendedFeaturesWithBrownClusters(configuration, length);
+            return extractExtendedFeaturesWithBrownClusters(configuration, featureMap);
     }
 
     /**
@@ -24,8 +37,7 @@ public class FeatureExtractor {
      *
      * @return Object[]
      */
-    private static Object[] extractExtendedFeatures(Configuration configuration, int length) {
-        Object[] featureMap = new Object[length];
+    private static Object[] extractExtendedFeatures(Configuration configuration, Object[] featureMap) {
         State state = configuration.state;
         Sentence sentence = configuration.sentence;
         int b0Position = 0;
@@ -416,10 +428,9 @@ public class FeatureExtractor {
     /**
      * Given a list of templates, extracts all features for the given state
      *
-     * @return Long[]
+     * @return Object[]
      */
-    private static Long[] extractBasicFeatures(Configuration configuration, int length) {
-        Long[] featureMap = new Long[length];
+    private static Object[] extractBasicFeatures(Configuration configuration, Object[] featureMap) {
         State state = configuration.state;
         Sentence sentence = configuration.sentence;
         int b0Position = 0;
@@ -573,8 +584,8 @@ public class FeatureExtractor {
         return featureMap;
     }
 
-    private static Object[] extractExtendedFeaturesWithBrownClusters(Configuration configuration, int length) {
-        Object[] featureMap = new Object[length];
+    private static Object[] extractExtendedFeaturesWithBrownClusters(Configuration configuration,
+                                                                     Object[] featureMap) {
         State state = configuration.state;
         Sentence sentence = configuration.sentence;
         int b0Position = 0;
@@ -0,0 +1,52 @@
+package YaraParser.TransitionBasedSystem.Parser;
+
+import YaraParser.Accessories.AsyncAppender;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Statistics of the final beam of a sample of the parsed sentences: how many beam items the binary classifier calls
+ * an oracle and whether the best item is one. Re-scoring the beam with the binary classifier costs about as much as
+ * parsing, so only a fraction of the sentences is looked at, and the records are written by an
+ * {@link AsyncAppender}, not by the parsing threads.
+ */
+public class BeamDiagnostics implements AutoCloseable {
+    private static final int QUEUE_CAPACITY = 4096;
+
+    private final double sampleRate;
+    private final AsyncAppender appender;
+
+    /**
+     * @param path       the records are appended to this file
+     * @param sampleRate fraction of the sentences to look at, between 0 and 1
+     */
+    public BeamDiagnostics(String path, double sampleRate) throws IOException {
+        this.sampleRate = sampleRate;
+        appender = new AsyncAppender(path, QUEUE_CAPACITY);
+    }
+
+    /**
+     * @return true if the beam of this sentence should be looked at
+     */
+    boolean sample() {
+        return sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < sampleRate;
+    }
+
+    void record(int sentence, int oracles, int nonOracles, boolean bestIsOracle) {
+        appender.append("Sentence " + sentence + "\nright parse: " + oracles + "\nwrong parse: " + nonOracles
+                + "\nbestConfiguration isOracle: " + bestIsOracle + "\n\n");
+    }
+
+    /**
+     * @return records dropped because the writer could not keep up
+     */
+    public long dropped() {
+        return appender.dropped();
+    }
+
+    @Override
+    public void close() throws IOException {
+        appender.close();
+    }
+}
@@ -0,0 +1,94 @@
+package YaraParser.TransitionBasedSystem.Parser;
+
+import YaraParser.Structures.Sentence;
+
+import java.util.ArrayList;
+
+/**
+ * Chooses the beam width of each sentence from its length, e.g. "20:64,40:32,80:8,1" parses sentences of up to 20
+ * words with a beam of 64, up to 40 words with 32, up to 80 words with 8 and longer ones greedily. Without the last
+ * width, longer sentences get the width of the last range.
+ */
+public class BeamPolicy {
+    /**
+     * maximum number of words of each range, in increasing order
+     */
+    private final int[] maxLengths;
+    private final int[] beamWidths;
+    private final int longBeamWidth;
+
+    public BeamPolicy(int[] maxLengths, int[] beamWidths, int longBeamWidth) throws Exception {
+        if (maxLengths.length != beamWidths.length)
+            throw new Exception("one beam width is needed for each length");
+        for (int i = 0; i < maxLengths.length; i++) {
+            if (i > 0 && maxLengths[i] <= maxLengths[i - 1])
+                throw new Exception("sentence lengths of a beam policy should be increasing");
+            if (beamWidths[i] < 1)
+                throw new Exception("beam width should be at least 1");
+        }
+        if (longBeamWidth < 1)
+            throw new Exception("beam width should be at least 1");
+        this.maxLengths = maxLengths;
+        this.beamWidths = beamWidths;
+        this.longBeamWidth = longBeamWidth;
+    }
+
+    public static BeamPolicy parse(String policy) throws Exception {
+        ArrayList<Integer> maxLengths = new ArrayList<>();
+        ArrayList<Integer> beamWidths = new ArrayList<>();
+        int longBeamWidth = -1;
+        for (String range : policy.split(",")) {
+            range = range.trim();
+            if (longBeamWidth != -1)
+                throw new Exception("only the last width of a beam policy can be without a length: " + policy);
+            int index = range.indexOf(':');
+            if (index < 0) {
+                longBeamWidth = Integer.parseInt(range);
+            } else {
+                maxLengths.add(Integer.parseInt(range.substring(0, index)));
+                beamWidths.add(Integer.parseInt(range.substring(index + 1)));
+            }
+        }
+        if (longBeamWidth == -1) {
+            if (beamWidths.isEmpty())
+                throw new Exception("empty beam policy");
+            longBeamWidth = beamWidths.get(beamWidths.size() - 1);
+        }
+        int[] lengths = new int[maxLengths.size()];
+        int[] widths = new int[beamWidths.size()];
+        for (int i = 0; i < lengths.length; i++) {
+            lengths[i] = maxLengths.get(i);
+            widths[i] = beamWidths.get(i);
+        }
+        return new BeamPolicy(lengths, widths, longBeamWidth);
+    }
+
+    public int beamWidth(int words) {
+        for (int i = 0; i < maxLengths.length; i++)
+            if (words <= maxLengths[i])
+                return beamWidths[i];
+        return longBeamWidth;
+    }
+
+    public int beamWidth(Sentence sentence, boolean rootFirst) {
+        return beamWidth(rootFirst ? sentence.size() : sentence.size() - 1);
+    }
+
+    public int maxBeamWidth() {
+        int max = longBeamWidth;
+        for (int beamWidth : beamWidths)
+            max = Math.max(max, beamWidth);
+        return max;
+    }
+
+    /**
+     * @return the policy in the format of {@link #parse}
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < maxLengths.length; i++)
+            builder.append(maxLengths[i]).append(":").append(beamWidths[i]).append(",");
+        return builder.append(longBeamWidth).toString();
+    }
+}
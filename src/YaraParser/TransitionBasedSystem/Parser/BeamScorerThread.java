@@ -1,5 +1,6 @@
 package YaraParser.TransitionBasedSystem.Parser;
 
+import YaraParser.Accessories.PhaseTimers;
 import YaraParser.Learning.AveragedPerceptron;
 import YaraParser.TransitionBasedSystem.Configuration.BeamElement;
 import YaraParser.TransitionBasedSystem.Configuration.Configuration;
@@ -35,32 +36,42 @@ public class BeamScorerThread implements Callable<ArrayList<BeamElement>> {
         boolean canReduce = ArcEager.canDo(Actions.Reduce, currentState);
         boolean canRightArc = ArcEager.canDo(Actions.RightArc, currentState);
         boolean canLeftArc = ArcEager.canDo(Actions.LeftArc, currentState);
+        long time = PhaseTimers.start();
         Object[] features = FeatureExtractor.extractAllParseFeatures(configuration, featureLength);
+        time = PhaseTimers.lap(PhaseTimers.FEATURES, time);
         if (canShift) {
             float score = classifier.shiftScore(features, isDecode);
+            time = PhaseTimers.lap(PhaseTimers.SCORE_SHIFT, time);
             float addedScore = score + prevScore;
             elements.add(new BeamElement(addedScore, b, 0, -1));
+            time = PhaseTimers.lap(PhaseTimers.CANDIDATES, time);
         }
         if (canReduce) {
             float score = classifier.reduceScore(features, isDecode);
+            time = PhaseTimers.lap(PhaseTimers.SCORE_REDUCE, time);
             float addedScore = score + prevScore;
             elements.add(new BeamElement(addedScore, b, 1, -1));
+            time = PhaseTimers.lap(PhaseTimers.CANDIDATES, time);
         }
         if (canRightArc) {
             float[] rightArcScores = classifier.rightArcScores(features, isDecode);
+            time = PhaseTimers.lap(PhaseTimers.SCORE_RIGHT_ARC, time);
             for (int dependency : dependencyRelations) {
                 float score = rightArcScores[dependency];
                 float addedScore = score + prevScore;
                 elements.add(new BeamElement(addedScore, b, 2, dependency));
             }
+            time = PhaseTimers.lap(PhaseTimers.CANDIDATES, time);
         }
         if (canLeftArc) {
             float[] leftArcScores = classifier.leftArcScores(features, isDecode);
+            time = PhaseTimers.lap(PhaseTimers.SCORE_LEFT_ARC, time);
             for (int dependency : dependencyRelations) {
                 float score = leftArcScores[dependency];
                 float addedScore = score + prevScore;
                 elements.add(new BeamElement(addedScore, b, 3, dependency));
             }
+            time = PhaseTimers.lap(PhaseTimers.CANDIDATES, time);
         }
         return elements;
     }
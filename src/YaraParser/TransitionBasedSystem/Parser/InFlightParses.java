@@ -0,0 +1,72 @@
+package YaraParser.TransitionBasedSystem.Parser;
+
+import YaraParser.Structures.Sentence;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The sentences that are being parsed, by the same key as the {@link ParseCache}, so that a sentence that comes again
+ * while it is still being parsed (e.g. the same headline from several feeds at once) waits for the parse that is
+ * already running instead of starting another beam search. Where {@link ParseCache} keeps finished parses, this
+ * only keeps the running ones.
+ * <p/>
+ * The first request of a sentence becomes its leader; {@link #join} gives the later ones that leader, and the
+ * leader calls {@link #done} when it is finished so that the next request starts a new parse. A request can still
+ * join a leader that has just finished but not yet called {@link #done}, so the leader must keep its result for the
+ * requests that come late.
+ *
+ * @param <V> whatever the caller attaches to: a future, a job with a list of waiting jobs, ...
+ */
+public class InFlightParses<V> {
+    private final ConcurrentHashMap<ParseCache.Key, V> leaders;
+    private final AtomicLong parses;
+    private final AtomicLong coalesced;
+
+    public InFlightParses() {
+        leaders = new ConcurrentHashMap<>();
+        parses = new AtomicLong();
+        coalesced = new AtomicLong();
+    }
+
+    /**
+     * @param leader becomes the leader of the sentence if it is not being parsed
+     * @return the leader that is already parsing the sentence, or null if the given leader should parse it
+     */
+    public V join(Sentence sentence, int beamWidth, String modelVersion, V leader) {
+        V running = leaders.putIfAbsent(new ParseCache.Key(sentence, beamWidth, modelVersion), leader);
+        if (running == null)
+            parses.incrementAndGet();
+        else
+            coalesced.incrementAndGet();
+        return running;
+    }
+
+    /**
+     * The leader is finished; requests of the sentence from now on start a new parse.
+     */
+    public void done(Sentence sentence, int beamWidth, String modelVersion, V leader) {
+        leaders.remove(new ParseCache.Key(sentence, beamWidth, modelVersion), leader);
+    }
+
+    public long parses() {
+        return parses.get();
+    }
+
+    public long coalesced() {
+        return coalesced.get();
+    }
+
+    /**
+     * @return fraction of the requests that waited for a running parse instead of starting one
+     */
+    public float coalescingRatio() {
+        long requests = parses.get() + coalesced.get();
+        return requests == 0 ? 0 : (float) coalesced.get() / requests;
+    }
+
+    public String stats() {
+        return "coalesced sentences: " + coalesced() + " of " + (parses() + coalesced()) + " (ratio "
+                + String.format("%.2f", 100 * coalescingRatio()) + "%), " + leaders.size() + " parses running";
+    }
+}
@@ -2,6 +2,9 @@ package YaraParser.TransitionBasedSystem.Parser;
 
 import YaraParser.Accessories.CoNLLReader;
 import YaraParser.Accessories.Pair;
+import YaraParser.Accessories.PhaseTimers;
+import YaraParser.Accessories.TaskExecutors;
+import YaraParser.Events.SentenceParseEvent;
 import YaraParser.Learning.AveragedPerceptron;
 import YaraParser.Learning.BinaryPerceptron;
 import YaraParser.Structures.IndexMaps;
@@ -21,11 +24,17 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
 
 public class KBeamArcEagerParser extends TransitionBasedParser {
     /**
@@ -38,6 +47,46 @@ public class KBeamArcEagerParser extends TransitionBasedParser {
     private IndexMaps maps;
     private ExecutorService executor;
     private CompletionService<ArrayList<BeamElement>> pool;
+    /**
+     * if true, file parsing runs each sentence on its own (virtual) thread and limits the concurrent beam searches
+     * to the number of cores instead of using a fixed pool of numOfThreads threads
+     */
+    private boolean virtualThreads;
+    /**
+     * results of earlier sentences of the same model; null if there is no cache
+     */
+    private ParseCache cache;
+    private String modelVersion;
+    /**
+     * if not null, overrides the beam width of each sentence
+     */
+    private BeamPolicy beamPolicy;
+    /**
+     * latency budget of each sentence; zero for none
+     */
+    private long budgetNanos;
+    /**
+     * beam statistics of the parallel file parser; null for none
+     */
+    private BeamDiagnostics diagnostics;
+    private int numOfThreads;
+    /**
+     * set by {@link #warmUp}
+     */
+    private volatile boolean ready;
+    /**
+     * work-stealing pool of {@link #parseAsync} and {@link #parseBatch}; created on first use
+     */
+    private ForkJoinPool asyncPool;
+    /**
+     * contexts for root-last and root-first sentences and the idle sessions of the async methods
+     */
+    private final ParserContext[] asyncContexts = new ParserContext[2];
+    private final ConcurrentLinkedQueue<ParserSession> asyncSessions = new ConcurrentLinkedQueue<>();
+    /**
+     * the sentences the async methods are parsing, so that the same sentence asked for again waits for them
+     */
+    private final InFlightParses<CompletableFuture<Configuration>> asyncParses = new InFlightParses<>();
 
     public KBeamArcEagerParser(AveragedPerceptron classifier, ArrayList<Integer> dependencyRelations,
                                int featureLength, IndexMaps maps, int numOfThreads) {
@@ -45,6 +94,7 @@ public class KBeamArcEagerParser extends TransitionBasedParser {
         this.dependencyRelations = dependencyRelations;
         this.featureLength = featureLength;
         this.maps = maps;
+        this.numOfThreads = numOfThreads;
         executor = Executors.newFixedThreadPool(numOfThreads);
         pool = new ExecutorCompletionService<>(executor);
     }
@@ -56,6 +106,7 @@ public class KBeamArcEagerParser extends TransitionBasedParser {
         this.dependencyRelations = dependencyRelations;
         this.featureLength = featureLength;
         this.maps = maps;
+        this.numOfThreads = numOfThreads;
         executor = Executors.newFixedThreadPool(numOfThreads);
         pool = new ExecutorCompletionService<>(executor);
     }
@@ -69,6 +120,64 @@ public class KBeamArcEagerParser extends TransitionBasedParser {
         return new KBeamArcEagerParser(averagedPerceptron, dependencyLabels, featureSize, maps, numOfThreads);
     }
 
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = TaskExecutors.useVirtualThreads(virtualThreads);
+    }
+
+    /**
+     * Puts the cache in front of {@link #parse} and the parallel file parser. Partial parses are never cached,
+     * because they depend on the given gold arcs.
+     *
+     * @param modelVersion identifies the weights of this parser, e.g. {@link ParseCache#modelVersion}
+     */
+    public void setCache(ParseCache cache, String modelVersion) {
+        this.cache = cache;
+        this.modelVersion = modelVersion;
+    }
+
+    public ParseCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Makes the parallel file parser write the oracle counts of the final beam of a sample of the sentences; needs
+     * a parser with a binary classifier. The caller closes the diagnostics when parsing is done.
+     */
+    public void setDiagnostics(BeamDiagnostics diagnostics) {
+        this.diagnostics = diagnostics;
+    }
+
+    /**
+     * @return how many sentences of {@link #parseAsync} and {@link #parseBatch} waited for a running parse
+     */
+    public InFlightParses<CompletableFuture<Configuration>> getInFlightParses() {
+        return asyncParses;
+    }
+
+    /**
+     * With a policy, the beam width given to the parse methods is replaced by the width the policy chooses for the
+     * length of each sentence.
+     */
+    public void setBeamPolicy(BeamPolicy beamPolicy) {
+        this.beamPolicy = beamPolicy;
+    }
+
+    /**
+     * Gives each sentence of {@link #parse}, the async methods and the file parsers a latency budget: the beam is
+     * narrowed when the rest of the parse is predicted to take longer, and the parse goes on greedily once the
+     * budget is used up (see {@link ParserSession}). Partial parses have no budget. Narrowed parses are not put in
+     * the cache.
+     *
+     * @param budgetMillis zero or less for no budget
+     */
+    public void setLatencyBudget(long budgetMillis) {
+        budgetNanos = Math.max(0, budgetMillis) * 1000000L;
+    }
+
+    private int beamWidth(Sentence sentence, boolean rootFirst, int beamWidth) {
+        return beamPolicy == null ? beamWidth : beamPolicy.beamWidth(sentence, rootFirst);
+    }
+
     private void parseWithOneThread(ArrayList<Configuration> beam, TreeSet<BeamElement> beamPreserver,
                                     Sentence sentence, boolean rootFirst, int beamWidth) {
         for (int b = 0; b < beam.size(); b++) {
@@ -79,7 +188,9 @@ public class KBeamArcEagerParser extends TransitionBasedParser {
             boolean canReduce = ArcEager.canDo(Actions.Reduce, currentState);
             boolean canRightArc = ArcEager.canDo(Actions.RightArc, currentState);
             boolean canLeftArc = ArcEager.canDo(Actions.LeftArc, currentState);
+            long time = PhaseTimers.start();
             Object[] features = FeatureExtractor.extractAllParseFeatures(configuration, featureLength);
+            time = PhaseTimers.lap(PhaseTimers.FEATURES, time);
             if (!canShift
                     && !canReduce
                     && !canRightArc
@@ -90,20 +201,25 @@ public class KBeamArcEagerParser extends TransitionBasedParser {
             }
             if (canShift) {
                 float score = classifier.shiftScore(features, true);
+                time = PhaseTimers.lap(PhaseTimers.SCORE_SHIFT, time);
                 float addedScore = score + prevScore;
                 beamPreserver.add(new BeamElement(addedScore, b, 0, -1));
                 if (beamPreserver.size() > beamWidth)
                     beamPreserver.pollFirst();
+                time = PhaseTimers.lap(PhaseTimers.CANDIDATES, time);
             }
             if (canReduce) {
                 float score = classifier.reduceScore(features, true);
+                time = PhaseTimers.lap(PhaseTimers.SCORE_REDUCE, time);
                 float addedScore = score + prevScore;
                 beamPreserver.add(new BeamElement(addedScore, b, 1, -1));
                 if (beamPreserver.size() > beamWidth)
                     beamPreserver.pollFirst();
+                time = PhaseTimers.lap(PhaseTimers.CANDIDATES, time);
             }
             if (canRightArc) {
                 float[] rightArcScores = classifier.rightArcScores(features, true);
+                time = PhaseTimers.lap(PhaseTimers.SCORE_RIGHT_ARC, time);
                 for (int dependency : dependencyRelations) {
                     float score = rightArcScores[dependency];
                     float addedScore = score + prevScore;
@@ -111,9 +227,11 @@ public class KBeamArcEagerParser extends TransitionBasedParser {
                     if (beamPreserver.size() > beamWidth)
                         beamPreserver.pollFirst();
                 }
+                time = PhaseTimers.lap(PhaseTimers.CANDIDATES, time);
             }
             if (canLeftArc) {
                 float[] leftArcScores = classifier.leftArcScores(features, true);
+                time = PhaseTimers.lap(PhaseTimers.SCORE_LEFT_ARC, time);
                 for (int dependency : dependencyRelations) {
                     float score = leftArcScores[dependency];
                     float addedScore = score + prevScore;
@@ -121,18 +239,64 @@ public class KBeamArcEagerParser extends TransitionBasedParser {
                     if (beamPreserver.size() > beamWidth)
                         beamPreserver.pollFirst();
                 }
+                time = PhaseTimers.lap(PhaseTimers.CANDIDATES, time);
             }
         }
     }
 
+    /**
+     * With more than one thread the beam is scored on the parser's own pool, so a parser must not be shared by
+     * concurrent callers; use a {@link ParserSession} for each thread instead.
+     */
     public Configuration parse(Sentence sentence, boolean rootFirst, int beamWidth, int numOfThreads) throws Exception {
+        return parse(sentence, rootFirst, beamWidth, numOfThreads, new ParseDegradation());
+    }
+
+    /**
+     * Same as {@link #parse(Sentence, boolean, int, int)}, and tells how much the latency budget narrowed the beam
+     * of the sentence. A sentence answered from the cache was not narrowed and has no steps.
+     *
+     * @param degradation filled with the beam narrowing of this sentence; each concurrent caller needs its own
+     */
+    public Configuration parse(Sentence sentence, boolean rootFirst, int beamWidth, int numOfThreads,
+                               ParseDegradation degradation) throws Exception {
+        return parse(sentence, rootFirst, beamWidth, numOfThreads, cache, degradation);
+    }
+
+    /**
+     * @param sentenceCache the cache to use; null for none, e.g. for the synthetic sentences of {@link #warmUp}
+     */
+    private Configuration parse(Sentence sentence, boolean rootFirst, int beamWidth, int numOfThreads,
+                                ParseCache sentenceCache, ParseDegradation degradation) throws Exception {
+        beamWidth = beamWidth(sentence, rootFirst, beamWidth);
+        degradation.reset(beamWidth);
+        if (sentenceCache != null) {
+            Configuration cached = sentenceCache.get(sentence, rootFirst, beamWidth, modelVersion);
+            if (cached != null)
+                return cached;
+        }
+        SentenceParseEvent event = new SentenceParseEvent();
+        event.begin();
+        long start = System.nanoTime();
         Configuration initialConfiguration = new Configuration(sentence, rootFirst);
         ArrayList<Configuration> beam = new ArrayList<>(beamWidth);
         beam.add(initialConfiguration);
+        // the beam width of the current transition, narrowed by the latency budget
+        int width = beamWidth;
+        long scoredItems = 0;
         while (ArcEager.isNotTerminal(beam)) {
+            if (budgetNanos > 0 && width > 1) {
+                width = ParseDegradation.beamWidthWithin(budgetNanos, System.nanoTime() - start, scoredItems,
+                        beam.get(0).state, width);
+                // the beam is sorted from the best to the worst
+                while (beam.size() > width)
+                    beam.remove(beam.size() - 1);
+            }
+            degradation.step(width);
+            scoredItems += beam.size();
             TreeSet<BeamElement> beamPreserver = new TreeSet<>();
             if (numOfThreads == 1) {
-                parseWithOneThread(beam, beamPreserver, sentence, rootFirst, beamWidth);
+                parseWithOneThread(beam, beamPreserver, sentence, rootFirst, width);
             } else {
                 for (int b = 0; b < beam.size(); b++) {
                     pool.submit(new BeamScorerThread(true, classifier, beam.get(b),
@@ -141,20 +305,22 @@ public class KBeamArcEagerParser extends TransitionBasedParser {
                 for (int b = 0; b < beam.size(); b++) {
                     for (BeamElement element : pool.take().get()) {
                         beamPreserver.add(element);
-                        if (beamPreserver.size() > beamWidth)
+                        if (beamPreserver.size() > width)
                             beamPreserver.pollFirst();
                     }
                 }
             }
-            ArrayList<Configuration> repBeam = new ArrayList<>(beamWidth);
+            ArrayList<Configuration> repBeam = new ArrayList<>(width);
             for (BeamElement beamElement : beamPreserver.descendingSet()) {
-                if (repBeam.size() >= beamWidth)
+                if (repBeam.size() >= width)
                     break;
                 int b = beamElement.number;
                 int action = beamElement.action;
                 int label = beamElement.label;
                 float score = beamElement.score;
+                long time = PhaseTimers.start();
                 Configuration newConfig = beam.get(b).clone();
+                PhaseTimers.lap(PhaseTimers.CLONE, time);
                 if (action == 0) {
                     ArcEager.shift(newConfig.state);
                     newConfig.addAction(0);
@@ -184,9 +350,153 @@ public class KBeamArcEagerParser extends TransitionBasedParser {
                 bestConfiguration = configuration;
             }
         }
+        degradation.elapsedNanos = System.nanoTime() - start;
+        ParseMetrics.record(sentence, rootFirst, degradation.finalBeamWidth, degradation.isDegraded(),
+                degradation.elapsedNanos);
+        if (event.shouldCommit()) {
+            event.length = sentence.size();
+            event.beamWidth = beamWidth;
+            event.finalBeamWidth = degradation.finalBeamWidth;
+            event.degraded = degradation.isDegraded();
+            event.partial = false;
+            event.commit();
+        }
+        if (sentenceCache != null && !degradation.isDegraded())
+            sentenceCache.put(sentence, beamWidth, modelVersion, bestConfiguration);
         return bestConfiguration;
     }
 
+    /**
+     * Parses synthetic sentences of the model vocabulary (see {@link WarmUp}) until the JIT has compiled the parse
+     * paths of this parser, or the time is up: {@link #parse} with one thread, with the beam scored on the pool of
+     * numOfThreads threads, and the {@link ParseThread} of the file parsers, each with the full beam and greedily.
+     * The sentences are not cached. Call it before the parser gets real sentences, e.g. before a service takes
+     * traffic; it does not warm up the sessions of {@link #parseAsync}, which {@link WarmUp#run} does.
+     *
+     * @param rootFirst as for {@link #parse}
+     * @param beamWidth the full beam width
+     * @return number of sentences parsed
+     */
+    public int warmUp(boolean rootFirst, int beamWidth, long maxMillis) throws Exception {
+        try {
+            return WarmUp.rounds(modelVersion == null ? "parser" : modelVersion, maps, rootFirst, false, maxMillis,
+                    (sentence, n) -> {
+                        int width = n % 4 == 3 ? 1 : beamWidth;
+                        if (n % 3 == 0)
+                            parse(sentence, rootFirst, width, 1, null, new ParseDegradation());
+                        else if (n % 3 == 1)
+                            parse(sentence, rootFirst, width, numOfThreads, null, new ParseDegradation());
+                        else
+                            new ParseThread(n, bClassifier, classifier, dependencyRelations, featureLength, sentence,
+                                    rootFirst, width, null, false, null, budgetNanos).call();
+                    });
+        } finally {
+            // a parser that cannot be warmed up still parses, only slower at first
+            ready = true;
+        }
+    }
+
+    /**
+     * @return true once {@link #warmUp} has run, so the first sentences are parsed at full speed
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Parses the sentence on the work-stealing pool of this parser, which has numOfThreads workers. Unlike
+     * {@link #parse}, this can be called by any number of threads at the same time; each worker parses with its own
+     * {@link ParserSession}. The cache and beam policy of the parser are used as in {@link #parse}.
+     * <p/>
+     * If the same words and tags are already being parsed with the same beam width, no new beam search is started:
+     * the future completes with a copy of the running parse.
+     *
+     * @return the best configuration, which belongs to the caller
+     */
+    public CompletableFuture<Configuration> parseAsync(Sentence sentence, boolean rootFirst, int beamWidth) {
+        int sentenceBeamWidth = beamWidth(sentence, rootFirst, beamWidth);
+        String version = modelVersion == null ? "async" : modelVersion;
+        CompletableFuture<Configuration> future = new CompletableFuture<>();
+        CompletableFuture<Configuration> running = asyncParses.join(sentence, sentenceBeamWidth, version, future);
+        if (running != null)
+            return running.thenApply(Configuration::clone);
+        asyncPool().execute(() -> {
+            try {
+                Configuration bestParse = parseInSession(sentence, rootFirst, sentenceBeamWidth);
+                asyncParses.done(sentence, sentenceBeamWidth, version, future);
+                future.complete(bestParse);
+            } catch (Throwable e) {
+                asyncParses.done(sentence, sentenceBeamWidth, version, future);
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Parses the sentences on the work-stealing pool, one task per sentence. The longest sentences are submitted
+     * first, so they do not end up as the last tasks of the batch with the other workers idle. A sentence is not
+     * split between workers: each transition depends on the beam of the one before, so the load is only balanced
+     * between sentences.
+     *
+     * @return the best configurations in the order of the sentences; the future fails if any sentence fails
+     */
+    public CompletableFuture<List<Configuration>> parseBatch(List<Sentence> sentences, boolean rootFirst,
+                                                             int beamWidth) {
+        ArrayList<Integer> order = new ArrayList<>(sentences.size());
+        for (int i = 0; i < sentences.size(); i++)
+            order.add(i);
+        order.sort(Comparator.comparingInt((Integer i) -> sentences.get(i).size()).reversed());
+        ArrayList<CompletableFuture<Configuration>> futures = new ArrayList<>(sentences.size());
+        for (int i = 0; i < sentences.size(); i++)
+            futures.add(null);
+        for (int i : order)
+            futures.set(i, parseAsync(sentences.get(i), rootFirst, beamWidth));
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            ArrayList<Configuration> results = new ArrayList<>(futures.size());
+            for (CompletableFuture<Configuration> future : futures)
+                results.add(future.join());
+            return results;
+        });
+    }
+
+    private synchronized ForkJoinPool asyncPool() {
+        if (asyncPool == null)
+            asyncPool = new ForkJoinPool(Math.max(1, numOfThreads));
+        return asyncPool;
+    }
+
+    private synchronized ParserContext asyncContext(boolean rootFirst, int beamWidth) {
+        int index = rootFirst ? 1 : 0;
+        // a session grows its beam when it is asked for a wider one
+        if (asyncContexts[index] == null)
+            asyncContexts[index] = new ParserContext(classifier, dependencyRelations, featureLength, maps, rootFirst,
+                    false, beamWidth, modelVersion == null ? "async" : modelVersion);
+        return asyncContexts[index];
+    }
+
+    private Configuration parseInSession(Sentence sentence, boolean rootFirst, int beamWidth) {
+        beamWidth = beamWidth(sentence, rootFirst, beamWidth);
+        if (cache != null) {
+            Configuration cached = cache.get(sentence, rootFirst, beamWidth, modelVersion);
+            if (cached != null)
+                return cached;
+        }
+        ParserContext context = asyncContext(rootFirst, beamWidth);
+        ParserSession session = asyncSessions.poll();
+        if (session == null || session.getContext().rootFirst != rootFirst)
+            session = context.newSession();
+        try {
+            // the configuration belongs to the session, which is reused
+            Configuration bestParse = session.parse(sentence, beamWidth, budgetNanos).clone();
+            if (cache != null && !session.getLastDegradation().isDegraded())
+                cache.put(sentence, beamWidth, modelVersion, bestParse);
+            return bestParse;
+        } finally {
+            asyncSessions.offer(session);
+        }
+    }
+
     private void parsePartialWithOneThread(ArrayList<Configuration> beam, TreeSet<BeamElement> beamPreserver,
                                            Boolean isNonProjective, GoldConfiguration goldConfiguration,
                                            int beamWidth, boolean rootFirst) {
@@ -198,7 +508,9 @@ public class KBeamArcEagerParser extends TransitionBasedParser {
             boolean canReduce = ArcEager.canDo(Actions.Reduce, currentState);
             boolean canRightArc = ArcEager.canDo(Actions.RightArc, currentState);
             boolean canLeftArc = ArcEager.canDo(Actions.LeftArc, currentState);
+            long time = PhaseTimers.start();
             Object[] features = FeatureExtractor.extractAllParseFeatures(configuration, featureLength);
+            time = PhaseTimers.lap(PhaseTimers.FEATURES, time);
             if (!canShift
                     && !canReduce
                     && !canRightArc
@@ -210,23 +522,28 @@ public class KBeamArcEagerParser extends TransitionBasedParser {
             if (canShift) {
                 if (isNonProjective || goldConfiguration.actionCost(Actions.Shift, -1, currentState) == 0) {
                     float score = classifier.shiftScore(features, true);
+                    time = PhaseTimers.lap(PhaseTimers.SCORE_SHIFT, time);
                     float addedScore = score + prevScore;
                     beamPreserver.add(new BeamElement(addedScore, b, 0, -1));
                     if (beamPreserver.size() > beamWidth)
                         beamPreserver.pollFirst();
+                    time = PhaseTimers.lap(PhaseTimers.CANDIDATES, time);
                 }
             }
             if (canReduce) {
                 if (isNonProjective || goldConfiguration.actionCost(Actions.Reduce, -1, currentState) == 0) {
                     float score = classifier.reduceScore(features, true);
+                    time = PhaseTimers.lap(PhaseTimers.SCORE_REDUCE, time);
                     float addedScore = score + prevScore;
                     beamPreserver.add(new BeamElement(addedScore, b, 1, -1));
                     if (beamPreserver.size() > beamWidth)
                         beamPreserver.pollFirst();
+                    time = PhaseTimers.lap(PhaseTimers.CANDIDATES, time);
                 }
             }
             if (canRightArc) {
                 float[] rightArcScores = classifier.rightArcScores(features, true);
+                time = PhaseTimers.lap(PhaseTimers.SCORE_RIGHT_ARC, time);
                 for (int dependency : dependencyRelations) {
                     if (isNonProjective || goldConfiguration.actionCost(Actions.RightArc, dependency, currentState) == 0) {
                         float score = rightArcScores[dependency];
@@ -236,9 +553,11 @@ public class KBeamArcEagerParser extends TransitionBasedParser {
                             beamPreserver.pollFirst();
                     }
                 }
+                time = PhaseTimers.lap(PhaseTimers.CANDIDATES, time);
             }
             if (canLeftArc) {
                 float[] leftArcScores = classifier.leftArcScores(features, true);
+                time = PhaseTimers.lap(PhaseTimers.SCORE_LEFT_ARC, time);
                 for (int dependency : dependencyRelations) {
                     if (isNonProjective || goldConfiguration.actionCost(Actions.LeftArc, dependency, currentState) == 0) {
                         float score = leftArcScores[dependency];
@@ -248,6 +567,7 @@ public class KBeamArcEagerParser extends TransitionBasedParser {
                             beamPreserver.pollFirst();
                     }
                 }
+                time = PhaseTimers.lap(PhaseTimers.CANDIDATES, time);
             }
         }
         if (beamPreserver.size() == 0) {
@@ -259,7 +579,9 @@ public class KBeamArcEagerParser extends TransitionBasedParser {
                 boolean canReduce = ArcEager.canDo(Actions.Reduce, currentState);
                 boolean canRightArc = ArcEager.canDo(Actions.RightArc, currentState);
                 boolean canLeftArc = ArcEager.canDo(Actions.LeftArc, currentState);
+                long time = PhaseTimers.start();
                 Object[] features = FeatureExtractor.extractAllParseFeatures(configuration, featureLength);
+                time = PhaseTimers.lap(PhaseTimers.FEATURES, time);
                 if (!canShift
                         && !canReduce
                         && !canRightArc
@@ -270,20 +592,25 @@ public class KBeamArcEagerParser extends TransitionBasedParser {
                 }
                 if (canShift) {
                     float score = classifier.shiftScore(features, true);
+                    time = PhaseTimers.lap(PhaseTimers.SCORE_SHIFT, time);
                     float addedScore = score + prevScore;
                     beamPreserver.add(new BeamElement(addedScore, b, 0, -1));
                     if (beamPreserver.size() > beamWidth)
                         beamPreserver.pollFirst();
+                    time = PhaseTimers.lap(PhaseTimers.CANDIDATES, time);
                 }
                 if (canReduce) {
                     float score = classifier.reduceScore(features, true);
+                    time = PhaseTimers.lap(PhaseTimers.SCORE_REDUCE, time);
                     float addedScore = score + prevScore;
                     beamPreserver.add(new BeamElement(addedScore, b, 1, -1));
                     if (beamPreserver.size() > beamWidth)
                         beamPreserver.pollFirst();
+                    time = PhaseTimers.lap(PhaseTimers.CANDIDATES, time);
                 }
                 if (canRightArc) {
                     float[] rightArcScores = classifier.rightArcScores(features, true);
+                    time = PhaseTimers.lap(PhaseTimers.SCORE_RIGHT_ARC, time);
                     for (int dependency : dependencyRelations) {
                         float score = rightArcScores[dependency];
                         float addedScore = score + prevScore;
@@ -291,9 +618,11 @@ public class KBeamArcEagerParser extends TransitionBasedParser {
                         if (beamPreserver.size() > beamWidth)
                             beamPreserver.pollFirst();
                     }
+                    time = PhaseTimers.lap(PhaseTimers.CANDIDATES, time);
                 }
                 if (canLeftArc) {
                     float[] leftArcScores = classifier.leftArcScores(features, true);
+                    time = PhaseTimers.lap(PhaseTimers.SCORE_LEFT_ARC, time);
                     for (int dependency : dependencyRelations) {
                         float score = leftArcScores[dependency];
                         float addedScore = score + prevScore;
@@ -301,6 +630,7 @@ public class KBeamArcEagerParser extends TransitionBasedParser {
                         if (beamPreserver.size() > beamWidth)
                             beamPreserver.pollFirst();
                     }
+                    time = PhaseTimers.lap(PhaseTimers.CANDIDATES, time);
                 }
             }
         }
@@ -308,6 +638,10 @@ public class KBeamArcEagerParser extends TransitionBasedParser {
 
     private Configuration parsePartial(GoldConfiguration goldConfiguration, Sentence sentence, boolean rootFirst,
                                        int beamWidth, int numOfThreads) throws Exception {
+        beamWidth = beamWidth(sentence, rootFirst, beamWidth);
+        SentenceParseEvent event = new SentenceParseEvent();
+        event.begin();
+        long start = System.nanoTime();
         Configuration initialConfiguration = new Configuration(sentence, rootFirst);
         boolean isNonProjective = false;
         if (goldConfiguration.isNonprojective()) {
@@ -341,7 +675,9 @@ public class KBeamArcEagerParser extends TransitionBasedParser {
                 int action = beamElement.action;
                 int label = beamElement.label;
                 float score = beamElement.score;
+                long time = PhaseTimers.start();
                 Configuration newConfig = beam.get(b).clone();
+                PhaseTimers.lap(PhaseTimers.CLONE, time);
                 if (action == 0) {
                     ArcEager.shift(newConfig.state);
                     newConfig.addAction(0);
@@ -371,6 +707,14 @@ public class KBeamArcEagerParser extends TransitionBasedParser {
                 bestConfiguration = configuration;
             }
         }
+        ParseMetrics.record(sentence, rootFirst, beamWidth, false, System.nanoTime() - start);
+        if (event.shouldCommit()) {
+            event.length = sentence.size();
+            event.beamWidth = beamWidth;
+            event.finalBeamWidth = beamWidth;
+            event.partial = true;
+            event.commit();
+        }
         return bestConfiguration;
     }
 
@@ -379,7 +723,7 @@ public class KBeamArcEagerParser extends TransitionBasedParser {
      */
     public void parseCoNLLFile(String inputFile, String outputFile, boolean rootFirst, int beamWidth, boolean labeled
             , boolean lowerCased, int numThreads, boolean partial, String scorePath) throws Exception {
-        if (numThreads == 1)
+        if (numThreads == 1 && !virtualThreads)
             parseCoNLLFileNoParallel(inputFile, outputFile, rootFirst, beamWidth, labeled, lowerCased, numThreads,
                     partial, scorePath);
         else
@@ -482,14 +826,16 @@ public class KBeamArcEagerParser extends TransitionBasedParser {
         BufferedReader reader = new BufferedReader(new FileReader(inputFile));
         BufferedWriter writer = new BufferedWriter(new FileWriter(outputFile));
         long start = System.currentTimeMillis();
-        ExecutorService executor = Executors.newFixedThreadPool(numOfThreads);
+        ExecutorService executor = virtualThreads ? TaskExecutors.newPerTaskExecutor(numOfThreads) :
+                Executors.newFixedThreadPool(numOfThreads);
+        Semaphore cpuGate = virtualThreads ? TaskExecutors.newCpuGate() : null;
         CompletionService<Pair<String, Integer>> pool = new ExecutorCompletionService<>(executor);
         String line;
         int count = 0;
         int lineNum = 0;
         while ((line = reader.readLine()) != null) {
-            pool.submit(new ParseTaggedThread(lineNum++, line, separator, rootFirst, lowerCased, maps, beamWidth,
-                    this));
+            pool.submit(TaskExecutors.gated(cpuGate, new ParseTaggedThread(lineNum++, line, separator, rootFirst,
+                    lowerCased, maps, beamWidth, this)));
             if (lineNum % 1000 == 0) {
                 String[] outs = new String[lineNum];
                 for (int i = 0; i < lineNum; i++) {
@@ -522,6 +868,7 @@ public class KBeamArcEagerParser extends TransitionBasedParser {
                 }
             }
         }
+        executor.shutdown();
         long end = System.currentTimeMillis();
         System.out.println("\n" + (end - start) + " ms");
         reader.close();
@@ -536,7 +883,9 @@ public class KBeamArcEagerParser extends TransitionBasedParser {
             addScore = true;
         }
         ArrayList<Float> scoreList = new ArrayList<>();
-        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        ExecutorService executor = virtualThreads ? TaskExecutors.newPerTaskExecutor(numThreads) :
+                Executors.newFixedThreadPool(numThreads);
+        Semaphore cpuGate = virtualThreads ? TaskExecutors.newCpuGate() : null;
         CompletionService<Pair<Configuration, Integer>> pool = new ExecutorCompletionService<>(executor);
         long start = System.currentTimeMillis();
         int allArcs = 0;
@@ -549,20 +898,40 @@ public class KBeamArcEagerParser extends TransitionBasedParser {
             size += data.size();
             int index = 0;
             Configuration[] confs = new Configuration[data.size()];
+            ParseThread[] threads = new ParseThread[data.size()];
+            boolean useCache = cache != null && !partial;
+            int submitted = 0;
             for (GoldConfiguration goldConfiguration : data) {
+                int sentenceBeamWidth = beamWidth(goldConfiguration.getSentence(), rootFirst, beamWidth);
+                if (useCache) {
+                    confs[index] = cache.get(goldConfiguration.getSentence(), rootFirst, sentenceBeamWidth,
+                            modelVersion);
+                    if (confs[index] != null) {
+                        index++;
+                        continue;
+                    }
+                }
                 ParseThread thread = new ParseThread(index, bClassifier, classifier, dependencyRelations, featureLength,
-                        goldConfiguration.getSentence(), rootFirst, beamWidth, goldConfiguration, partial);
-                pool.submit(thread);
+                        goldConfiguration.getSentence(), rootFirst, sentenceBeamWidth, goldConfiguration, partial,
+                        diagnostics, budgetNanos);
+                threads[index] = thread;
+                pool.submit(TaskExecutors.gated(cpuGate, thread));
+                submitted++;
                 index++;
             }
             System.out.println("sentences parsed:");
-            for (int i = 0; i < confs.length; i++) {
+            dataCount += confs.length - submitted;
+            for (int i = 0; i < submitted; i++) {
                 dataCount++;
                 if (dataCount % 100 == 0) {
                     System.out.print(dataCount + " ... ");
                 }
                 Pair<Configuration, Integer> configurationIntegerPair = pool.take().get();
                 confs[configurationIntegerPair.second] = configurationIntegerPair.first;
+                if (useCache && !threads[configurationIntegerPair.second].getDegradation().isDegraded())
+                    cache.put(data.get(configurationIntegerPair.second).getSentence(),
+                            beamWidth(data.get(configurationIntegerPair.second).getSentence(), rootFirst, beamWidth),
+                            modelVersion, configurationIntegerPair.first);
             }
             System.out.println();
             for (int j = 0; j < confs.length; j++) {
@@ -590,6 +959,7 @@ public class KBeamArcEagerParser extends TransitionBasedParser {
             }
             data = reader.readData(15000, true, true, rootFirst, lowerCased, maps);
         }
+        executor.shutdown();
         long end = System.currentTimeMillis();
         float eachSent = (1.0f * (end - start)) / size;
         float eachArc = (1.0f * (end - start)) / allArcs;
@@ -633,6 +1003,10 @@ public class KBeamArcEagerParser extends TransitionBasedParser {
     }
 
     public void shutDownLiveThreads() {
+        synchronized (this) {
+            if (asyncPool != null)
+                asyncPool.shutdownNow();
+        }
         boolean isTerminated = executor.isTerminated();
         while (!isTerminated) {
             executor.shutdownNow();
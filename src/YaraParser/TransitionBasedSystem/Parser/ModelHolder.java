@@ -0,0 +1,111 @@
+package YaraParser.TransitionBasedSystem.Parser;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the current model of a long-running parser and replaces it without stopping the parsing.
+ * <p/>
+ * A parse takes a {@link Lease} on the current model and closes it when it is done. {@link #swap} puts a new model
+ * in place atomically: new leases get the new model, the parses that already have a lease finish on the old one,
+ * and the old model is dropped as soon as its last lease is closed. So two models are only in memory while a new one
+ * is loaded and the parses on the old one drain.
+ */
+public class ModelHolder {
+    private final AtomicReference<Model> current;
+    /**
+     * models that are current or still have leases
+     */
+    private final AtomicInteger liveModels;
+
+    public ModelHolder(ParserContext context) {
+        liveModels = new AtomicInteger();
+        current = new AtomicReference<>(new Model(context));
+    }
+
+    /**
+     * @return a lease on the current model; it must be closed, preferably with try-with-resources
+     */
+    public Lease acquire() {
+        while (true) {
+            Model model = current.get();
+            // fails only if the model has been swapped out and drained in the meantime
+            if (model.retain())
+                return new Lease(model);
+        }
+    }
+
+    /**
+     * Makes the context the current model; the old model is released when its last lease is closed.
+     */
+    public void swap(ParserContext context) {
+        Model old = current.getAndSet(new Model(context));
+        old.release();
+    }
+
+    /**
+     * @return the current model, without a lease; only for reading its settings
+     */
+    public ParserContext current() {
+        return current.get().context;
+    }
+
+    public int liveModels() {
+        return liveModels.get();
+    }
+
+    public static class Lease implements AutoCloseable {
+        private final Model model;
+        private final ParserContext context;
+        private boolean closed;
+
+        private Lease(Model model) {
+            this.model = model;
+            context = model.context;
+        }
+
+        public ParserContext getContext() {
+            return context;
+        }
+
+        @Override
+        public void close() {
+            if (closed)
+                return;
+            closed = true;
+            model.release();
+        }
+    }
+
+    private class Model {
+        private ParserContext context;
+        /**
+         * one for being the current model plus one for each open lease
+         */
+        private final AtomicInteger references;
+
+        Model(ParserContext context) {
+            this.context = context;
+            references = new AtomicInteger(1);
+            liveModels.incrementAndGet();
+        }
+
+        boolean retain() {
+            while (true) {
+                int count = references.get();
+                if (count == 0)
+                    return false;
+                if (references.compareAndSet(count, count + 1))
+                    return true;
+            }
+        }
+
+        void release() {
+            if (references.decrementAndGet() == 0) {
+                System.out.println("model " + context.version + " is released");
+                context = null;
+                liveModels.decrementAndGet();
+            }
+        }
+    }
+}
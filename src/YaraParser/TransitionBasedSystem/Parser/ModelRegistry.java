@@ -0,0 +1,108 @@
+package YaraParser.TransitionBasedSystem.Parser;
+
+import YaraParser.Structures.IndexMaps;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+
+/**
+ * The models hosted by one process, by name. Each model has its own {@link ModelHolder}, so it can be reloaded on
+ * its own, and a quota: the number of its sentences that may be parsed at the same time, so that a busy model
+ * cannot take all the workers that the models share.
+ * <p/>
+ * When a model is loaded, its vocabulary, label and cluster tables are replaced by equal tables of the models that
+ * are already loaded, so models trained on the same data keep one copy of them.
+ */
+public class ModelRegistry {
+    private final LinkedHashMap<String, Entry> entries;
+
+    public ModelRegistry() {
+        entries = new LinkedHashMap<>();
+    }
+
+    public static class Entry {
+        public final String name;
+        public final ModelHolder models;
+        public final int quota;
+        /**
+         * the file of the current model
+         */
+        public volatile String modelPath;
+
+        Entry(String name, ModelHolder models, int quota, String modelPath) {
+            this.name = name;
+            this.models = models;
+            this.quota = quota;
+            this.modelPath = modelPath;
+        }
+    }
+
+    /**
+     * Loads a model and hosts it under the name.
+     *
+     * @param quota maximum number of sentences of this model parsed at the same time
+     */
+    public synchronized Entry register(String name, String modelPath, int quota) throws Exception {
+        if (entries.containsKey(name))
+            throw new Exception("model " + name + " is already registered");
+        if (quota < 1)
+            throw new Exception("the quota of model " + name + " should be at least 1");
+        Entry entry = new Entry(name, new ModelHolder(load(name, modelPath)), quota, modelPath);
+        entries.put(name, entry);
+        return entry;
+    }
+
+    /**
+     * Loads a new version of a hosted model and swaps it in; see {@link ModelHolder#swap}.
+     *
+     * @param warmUpMillis if positive, the new model is warmed up with {@link WarmUp} for at most this time before it
+     *                     is swapped in
+     */
+    public void reload(String name, String modelPath, long warmUpMillis) throws Exception {
+        Entry entry = get(name);
+        if (entry == null)
+            throw new Exception("unknown model " + name);
+        ParserContext context;
+        synchronized (this) {
+            context = load(name, modelPath);
+        }
+        if (warmUpMillis > 0)
+            WarmUp.run(context, warmUpMillis);
+        entry.models.swap(context);
+        entry.modelPath = modelPath;
+        System.out.println("model " + name + ": " + context.version + " is now in use");
+    }
+
+    private ParserContext load(String name, String modelPath) throws Exception {
+        ParserContext context = ParserContext.load(modelPath);
+        IndexMaps maps = context.maps;
+        int shared = 0;
+        for (Entry entry : entries.values()) {
+            IndexMaps other = entry.models.current().maps;
+            maps = maps.shareTables(other);
+            shared = Math.max(shared, maps.sharedTables(other));
+        }
+        if (shared > 0) {
+            System.out.println("model " + name + " shares " + shared + " of its 5 vocabulary tables with the " +
+                    "loaded models");
+            context = context.withMaps(maps);
+        }
+        return context;
+    }
+
+    public synchronized Entry get(String name) {
+        return entries.get(name);
+    }
+
+    /**
+     * @return the model registered first, or null if there is none
+     */
+    public synchronized Entry first() {
+        return entries.isEmpty() ? null : entries.values().iterator().next();
+    }
+
+    public synchronized Collection<Entry> entries() {
+        return new ArrayList<>(entries.values());
+    }
+}
@@ -0,0 +1,247 @@
+package YaraParser.TransitionBasedSystem.Parser;
+
+import YaraParser.Accessories.Metrics;
+import YaraParser.Structures.Sentence;
+import YaraParser.TransitionBasedSystem.Configuration.Configuration;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache of parse results for sentences that are parsed again with the same words, tags, Brown clusters,
+ * beam width and model. It only keeps the predicted heads, labels and score; a hit gives a new configuration with these arcs, but
+ * with the initial stack and buffer and an empty action history.
+ * <p/>
+ * The cache is split into segments by the hash of the sentence, each of them a least-recently-used map with its own
+ * lock, so that concurrent parsers rarely wait for each other.
+ */
+public class ParseCache {
+    private static final int SEGMENTS = 16;
+    /**
+     * the hits, misses and evictions of all caches, for {@link Metrics}
+     */
+    private static final Metrics.Counter totalHits = Metrics.counter("yara_parse_cache_hits_total",
+            "Sentences answered from a parse cache");
+    private static final Metrics.Counter totalMisses = Metrics.counter("yara_parse_cache_misses_total",
+            "Sentences looked up in a parse cache and not found");
+    private static final Metrics.Counter totalEvictions = Metrics.counter("yara_parse_cache_evictions_total",
+            "Sentences dropped from a full parse cache");
+
+    private final Segment[] segments;
+    private final int capacity;
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+    private final AtomicLong evictions;
+
+    /**
+     * @param capacity maximum number of sentences in the cache
+     */
+    public ParseCache(int capacity) {
+        this.capacity = capacity;
+        int segmentCount = Math.max(1, Math.min(SEGMENTS, capacity / 64));
+        segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++)
+            segments[i] = new Segment((capacity + segmentCount - 1) / segmentCount);
+        hits = new AtomicLong();
+        misses = new AtomicLong();
+        evictions = new AtomicLong();
+    }
+
+    /**
+     * @return a version string that changes whenever the model file is written again
+     */
+    public static String modelVersion(String modelPath) {
+        File file = new File(modelPath);
+        return file.getAbsolutePath() + "@" + file.lastModified();
+    }
+
+    /**
+     * @return a new configuration with the cached arcs and score, or null if the sentence is not in the cache
+     */
+    public Configuration get(Sentence sentence, boolean rootFirst, int beamWidth, String modelVersion) {
+        Key key = new Key(sentence, beamWidth, modelVersion);
+        Result result = segment(key).get(key);
+        if (result == null) {
+            misses.incrementAndGet();
+            totalMisses.increment();
+            return null;
+        }
+        hits.incrementAndGet();
+        totalHits.increment();
+        Configuration configuration = new Configuration(sentence, rootFirst);
+        for (int i = 0; i < result.heads.length; i++)
+            if (result.heads[i] >= 0)
+                configuration.state.addArc(i, result.heads[i], result.labels[i]);
+        configuration.setScore(result.score);
+        return configuration;
+    }
+
+    public void put(Sentence sentence, int beamWidth, String modelVersion, Configuration bestParse) {
+        Key key = new Key(sentence, beamWidth, modelVersion);
+        int size = sentence.size() + 1;
+        int[] heads = new int[size];
+        int[] labels = new int[size];
+        for (int i = 0; i < size; i++) {
+            heads[i] = bestParse.state.getHead(i);
+            labels[i] = bestParse.state.getDependency(i);
+        }
+        segment(key).put(key, new Result(heads, labels, bestParse.getScore()));
+    }
+
+    private Segment segment(Key key) {
+        return segments[(key.hash & 0x7fffffff) % segments.length];
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    public long evictions() {
+        return evictions.get();
+    }
+
+    public float hitRate() {
+        long lookups = hits.get() + misses.get();
+        return lookups == 0 ? 0 : (float) hits.get() / lookups;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments)
+            size += segment.size();
+        return size;
+    }
+
+    /**
+     * @return approximate number of bytes held by the cached keys and results
+     */
+    public long memoryBytes() {
+        long bytes = 0;
+        for (Segment segment : segments)
+            bytes += segment.bytes();
+        return bytes;
+    }
+
+    public String stats() {
+        return "parse cache: " + hits() + " hits, " + misses() + " misses (hit rate "
+                + String.format("%.2f", 100 * hitRate()) + "%), " + size() + "/" + capacity + " entries, "
+                + evictions() + " evictions, " + memoryBytes() / 1024 + " KB";
+    }
+
+    /**
+     * The words, tags and Brown clusters of a sentence. The clusters are not derived from the word ids: every unknown
+     * word has the same id but gets the clusters of its own text, so two sentences that only differ in unknown words
+     * can have different features.
+     */
+    static class Key {
+        final int[] words;
+        final int[] tags;
+        final int[] cluster4;
+        final int[] cluster6;
+        final int[] clusters;
+        final int beamWidth;
+        final String modelVersion;
+        final int hash;
+
+        Key(Sentence sentence, int beamWidth, String modelVersion) {
+            words = sentence.getWords();
+            tags = sentence.getTags();
+            cluster4 = sentence.getBrownCluster4thPrefix();
+            cluster6 = sentence.getBrownCluster6thPrefix();
+            clusters = sentence.getBrownClusterFullString();
+            this.beamWidth = beamWidth;
+            this.modelVersion = modelVersion;
+            // Sentence.hashCode does not depend on the word order, so the key has its own hash
+            int hash = Arrays.hashCode(words);
+            hash = 31 * hash + Arrays.hashCode(tags);
+            hash = 31 * hash + Arrays.hashCode(cluster4);
+            hash = 31 * hash + Arrays.hashCode(cluster6);
+            hash = 31 * hash + Arrays.hashCode(clusters);
+            this.hash = 31 * hash + beamWidth;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key))
+                return false;
+            Key key = (Key) obj;
+            return hash == key.hash && beamWidth == key.beamWidth && modelVersion.equals(key.modelVersion)
+                    && Arrays.equals(words, key.words) && Arrays.equals(tags, key.tags)
+                    && Arrays.equals(cluster4, key.cluster4) && Arrays.equals(cluster6, key.cluster6)
+                    && Arrays.equals(clusters, key.clusters);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static class Result {
+        /**
+         * head and label id of each position of the state; -1 for no head
+         */
+        final int[] heads;
+        final int[] labels;
+        final float score;
+
+        Result(int[] heads, int[] labels, float score) {
+            this.heads = heads;
+            this.labels = labels;
+            this.score = score;
+        }
+    }
+
+    private static long sizeOf(Key key, Result result) {
+        // object headers and fields of the key, the result and the map node, plus the seven int arrays
+        return 160 + 4L * (key.words.length + key.tags.length + key.cluster4.length + key.cluster6.length
+                + key.clusters.length + result.heads.length + result.labels.length);
+    }
+
+    private class Segment {
+        private final int capacity;
+        private final LinkedHashMap<Key, Result> map;
+        private long bytes;
+
+        Segment(int capacity) {
+            this.capacity = capacity;
+            map = new LinkedHashMap<Key, Result>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key, Result> eldest) {
+                    if (size() <= Segment.this.capacity)
+                        return false;
+                    bytes -= sizeOf(eldest.getKey(), eldest.getValue());
+                    evictions.incrementAndGet();
+                    totalEvictions.increment();
+                    return true;
+                }
+            };
+        }
+
+        synchronized Result get(Key key) {
+            return map.get(key);
+        }
+
+        synchronized void put(Key key, Result result) {
+            Result old = map.put(key, result);
+            if (old != null)
+                bytes -= sizeOf(key, old);
+            bytes += sizeOf(key, result);
+        }
+
+        synchronized int size() {
+            return map.size();
+        }
+
+        synchronized long bytes() {
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package YaraParser.TransitionBasedSystem.Parser;
+
+import YaraParser.TransitionBasedSystem.Configuration.State;
+
+/**
+ * How much a parse with a latency budget had to narrow its beam to finish in time.
+ */
+public class ParseDegradation {
+    /**
+     * the beam width that was asked for
+     */
+    public int beamWidth;
+    /**
+     * the beam width of the last transition; 1 means the parse ended greedily
+     */
+    public int finalBeamWidth;
+    /**
+     * the first transition with a narrower beam, or -1 if the beam was never narrowed
+     */
+    public int firstNarrowedStep;
+    public int greedySteps;
+    public int steps;
+    public long elapsedNanos;
+
+    /**
+     * The beam width for the next transition of a parse with a latency budget: the given width, halved until the
+     * rest of the parse is predicted to fit in the budget, and 1 once the budget is used up, whatever the
+     * prediction.
+     *
+     * @param scoredItems the beam items scored so far; the prediction is the time spent on each of them, times the
+     *                    transitions left in the state
+     */
+    static int beamWidthWithin(long budgetNanos, long elapsedNanos, long scoredItems, State state, int beamWidth) {
+        if (elapsedNanos >= budgetNanos)
+            return 1;
+        if (scoredItems == 0)
+            return beamWidth;
+        long remainingSteps = 2L * state.bufferSize() + state.stackSize();
+        double itemNanos = (double) elapsedNanos / scoredItems;
+        while (beamWidth > 1 && elapsedNanos + remainingSteps * beamWidth * itemNanos > budgetNanos)
+            beamWidth = Math.max(1, beamWidth / 2);
+        return beamWidth;
+    }
+
+    /**
+     * Counts the next transition of the parse, which is scored with the given beam width
+     */
+    void step(int width) {
+        if (width < finalBeamWidth) {
+            if (firstNarrowedStep < 0)
+                firstNarrowedStep = steps;
+            finalBeamWidth = width;
+        }
+        if (width == 1)
+            greedySteps++;
+        steps++;
+    }
+
+    void reset(int beamWidth) {
+        this.beamWidth = beamWidth;
+        finalBeamWidth = beamWidth;
+        firstNarrowedStep = -1;
+        greedySteps = 0;
+        steps = 0;
+        elapsedNanos = 0;
+    }
+
+    public boolean isDegraded() {
+        return firstNarrowedStep >= 0;
+    }
+
+    public ParseDegradation copy() {
+        ParseDegradation degradation = new ParseDegradation();
+        degradation.beamWidth = beamWidth;
+        degradation.finalBeamWidth = finalBeamWidth;
+        degradation.firstNarrowedStep = firstNarrowedStep;
+        degradation.greedySteps = greedySteps;
+        degradation.steps = steps;
+        degradation.elapsedNanos = elapsedNanos;
+        return degradation;
+    }
+
+    @Override
+    public String toString() {
+        if (!isDegraded())
+            return "beam " + beamWidth + ", " + steps + " steps";
+        return "beam " + beamWidth + " narrowed to " + finalBeamWidth + " from step " + firstNarrowedStep + " of "
+                + steps + " (" + greedySteps + " greedy steps)";
+    }
+}
@@ -0,0 +1,57 @@
+package YaraParser.TransitionBasedSystem.Parser;
+
+import YaraParser.Accessories.Metrics;
+import YaraParser.Structures.Sentence;
+
+/**
+ * The {@link Metrics} of parsed sentences, recorded by every beam search of the parser: the number of sentences and
+ * words, the parse time by sentence length, the beam width each sentence ended with and the sentences whose beam the
+ * latency budget narrowed. Sentences answered from a {@link ParseCache} are not parsed and only show up in its hit
+ * counter.
+ */
+class ParseMetrics {
+    /**
+     * upper bounds of the length buckets of the parse time, in words
+     */
+    private static final int[] LENGTHS = {10, 20, 40, 80};
+    private static final double[] SECONDS = {0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1,
+            2.5, 5};
+    private static final double[] BEAM_WIDTHS = {1, 2, 4, 8, 16, 32, 64, 128, 256};
+
+    private static final Metrics.Counter sentences = Metrics.counter("yara_parsed_sentences_total",
+            "Sentences parsed with a beam search");
+    private static final Metrics.Counter words = Metrics.counter("yara_parsed_words_total",
+            "Words of the parsed sentences, without the root");
+    private static final Metrics.Counter degraded = Metrics.counter("yara_parse_degraded_sentences_total",
+            "Sentences whose beam was narrowed by the latency budget");
+    private static final Metrics.Histogram beamWidths = Metrics.histogram("yara_parse_beam_width",
+            "Beam width of the last transition of a sentence, after the latency budget", BEAM_WIDTHS);
+    private static final Metrics.Histogram[] seconds = new Metrics.Histogram[LENGTHS.length + 1];
+
+    static {
+        for (int l = 0; l <= LENGTHS.length; l++) {
+            String length = l == LENGTHS.length ? (LENGTHS[l - 1] + 1) + "+" :
+                    (l == 0 ? 1 : LENGTHS[l - 1] + 1) + "-" + LENGTHS[l];
+            seconds[l] = Metrics.histogram("yara_parse_seconds", "Time of the beam search of a sentence, by its " +
+                    "number of words", SECONDS, "length", length);
+        }
+    }
+
+    /**
+     * @param sentence       the parsed sentence; with rootFirst it has no root token
+     * @param finalBeamWidth the beam width of the last transition, see {@link ParseDegradation#finalBeamWidth}
+     * @param narrowed       the latency budget narrowed the beam
+     */
+    static void record(Sentence sentence, boolean rootFirst, int finalBeamWidth, boolean narrowed, long nanos) {
+        int length = rootFirst ? sentence.size() : sentence.size() - 1;
+        int bucket = 0;
+        while (bucket < LENGTHS.length && length > LENGTHS[bucket])
+            bucket++;
+        sentences.increment();
+        words.add(length);
+        if (narrowed)
+            degraded.increment();
+        beamWidths.observe(finalBeamWidth);
+        seconds[bucket].observe(nanos / 1e9);
+    }
+}
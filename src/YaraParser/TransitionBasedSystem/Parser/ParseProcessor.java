@@ -0,0 +1,284 @@
+package YaraParser.TransitionBasedSystem.Parser;
+
+import YaraParser.Structures.Sentence;
+import YaraParser.TransitionBasedSystem.Configuration.Configuration;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A streaming parse stage: sentences come in from an upstream {@link Flow.Publisher}, are parsed with
+ * {@link KBeamArcEagerParser#parseAsync} and go out to one downstream {@link Flow.Subscriber}.
+ * <p/>
+ * The stage never holds more than maxInFlight sentences: sentences requested from upstream, being parsed, or parsed
+ * and waiting for downstream demand all count, and more sentences are only requested upstream when some of them
+ * have been delivered. So a slow consumer slows down the producer instead of filling the memory. In ordered mode
+ * the results go out in the order of the sentences; otherwise each result goes out as soon as it is parsed, so a
+ * long sentence does not hold back the short ones behind it.
+ * <p/>
+ * Cancelling the downstream subscription cancels the upstream one and drops the sentences that are being parsed. An
+ * upstream error, or a sentence that cannot be parsed, cancels upstream and is passed on with onError at once;
+ * results that were not delivered yet are dropped. An upstream completion is passed on after the last result.
+ */
+public class ParseProcessor implements Flow.Processor<ParseProcessor.SentenceInput, ParseProcessor.ParseResult> {
+    public static class SentenceInput {
+        /**
+         * chosen by the producer to match the result to the sentence
+         */
+        public final long id;
+        public final Sentence sentence;
+
+        public SentenceInput(long id, Sentence sentence) {
+            this.id = id;
+            this.sentence = sentence;
+        }
+    }
+
+    public static class ParseResult {
+        public final long id;
+        public final Sentence sentence;
+        public final Configuration bestParse;
+
+        ParseResult(long id, Sentence sentence, Configuration bestParse) {
+            this.id = id;
+            this.sentence = sentence;
+            this.bestParse = bestParse;
+        }
+    }
+
+    private final KBeamArcEagerParser parser;
+    private final boolean rootFirst;
+    private final int beamWidth;
+    private final int maxInFlight;
+    private final boolean ordered;
+
+    private final Object lock;
+    /**
+     * number of threads that want to run {@link #drain}; only the first one runs it, the others make it loop again
+     */
+    private final AtomicInteger drainRequests;
+    private Flow.Subscription upstream;
+    private Flow.Subscriber<? super ParseResult> downstream;
+    /**
+     * parsed sentences by their sequence number, in the order they were parsed
+     */
+    private final LinkedHashMap<Long, ParseResult> parsed;
+    private long nextSequence;
+    private long nextToDeliver;
+    /**
+     * sentences requested from upstream that have not come yet
+     */
+    private long requested;
+    /**
+     * sentences that came from upstream and were not delivered yet
+     */
+    private long pending;
+    private long demand;
+    private boolean upstreamDone;
+    private Throwable error;
+    private boolean cancelled;
+    private boolean terminated;
+
+    /**
+     * @param maxInFlight maximum number of sentences in the stage, e.g. a few times the number of threads of the
+     *                    parser
+     * @param ordered     if true, results are delivered in the order of the sentences
+     */
+    public ParseProcessor(KBeamArcEagerParser parser, boolean rootFirst, int beamWidth, int maxInFlight,
+                          boolean ordered) {
+        this.parser = parser;
+        this.rootFirst = rootFirst;
+        this.beamWidth = beamWidth;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.ordered = ordered;
+        lock = new Object();
+        drainRequests = new AtomicInteger();
+        parsed = new LinkedHashMap<>();
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super ParseResult> subscriber) {
+        boolean taken;
+        synchronized (lock) {
+            taken = downstream != null;
+            if (!taken)
+                downstream = subscriber;
+        }
+        if (taken) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("a parse processor has only one subscriber"));
+            return;
+        }
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                synchronized (lock) {
+                    if (n <= 0)
+                        error = new IllegalArgumentException("the demand should be positive: " + n);
+                    else
+                        demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                }
+                drain();
+            }
+
+            @Override
+            public void cancel() {
+                synchronized (lock) {
+                    cancelled = true;
+                    parsed.clear();
+                }
+                drain();
+            }
+        });
+        drain();
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        synchronized (lock) {
+            if (upstream != null || cancelled) {
+                subscription.cancel();
+                return;
+            }
+            upstream = subscription;
+        }
+        drain();
+    }
+
+    @Override
+    public void onNext(SentenceInput input) {
+        long sequence;
+        synchronized (lock) {
+            if (cancelled || error != null)
+                return;
+            sequence = nextSequence++;
+            requested--;
+            pending++;
+        }
+        parser.parseAsync(input.sentence, rootFirst, beamWidth).whenComplete((bestParse, failure) -> {
+            synchronized (lock) {
+                if (failure != null) {
+                    if (error == null)
+                        error = failure;
+                } else if (!cancelled && !terminated) {
+                    parsed.put(sequence, new ParseResult(input.id, input.sentence, bestParse));
+                }
+            }
+            drain();
+        });
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        synchronized (lock) {
+            upstreamDone = true;
+            if (error == null)
+                error = throwable;
+        }
+        drain();
+    }
+
+    @Override
+    public void onComplete() {
+        synchronized (lock) {
+            upstreamDone = true;
+        }
+        drain();
+    }
+
+    /**
+     * Delivers the results that downstream asked for, requests more sentences from upstream when there is room and
+     * passes on the end of the stream. Signals to downstream never overlap, because only one thread drains at a time.
+     */
+    private void drain() {
+        if (drainRequests.getAndIncrement() != 0)
+            return;
+        int missed = 1;
+        while (true) {
+            Flow.Subscriber<? super ParseResult> subscriber;
+            synchronized (lock) {
+                subscriber = downstream;
+            }
+            if (subscriber != null) {
+                ParseResult result;
+                while ((result = nextResult()) != null)
+                    subscriber.onNext(result);
+            }
+
+            Flow.Subscription cancelUpstream = null;
+            Flow.Subscription requestUpstream = null;
+            long request = 0;
+            Throwable failure = null;
+            boolean complete = false;
+            synchronized (lock) {
+                if (terminated) {
+                    // nothing more to signal
+                } else if (subscriber != null && (cancelled || error != null)) {
+                    terminated = true;
+                    parsed.clear();
+                    if (!upstreamDone)
+                        cancelUpstream = upstream;
+                    failure = cancelled ? null : error;
+                } else if (subscriber != null && upstreamDone && pending == 0) {
+                    terminated = true;
+                    complete = true;
+                } else if (error == null && !upstreamDone && upstream != null) {
+                    request = maxInFlight - requested - pending;
+                    if (request > 0) {
+                        requested += request;
+                        requestUpstream = upstream;
+                    }
+                }
+            }
+            if (cancelUpstream != null)
+                cancelUpstream.cancel();
+            if (requestUpstream != null)
+                requestUpstream.request(request);
+            // without a subscriber, the end of the stream is passed on when it subscribes
+            if (failure != null)
+                subscriber.onError(failure);
+            if (complete)
+                subscriber.onComplete();
+
+            missed = drainRequests.addAndGet(-missed);
+            if (missed == 0)
+                break;
+        }
+    }
+
+    /**
+     * @return the next result to deliver if downstream asked for one, or null
+     */
+    private ParseResult nextResult() {
+        synchronized (lock) {
+            if (demand == 0 || cancelled || error != null || terminated)
+                return null;
+            ParseResult result;
+            if (ordered) {
+                result = parsed.remove(nextToDeliver);
+                if (result != null)
+                    nextToDeliver++;
+            } else {
+                Iterator<ParseResult> iterator = parsed.values().iterator();
+                result = iterator.hasNext() ? iterator.next() : null;
+                if (result != null)
+                    iterator.remove();
+            }
+            if (result != null) {
+                demand--;
+                pending--;
+            }
+            return result;
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package YaraParser.TransitionBasedSystem.Parser;
 
 import YaraParser.Accessories.Pair;
+import YaraParser.Accessories.PhaseTimers;
+import YaraParser.Events.SentenceParseEvent;
 import YaraParser.Learning.AveragedPerceptron;
 import YaraParser.Learning.BinaryPerceptron;
 import YaraParser.Structures.Sentence;
@@ -10,8 +12,6 @@ import YaraParser.TransitionBasedSystem.Configuration.GoldConfiguration;
 import YaraParser.TransitionBasedSystem.Configuration.State;
 import YaraParser.TransitionBasedSystem.Features.FeatureExtractor;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.util.ArrayList;
 import java.util.TreeSet;
 import java.util.concurrent.Callable;
@@ -27,6 +27,15 @@ public class ParseThread implements Callable<Pair<Configuration, Integer>> {
     private GoldConfiguration goldConfiguration;
     private boolean partial;
     private int id;
+    private BeamDiagnostics diagnostics;
+    /**
+     * latency budget of the sentence; zero for none. Partial parses have no budget.
+     */
+    private long budgetNanos;
+    /**
+     * how much the budget narrowed the beam; read it after the future of the thread is done
+     */
+    private final ParseDegradation degradation = new ParseDegradation();
 
     ParseThread(int id, AveragedPerceptron classifier, ArrayList<Integer> dependencyRelations, int featureLength,
                 Sentence sentence, boolean rootFirst, int beamWidth, GoldConfiguration goldConfiguration,
@@ -44,7 +53,8 @@ public class ParseThread implements Callable<Pair<Configuration, Integer>> {
 
     ParseThread(int id, BinaryPerceptron bClassifier, AveragedPerceptron classifier,
                 ArrayList<Integer> dependencyRelations, int featureLength, Sentence sentence, boolean rootFirst,
-                int beamWidth, GoldConfiguration goldConfiguration, boolean partial) {
+                int beamWidth, GoldConfiguration goldConfiguration, boolean partial, BeamDiagnostics diagnostics,
+                long budgetNanos) {
         this.id = id;
         this.classifier = classifier;
         this.bClassifier = bClassifier;
@@ -55,23 +65,59 @@ public class ParseThread implements Callable<Pair<Configuration, Integer>> {
         this.beamWidth = beamWidth;
         this.goldConfiguration = goldConfiguration;
         this.partial = partial;
+        this.diagnostics = diagnostics;
+        this.budgetNanos = budgetNanos;
+    }
+
+    ParseDegradation getDegradation() {
+        return degradation;
     }
 
     @Override
     public Pair<Configuration, Integer> call() throws Exception {
+        SentenceParseEvent event = new SentenceParseEvent();
+        event.begin();
+        long start = System.nanoTime();
+        degradation.reset(beamWidth);
+        Pair<Configuration, Integer> result;
         if (!partial) {
-            return parse();
+            result = parse();
         } else {
-            return new Pair<>(parsePartial(), id);
+            result = new Pair<>(parsePartial(), id);
+        }
+        degradation.elapsedNanos = System.nanoTime() - start;
+        ParseMetrics.record(sentence, rootFirst, degradation.finalBeamWidth, degradation.isDegraded(),
+                degradation.elapsedNanos);
+        if (event.shouldCommit()) {
+            event.length = sentence.size();
+            event.beamWidth = beamWidth;
+            event.finalBeamWidth = degradation.finalBeamWidth;
+            event.degraded = degradation.isDegraded();
+            event.partial = partial;
+            event.commit();
         }
+        return result;
     }
 
     private Pair<Configuration, Integer> parse() throws Exception {
         Configuration initialConfiguration = new Configuration(sentence, rootFirst);
         ArrayList<Configuration> beam = new ArrayList<>(beamWidth);
         beam.add(initialConfiguration);
+        // the beam width of the current transition, narrowed by the latency budget
+        int width = beamWidth;
+        long start = System.nanoTime();
+        long scoredItems = 0;
         while (ArcEager.isNotTerminal(beam)) {
-            if (beamWidth != 1) {
+            if (budgetNanos > 0 && width > 1) {
+                width = ParseDegradation.beamWidthWithin(budgetNanos, System.nanoTime() - start, scoredItems,
+                        beam.get(0).state, width);
+                // the beam is sorted from the best to the worst
+                while (beam.size() > width)
+                    beam.remove(beam.size() - 1);
+            }
+            degradation.step(width);
+            scoredItems += beam.size();
+            if (width != 1) {
                 TreeSet<BeamElement> beamPreserver = new TreeSet<>();
                 for (int b = 0; b < beam.size(); b++) {
                     Configuration configuration = beam.get(b);
@@ -81,62 +127,74 @@ public class ParseThread implements Callable<Pair<Configuration, Integer>> {
                     boolean canReduce = ArcEager.canDo(Actions.Reduce, currentState);
                     boolean canRightArc = ArcEager.canDo(Actions.RightArc, currentState);
                     boolean canLeftArc = ArcEager.canDo(Actions.LeftArc, currentState);
+                    long time = PhaseTimers.start();
                     Object[] features = FeatureExtractor.extractAllParseFeatures(configuration, featureLength);
+                    time = PhaseTimers.lap(PhaseTimers.FEATURES, time);
                     if (!canShift && !canReduce && !canRightArc && !canLeftArc) {
                         beamPreserver.add(new BeamElement(prevScore, b, 4, -1));
-                        if (beamPreserver.size() > beamWidth) {
+                        if (beamPreserver.size() > width) {
                             beamPreserver.pollFirst();
                         }
                     }
                     if (canShift) {
                         float score = classifier.shiftScore(features, true);
+                        time = PhaseTimers.lap(PhaseTimers.SCORE_SHIFT, time);
                         float addedScore = score + prevScore;
                         beamPreserver.add(new BeamElement(addedScore, b, 0, -1));
-                        if (beamPreserver.size() > beamWidth) {
+                        if (beamPreserver.size() > width) {
                             beamPreserver.pollFirst();
                         }
+                        time = PhaseTimers.lap(PhaseTimers.CANDIDATES, time);
                     }
                     if (canReduce) {
                         float score = classifier.reduceScore(features, true);
+                        time = PhaseTimers.lap(PhaseTimers.SCORE_REDUCE, time);
                         float addedScore = score + prevScore;
                         beamPreserver.add(new BeamElement(addedScore, b, 1, -1));
-                        if (beamPreserver.size() > beamWidth) {
+                        if (beamPreserver.size() > width) {
                             beamPreserver.pollFirst();
                         }
+                        time = PhaseTimers.lap(PhaseTimers.CANDIDATES, time);
                     }
                     if (canRightArc) {
                         float[] rightArcScores = classifier.rightArcScores(features, true);
+                        time = PhaseTimers.lap(PhaseTimers.SCORE_RIGHT_ARC, time);
                         for (int dependency : dependencyRelations) {
                             float score = rightArcScores[dependency];
                             float addedScore = score + prevScore;
                             beamPreserver.add(new BeamElement(addedScore, b, 2, dependency));
-                            if (beamPreserver.size() > beamWidth) {
+                            if (beamPreserver.size() > width) {
                                 beamPreserver.pollFirst();
                             }
                         }
+                        time = PhaseTimers.lap(PhaseTimers.CANDIDATES, time);
                     }
                     if (canLeftArc) {
                         float[] leftArcScores = classifier.leftArcScores(features, true);
+                        time = PhaseTimers.lap(PhaseTimers.SCORE_LEFT_ARC, time);
                         for (int dependency : dependencyRelations) {
                             float score = leftArcScores[dependency];
                             float addedScore = score + prevScore;
                             beamPreserver.add(new BeamElement(addedScore, b, 3, dependency));
-                            if (beamPreserver.size() > beamWidth) {
+                            if (beamPreserver.size() > width) {
                                 beamPreserver.pollFirst();
                             }
                         }
+                        time = PhaseTimers.lap(PhaseTimers.CANDIDATES, time);
                     }
                 }
-                ArrayList<Configuration> repBeam = new ArrayList<>(beamWidth);
+                ArrayList<Configuration> repBeam = new ArrayList<>(width);
                 for (BeamElement beamElement : beamPreserver.descendingSet()) {
-                    if (repBeam.size() >= beamWidth) {
+                    if (repBeam.size() >= width) {
                         break;
                     }
                     int b = beamElement.number;
                     int action = beamElement.action;
                     int label = beamElement.label;
                     float score = beamElement.score;
+                    long time = PhaseTimers.start();
                     Configuration newConfig = beam.get(b).clone();
+                    PhaseTimers.lap(PhaseTimers.CLONE, time);
                     if (action == 0) {
                         ArcEager.shift(newConfig.state);
                         newConfig.addAction(0);
@@ -160,7 +218,9 @@ public class ParseThread implements Callable<Pair<Configuration, Integer>> {
             } else {
                 Configuration configuration = beam.get(0);
                 State currentState = configuration.state;
+                long time = PhaseTimers.start();
                 Object[] features = FeatureExtractor.extractAllParseFeatures(configuration, featureLength);
+                time = PhaseTimers.lap(PhaseTimers.FEATURES, time);
                 float bestScore = Float.NEGATIVE_INFINITY;
                 int bestAction = -1;
                 boolean canShift = ArcEager.canDo(Actions.Shift, currentState);
@@ -178,20 +238,25 @@ public class ParseThread implements Callable<Pair<Configuration, Integer>> {
                 }
                 if (canShift) {
                     float score = classifier.shiftScore(features, true);
+                    time = PhaseTimers.lap(PhaseTimers.SCORE_SHIFT, time);
                     if (score > bestScore) {
                         bestScore = score;
                         bestAction = 0;
                     }
+                    time = PhaseTimers.lap(PhaseTimers.CANDIDATES, time);
                 }
                 if (canReduce) {
                     float score = classifier.reduceScore(features, true);
+                    time = PhaseTimers.lap(PhaseTimers.SCORE_REDUCE, time);
                     if (score > bestScore) {
                         bestScore = score;
                         bestAction = 1;
                     }
+                    time = PhaseTimers.lap(PhaseTimers.CANDIDATES, time);
                 }
                 if (canRightArc) {
                     float[] rightArcScores = classifier.rightArcScores(features, true);
+                    time = PhaseTimers.lap(PhaseTimers.SCORE_RIGHT_ARC, time);
                     for (int dependency : dependencyRelations) {
                         float score = rightArcScores[dependency];
                         if (score > bestScore) {
@@ -199,9 +264,11 @@ public class ParseThread implements Callable<Pair<Configuration, Integer>> {
                             bestAction = 3 + dependency;
                         }
                     }
+                    time = PhaseTimers.lap(PhaseTimers.CANDIDATES, time);
                 }
                 if (ArcEager.canDo(Actions.LeftArc, currentState)) {
                     float[] leftArcScores = classifier.leftArcScores(features, true);
+                    time = PhaseTimers.lap(PhaseTimers.SCORE_LEFT_ARC, time);
                     for (int dependency : dependencyRelations) {
                         float score = leftArcScores[dependency];
                         if (score > bestScore) {
@@ -209,6 +276,7 @@ public class ParseThread implements Callable<Pair<Configuration, Integer>> {
                             bestAction = 3 + dependencyRelations.size() + dependency;
                         }
                     }
+                    time = PhaseTimers.lap(PhaseTimers.CANDIDATES, time);
                 }
                 if (bestAction != -1) {
                     int label;
@@ -230,30 +298,24 @@ public class ParseThread implements Callable<Pair<Configuration, Integer>> {
         }
         Configuration bestConfiguration = null;
         float bestScore = Float.NEGATIVE_INFINITY;
-        int wrongParse = 0;
-        int rightParse = 0;
         for (Configuration configuration : beam) {
             if (configuration.getScore() > bestScore) {
                 bestScore = configuration.getScore();
                 bestConfiguration = configuration;
             }
-            if (isOracle(configuration)) {
-                rightParse++;
-            } else {
-                wrongParse++;
+        }
+        if (diagnostics != null && bClassifier != null && diagnostics.sample()) {
+            int wrongParse = 0;
+            int rightParse = 0;
+            for (Configuration configuration : beam) {
+                if (isOracle(configuration)) {
+                    rightParse++;
+                } else {
+                    wrongParse++;
+                }
             }
+            diagnostics.record(id, rightParse, wrongParse, isOracle(bestConfiguration));
         }
-        BufferedWriter writer = new BufferedWriter(new FileWriter("./out/model/2019.07.08/parseBeam.log", true));
-        writer.write("Sentence " + id);
-        writer.newLine();
-        writer.write("right parse: " + rightParse);
-        writer.newLine();
-        writer.write("wrong parse: " + wrongParse);
-        writer.newLine();
-        writer.write("bestConfiguration isOracle: " + isOracle(bestConfiguration));
-        writer.newLine();
-        writer.newLine();
-        writer.close();
         return new Pair<>(bestConfiguration, id);
     }
 
@@ -277,7 +339,9 @@ public class ParseThread implements Callable<Pair<Configuration, Integer>> {
                 int action = beamElement.action;
                 int label = beamElement.label;
                 float score = beamElement.score;
+                long time = PhaseTimers.start();
                 Configuration newConfig = beam.get(b).clone();
+                PhaseTimers.lap(PhaseTimers.CLONE, time);
                 if (action == 0) {
                     ArcEager.shift(newConfig.state);
                     newConfig.addAction(0);
@@ -321,7 +385,9 @@ public class ParseThread implements Callable<Pair<Configuration, Integer>> {
             boolean canReduce = ArcEager.canDo(Actions.Reduce, currentState);
             boolean canRightArc = ArcEager.canDo(Actions.RightArc, currentState);
             boolean canLeftArc = ArcEager.canDo(Actions.LeftArc, currentState);
+            long time = PhaseTimers.start();
             Object[] features = FeatureExtractor.extractAllParseFeatures(configuration, featureLength);
+            time = PhaseTimers.lap(PhaseTimers.FEATURES, time);
             if (!canShift && !canReduce && !canRightArc && !canLeftArc) {
                 beamPreserver.add(new BeamElement(prevScore, b, 4, -1));
                 if (beamPreserver.size() > beamWidth) {
@@ -331,25 +397,30 @@ public class ParseThread implements Callable<Pair<Configuration, Integer>> {
             if (canShift) {
                 if (isNonProjective || goldConfiguration.actionCost(Actions.Shift, -1, currentState) == 0) {
                     float score = classifier.shiftScore(features, true);
+                    time = PhaseTimers.lap(PhaseTimers.SCORE_SHIFT, time);
                     float addedScore = score + prevScore;
                     beamPreserver.add(new BeamElement(addedScore, b, 0, -1));
                     if (beamPreserver.size() > beamWidth) {
                         beamPreserver.pollFirst();
                     }
+                    time = PhaseTimers.lap(PhaseTimers.CANDIDATES, time);
                 }
             }
             if (canReduce) {
                 if (isNonProjective || goldConfiguration.actionCost(Actions.Reduce, -1, currentState) == 0) {
                     float score = classifier.reduceScore(features, true);
+                    time = PhaseTimers.lap(PhaseTimers.SCORE_REDUCE, time);
                     float addedScore = score + prevScore;
                     beamPreserver.add(new BeamElement(addedScore, b, 1, -1));
                     if (beamPreserver.size() > beamWidth) {
                         beamPreserver.pollFirst();
                     }
+                    time = PhaseTimers.lap(PhaseTimers.CANDIDATES, time);
                 }
             }
             if (canRightArc) {
                 float[] rightArcScores = classifier.rightArcScores(features, true);
+                time = PhaseTimers.lap(PhaseTimers.SCORE_RIGHT_ARC, time);
                 for (int dependency : dependencyRelations) {
                     if (isNonProjective || goldConfiguration.actionCost(Actions.RightArc, dependency, currentState) == 0) {
                         float score = rightArcScores[dependency];
@@ -360,9 +431,11 @@ public class ParseThread implements Callable<Pair<Configuration, Integer>> {
                         }
                     }
                 }
+                time = PhaseTimers.lap(PhaseTimers.CANDIDATES, time);
             }
             if (canLeftArc) {
                 float[] leftArcScores = classifier.leftArcScores(features, true);
+                time = PhaseTimers.lap(PhaseTimers.SCORE_LEFT_ARC, time);
                 for (int dependency : dependencyRelations) {
                     if (isNonProjective || goldConfiguration.actionCost(Actions.LeftArc, dependency, currentState) == 0) {
                         float score = leftArcScores[dependency];
@@ -373,6 +446,7 @@ public class ParseThread implements Callable<Pair<Configuration, Integer>> {
                         }
                     }
                 }
+                time = PhaseTimers.lap(PhaseTimers.CANDIDATES, time);
             }
         }
         if (beamPreserver.size() == 0) {
@@ -384,7 +458,9 @@ public class ParseThread implements Callable<Pair<Configuration, Integer>> {
                 boolean canReduce = ArcEager.canDo(Actions.Reduce, currentState);
                 boolean canRightArc = ArcEager.canDo(Actions.RightArc, currentState);
                 boolean canLeftArc = ArcEager.canDo(Actions.LeftArc, currentState);
+                long time = PhaseTimers.start();
                 Object[] features = FeatureExtractor.extractAllParseFeatures(configuration, featureLength);
+                time = PhaseTimers.lap(PhaseTimers.FEATURES, time);
                 if (!canShift && !canReduce && !canRightArc && !canLeftArc) {
                     beamPreserver.add(new BeamElement(prevScore, b, 4, -1));
                     if (beamPreserver.size() > beamWidth) {
@@ -393,22 +469,27 @@ public class ParseThread implements Callable<Pair<Configuration, Integer>> {
                 }
                 if (canShift) {
                     float score = classifier.shiftScore(features, true);
+                    time = PhaseTimers.lap(PhaseTimers.SCORE_SHIFT, time);
                     float addedScore = score + prevScore;
                     beamPreserver.add(new BeamElement(addedScore, b, 0, -1));
                     if (beamPreserver.size() > beamWidth) {
                         beamPreserver.pollFirst();
                     }
+                    time = PhaseTimers.lap(PhaseTimers.CANDIDATES, time);
                 }
                 if (canReduce) {
                     float score = classifier.reduceScore(features, true);
+                    time = PhaseTimers.lap(PhaseTimers.SCORE_REDUCE, time);
                     float addedScore = score + prevScore;
                     beamPreserver.add(new BeamElement(addedScore, b, 1, -1));
                     if (beamPreserver.size() > beamWidth) {
                         beamPreserver.pollFirst();
                     }
+                    time = PhaseTimers.lap(PhaseTimers.CANDIDATES, time);
                 }
                 if (canRightArc) {
                     float[] rightArcScores = classifier.rightArcScores(features, true);
+                    time = PhaseTimers.lap(PhaseTimers.SCORE_RIGHT_ARC, time);
                     for (int dependency : dependencyRelations) {
                         float score = rightArcScores[dependency];
                         float addedScore = score + prevScore;
@@ -417,9 +498,11 @@ public class ParseThread implements Callable<Pair<Configuration, Integer>> {
                             beamPreserver.pollFirst();
                         }
                     }
+                    time = PhaseTimers.lap(PhaseTimers.CANDIDATES, time);
                 }
                 if (canLeftArc) {
                     float[] leftArcScores = classifier.leftArcScores(features, true);
+                    time = PhaseTimers.lap(PhaseTimers.SCORE_LEFT_ARC, time);
                     for (int dependency : dependencyRelations) {
                         float score = leftArcScores[dependency];
                         float addedScore = score + prevScore;
@@ -428,6 +511,7 @@ public class ParseThread implements Callable<Pair<Configuration, Integer>> {
                             beamPreserver.pollFirst();
                         }
                     }
+                    time = PhaseTimers.lap(PhaseTimers.CANDIDATES, time);
                 }
             }
         }
@@ -437,8 +521,11 @@ public class ParseThread implements Callable<Pair<Configuration, Integer>> {
         if (configuration == null) {
             throw new Exception("The input of isOracle is null");
         }
-        return bClassifier.calcScore(true, configuration.sentence, rootFirst, configuration.actionHistory,
-                featureLength, dependencyRelations) >= 0;
+        long time = PhaseTimers.start();
+        boolean isOracle = bClassifier.calcScore(true, configuration.sentence, rootFirst,
+                configuration.actionHistory, featureLength, dependencyRelations) >= 0;
+        PhaseTimers.lap(PhaseTimers.BINARY_CHECK, time);
+        return isOracle;
 
 
 
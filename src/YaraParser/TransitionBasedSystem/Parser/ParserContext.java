@@ -0,0 +1,90 @@
+package YaraParser.TransitionBasedSystem.Parser;
+
+import YaraParser.Learning.AveragedPerceptron;
+import YaraParser.Structures.IndexMaps;
+import YaraParser.Structures.InfStruct;
+
+import java.util.ArrayList;
+
+/**
+ * The read-only part of a parser: the averaged weights, the vocabularies and the settings the model was trained
+ * with. One context can be shared by any number of threads, each parsing through its own {@link ParserSession}.
+ * The weights must not be changed while sessions are using them.
+ */
+public class ParserContext {
+    public final AveragedPerceptron classifier;
+    public final IndexMaps maps;
+    public final int featureLength;
+    public final boolean rootFirst;
+    public final boolean lowercase;
+    public final int beamWidth;
+    /**
+     * identifies the weights, e.g. for a {@link ParseCache}
+     */
+    public final String version;
+    final int[] dependencyRelations;
+    final int dependencySize;
+    /**
+     * set by {@link WarmUp}
+     */
+    volatile boolean ready;
+
+    public ParserContext(AveragedPerceptron classifier, ArrayList<Integer> dependencyRelations, int featureLength,
+                         IndexMaps maps, boolean rootFirst, boolean lowercase, int beamWidth) {
+        this(classifier, dependencyRelations, featureLength, maps, rootFirst, lowercase, beamWidth,
+                "model@" + Integer.toHexString(System.identityHashCode(classifier)));
+    }
+
+    public ParserContext(AveragedPerceptron classifier, ArrayList<Integer> dependencyRelations, int featureLength,
+                         IndexMaps maps, boolean rootFirst, boolean lowercase, int beamWidth, String version) {
+        this.classifier = classifier;
+        this.maps = maps;
+        this.featureLength = featureLength;
+        this.rootFirst = rootFirst;
+        this.lowercase = lowercase;
+        this.beamWidth = beamWidth;
+        this.version = version;
+        this.dependencyRelations = new int[dependencyRelations.size()];
+        for (int i = 0; i < this.dependencyRelations.length; i++)
+            this.dependencyRelations[i] = dependencyRelations.get(i);
+        dependencySize = classifier.dependencySize;
+    }
+
+    /**
+     * Loads a model with the settings it was trained with
+     */
+    public static ParserContext load(String modelPath) throws Exception {
+        InfStruct infStruct = new InfStruct(modelPath);
+        AveragedPerceptron averagedPerceptron = new AveragedPerceptron(infStruct);
+        return new ParserContext(averagedPerceptron, infStruct.dependencyLabels, averagedPerceptron.featureSize(),
+                infStruct.maps, infStruct.options.rootFirst, infStruct.options.lowercase,
+                infStruct.options.beamWidth, ParseCache.modelVersion(modelPath));
+    }
+
+    /**
+     * @return a context with the same weights and settings that uses the given maps; they must have the same
+     * content as the maps of this context
+     */
+    public ParserContext withMaps(IndexMaps maps) {
+        ArrayList<Integer> relations = new ArrayList<>(dependencyRelations.length);
+        for (int dependency : dependencyRelations)
+            relations.add(dependency);
+        return new ParserContext(classifier, relations, featureLength, maps, rootFirst, lowercase, beamWidth,
+                version);
+    }
+
+    /**
+     * @return true once the model has been warmed up with {@link WarmUp#run}, so its first sentences are parsed at
+     * full speed
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * @return a new session; a session must only be used by one thread at a time
+     */
+    public ParserSession newSession() {
+        return new ParserSession(this);
+    }
+}
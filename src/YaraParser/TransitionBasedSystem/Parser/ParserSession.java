@@ -0,0 +1,293 @@
+package YaraParser.TransitionBasedSystem.Parser;
+
+import YaraParser.Accessories.PhaseTimers;
+import YaraParser.Events.BeamStepEvent;
+import YaraParser.Events.SentenceParseEvent;
+import YaraParser.Learning.AveragedPerceptron;
+import YaraParser.Structures.Sentence;
+import YaraParser.TransitionBasedSystem.Configuration.Configuration;
+import YaraParser.TransitionBasedSystem.Configuration.State;
+import YaraParser.TransitionBasedSystem.Features.FeatureExtractor;
+
+import java.util.ArrayList;
+
+/**
+ * Beam search over a shared {@link ParserContext} with buffers that belong to this session: the feature array, the
+ * arc score arrays, the k best candidates of each step and two beams of configurations that are copied into
+ * instead of cloned. A session is not thread-safe; give each thread its own session.
+ * <p/>
+ * The result is the same as {@link KBeamArcEagerParser#parse} with one thread, including the tie-breaking of
+ * candidates with equal scores.
+ * <p/>
+ * With a latency budget, the session predicts before each transition how long the rest of the parse takes with
+ * the current beam, from the time spent on each beam item so far. If that would exceed the budget, it keeps
+ * halving the beam down to one, i.e. greedy parsing, for the remaining transitions. Once the budget is used up the
+ * parse goes on greedily whatever the prediction, so a sentence only goes over its budget by the greedy
+ * transitions it has left; {@link #getLastDegradation()} tells how much the beam was narrowed.
+ */
+public class ParserSession {
+    private final ParserContext context;
+    private final AveragedPerceptron classifier;
+    private final Object[] features;
+    private final float[] leftArcScores;
+    private final float[] rightArcScores;
+
+    /**
+     * the best candidates of the current step, sorted from the worst to the best
+     */
+    private float[] candidateScores;
+    private int[] candidateNumbers;
+    private int[] candidateActions;
+    private int[] candidateLabels;
+    private int candidateCount;
+
+    private Configuration[] beamConfigurations;
+    private Configuration[] nextConfigurations;
+    private final ArrayList<Configuration> beam;
+    private final ArrayList<Configuration> nextBeam;
+    private final ParseDegradation degradation;
+
+    ParserSession(ParserContext context) {
+        this.context = context;
+        classifier = context.classifier;
+        features = new Object[context.featureLength];
+        leftArcScores = new float[context.dependencySize];
+        rightArcScores = new float[context.dependencySize];
+        beam = new ArrayList<>();
+        nextBeam = new ArrayList<>();
+        degradation = new ParseDegradation();
+        allocate(context.beamWidth);
+    }
+
+    private void allocate(int beamWidth) {
+        candidateScores = new float[beamWidth];
+        candidateNumbers = new int[beamWidth];
+        candidateActions = new int[beamWidth];
+        candidateLabels = new int[beamWidth];
+        beamConfigurations = new Configuration[beamWidth];
+        nextConfigurations = new Configuration[beamWidth];
+    }
+
+    public ParserContext getContext() {
+        return context;
+    }
+
+    /**
+     * @return the beam narrowing of the last parse; it belongs to the session and is overwritten by the next call
+     */
+    public ParseDegradation getLastDegradation() {
+        return degradation;
+    }
+
+    /**
+     * Parses with the beam width of the model
+     */
+    public Configuration parse(Sentence sentence) {
+        return parse(sentence, context.beamWidth);
+    }
+
+    public Configuration parse(String[] words, String[] tags) {
+        return parse(context.maps.makeSentence(words, tags, context.rootFirst, context.lowercase));
+    }
+
+    /**
+     * Parses without a latency budget
+     */
+    public Configuration parse(Sentence sentence, int beamWidth) {
+        return parse(sentence, beamWidth, 0);
+    }
+
+    /**
+     * @param budgetNanos time budget of the sentence; zero or less for no budget
+     * @return the best configuration; it belongs to the session and is overwritten by the next call, so clone it to
+     * keep it
+     */
+    public Configuration parse(Sentence sentence, int beamWidth, long budgetNanos) {
+        if (beamWidth > candidateScores.length)
+            allocate(beamWidth);
+        SentenceParseEvent event = new SentenceParseEvent();
+        event.begin();
+        long start = System.nanoTime();
+        long scoredItems = 0;
+        degradation.reset(beamWidth);
+        beam.clear();
+        Configuration initialConfiguration = pooled(beamConfigurations, 0, sentence);
+        initialConfiguration.reset(sentence, context.rootFirst);
+        beam.add(initialConfiguration);
+        while (ArcEager.isNotTerminal(beam)) {
+            if (budgetNanos > 0 && beamWidth > 1) {
+                beamWidth = ParseDegradation.beamWidthWithin(budgetNanos, System.nanoTime() - start, scoredItems,
+                        beam.get(0).state, beamWidth);
+                // the beam is sorted from the best to the worst
+                while (beam.size() > beamWidth)
+                    beam.remove(beam.size() - 1);
+            }
+            BeamStepEvent stepEvent = new BeamStepEvent();
+            stepEvent.begin();
+            int beamSize = beam.size();
+            degradation.step(beamWidth);
+            scoredItems += beam.size();
+            candidateCount = 0;
+            for (int b = 0; b < beam.size(); b++)
+                scoreActions(beam.get(b), b, beamWidth);
+
+            nextBeam.clear();
+            for (int c = candidateCount - 1; c >= 0; c--) {
+                Configuration newConfig = pooled(nextConfigurations, nextBeam.size(), sentence);
+                long time = PhaseTimers.start();
+                newConfig.copyFrom(beam.get(candidateNumbers[c]));
+                PhaseTimers.lap(PhaseTimers.CLONE, time);
+                int label = candidateLabels[c];
+                int action = candidateActions[c];
+                if (action == 0) {
+                    ArcEager.shift(newConfig.state);
+                    newConfig.addAction(0);
+                } else if (action == 1) {
+                    ArcEager.reduce(newConfig.state);
+                    newConfig.addAction(1);
+                } else if (action == 2) {
+                    ArcEager.rightArc(newConfig.state, label);
+                    newConfig.addAction(3 + label);
+                } else if (action == 3) {
+                    ArcEager.leftArc(newConfig.state, label);
+                    newConfig.addAction(3 + context.dependencyRelations.length + label);
+                } else if (action == 4) {
+                    ArcEager.unShift(newConfig.state);
+                    newConfig.addAction(2);
+                }
+                newConfig.setScore(candidateScores[c]);
+                nextBeam.add(newConfig);
+            }
+            beam.clear();
+            for (int b = 0; b < nextBeam.size(); b++)
+                beam.add(nextBeam.get(b));
+            Configuration[] swap = beamConfigurations;
+            beamConfigurations = nextConfigurations;
+            nextConfigurations = swap;
+            if (stepEvent.shouldCommit()) {
+                stepEvent.step = degradation.steps;
+                stepEvent.beamSize = beamSize;
+                stepEvent.beamWidth = beamWidth;
+                stepEvent.commit();
+            }
+        }
+        Configuration bestConfiguration = null;
+        float bestScore = Float.NEGATIVE_INFINITY;
+        for (int b = 0; b < beam.size(); b++) {
+            Configuration configuration = beam.get(b);
+            if (configuration.getScore() > bestScore) {
+                bestScore = configuration.getScore();
+                bestConfiguration = configuration;
+            }
+        }
+        degradation.elapsedNanos = System.nanoTime() - start;
+        ParseMetrics.record(sentence, context.rootFirst, degradation.finalBeamWidth, degradation.isDegraded(),
+                degradation.elapsedNanos);
+        if (event.shouldCommit()) {
+            event.length = sentence.size();
+            event.beamWidth = degradation.beamWidth;
+            event.finalBeamWidth = degradation.finalBeamWidth;
+            event.degraded = degradation.isDegraded();
+            event.commit();
+        }
+        return bestConfiguration;
+    }
+
+    private Configuration pooled(Configuration[] pool, int index, Sentence sentence) {
+        if (pool[index] == null)
+            pool[index] = new Configuration(sentence, context.rootFirst);
+        return pool[index];
+    }
+
+    private void scoreActions(Configuration configuration, int b, int beamWidth) {
+        State currentState = configuration.state;
+        float prevScore = configuration.score;
+        boolean canShift = ArcEager.canDo(Actions.Shift, currentState);
+        boolean canReduce = ArcEager.canDo(Actions.Reduce, currentState);
+        boolean canRightArc = ArcEager.canDo(Actions.RightArc, currentState);
+        boolean canLeftArc = ArcEager.canDo(Actions.LeftArc, currentState);
+        long time = PhaseTimers.start();
+        FeatureExtractor.extractAllParseFeatures(configuration, features);
+        time = PhaseTimers.lap(PhaseTimers.FEATURES, time);
+        if (!canShift && !canReduce && !canRightArc && !canLeftArc)
+            addCandidate(prevScore, b, 4, -1, beamWidth);
+        if (canShift) {
+            float score = classifier.shiftScore(features, true);
+            time = PhaseTimers.lap(PhaseTimers.SCORE_SHIFT, time);
+            addCandidate(score + prevScore, b, 0, -1, beamWidth);
+            time = PhaseTimers.lap(PhaseTimers.CANDIDATES, time);
+        }
+        if (canReduce) {
+            float score = classifier.reduceScore(features, true);
+            time = PhaseTimers.lap(PhaseTimers.SCORE_REDUCE, time);
+            addCandidate(score + prevScore, b, 1, -1, beamWidth);
+            time = PhaseTimers.lap(PhaseTimers.CANDIDATES, time);
+        }
+        if (canRightArc) {
+            classifier.rightArcScores(features, true, rightArcScores);
+            time = PhaseTimers.lap(PhaseTimers.SCORE_RIGHT_ARC, time);
+            for (int dependency : context.dependencyRelations)
+                addCandidate(rightArcScores[dependency] + prevScore, b, 2, dependency, beamWidth);
+            time = PhaseTimers.lap(PhaseTimers.CANDIDATES, time);
+        }
+        if (canLeftArc) {
+            classifier.leftArcScores(features, true, leftArcScores);
+            time = PhaseTimers.lap(PhaseTimers.SCORE_LEFT_ARC, time);
+            for (int dependency : context.dependencyRelations)
+                addCandidate(leftArcScores[dependency] + prevScore, b, 3, dependency, beamWidth);
+            time = PhaseTimers.lap(PhaseTimers.CANDIDATES, time);
+        }
+    }
+
+    /**
+     * Keeps the beamWidth best candidates the same way a TreeSet of BeamElements that drops its first element when
+     * it grows beyond beamWidth does: candidates that compare equal to one already kept are ignored.
+     */
+    private void addCandidate(float score, int number, int action, int label, int beamWidth) {
+        int low = 0;
+        int high = candidateCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compare(score, number, action, middle);
+            if (comparison == 0)
+                return;
+            if (comparison > 0)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        if (candidateCount == beamWidth) {
+            if (low == 0)
+                return;
+            low--;
+            System.arraycopy(candidateScores, 1, candidateScores, 0, low);
+            System.arraycopy(candidateNumbers, 1, candidateNumbers, 0, low);
+            System.arraycopy(candidateActions, 1, candidateActions, 0, low);
+            System.arraycopy(candidateLabels, 1, candidateLabels, 0, low);
+        } else {
+            System.arraycopy(candidateScores, low, candidateScores, low + 1, candidateCount - low);
+            System.arraycopy(candidateNumbers, low, candidateNumbers, low + 1, candidateCount - low);
+            System.arraycopy(candidateActions, low, candidateActions, low + 1, candidateCount - low);
+            System.arraycopy(candidateLabels, low, candidateLabels, low + 1, candidateCount - low);
+            candidateCount++;
+        }
+        candidateScores[low] = score;
+        candidateNumbers[low] = number;
+        candidateActions[low] = action;
+        candidateLabels[low] = label;
+    }
+
+    /**
+     * Same order as {@link YaraParser.TransitionBasedSystem.Configuration.BeamElement#compareTo}
+     */
+    private int compare(float score, int number, int action, int candidate) {
+        float diff = score - candidateScores[candidate];
+        if (diff > 0)
+            return 2;
+        if (diff < 0)
+            return -2;
+        if (number != candidateNumbers[candidate])
+            return candidateNumbers[candidate] - number;
+        return candidateActions[candidate] - action;
+    }
+}
@@ -5,6 +5,7 @@
 
 package YaraParser.TransitionBasedSystem.Parser;
 
+import YaraParser.Accessories.PhaseTimers;
 import YaraParser.Learning.AveragedPerceptron;
 import YaraParser.TransitionBasedSystem.Configuration.BeamElement;
 import YaraParser.TransitionBasedSystem.Configuration.Configuration;
@@ -49,23 +50,30 @@ class PartialTreeBeamScorerThread implements Callable<ArrayList<BeamElement>> {
         boolean canReduce = ArcEager.canDo(Actions.Reduce, currentState);
         boolean canRightArc = ArcEager.canDo(Actions.RightArc, currentState);
         boolean canLeftArc = ArcEager.canDo(Actions.LeftArc, currentState);
+        long time = PhaseTimers.start();
         Object[] features = FeatureExtractor.extractAllParseFeatures(configuration, featureLength);
+        time = PhaseTimers.lap(PhaseTimers.FEATURES, time);
         if (canShift) {
             if (isNonProjective || goldConfiguration.actionCost(Actions.Shift, -1, currentState) == 0) {
                 float score = classifier.shiftScore(features, isDecode);
+                time = PhaseTimers.lap(PhaseTimers.SCORE_SHIFT, time);
                 float addedScore = score + prevScore;
                 elements.add(new BeamElement(addedScore, b, 0, -1));
+                time = PhaseTimers.lap(PhaseTimers.CANDIDATES, time);
             }
         }
         if (canReduce) {
             if (isNonProjective || goldConfiguration.actionCost(Actions.Reduce, -1, currentState) == 0) {
                 float score = classifier.reduceScore(features, isDecode);
+                time = PhaseTimers.lap(PhaseTimers.SCORE_REDUCE, time);
                 float addedScore = score + prevScore;
                 elements.add(new BeamElement(addedScore, b, 1, -1));
+                time = PhaseTimers.lap(PhaseTimers.CANDIDATES, time);
             }
         }
         if (canRightArc) {
             float[] rightArcScores = classifier.rightArcScores(features, isDecode);
+            time = PhaseTimers.lap(PhaseTimers.SCORE_RIGHT_ARC, time);
             for (int dependency : dependencyRelations) {
                 if (isNonProjective || goldConfiguration.actionCost(Actions.RightArc, dependency, currentState) == 0) {
                     float score = rightArcScores[dependency];
@@ -73,9 +81,11 @@ class PartialTreeBeamScorerThread implements Callable<ArrayList<BeamElement>> {
                     elements.add(new BeamElement(addedScore, b, 2, dependency));
                 }
             }
+            time = PhaseTimers.lap(PhaseTimers.CANDIDATES, time);
         }
         if (canLeftArc) {
             float[] leftArcScores = classifier.leftArcScores(features, isDecode);
+            time = PhaseTimers.lap(PhaseTimers.SCORE_LEFT_ARC, time);
             for (int dependency : dependencyRelations) {
                 if (isNonProjective || goldConfiguration.actionCost(Actions.LeftArc, dependency, currentState) == 0) {
                     float score = leftArcScores[dependency];
@@ -83,33 +93,42 @@ class PartialTreeBeamScorerThread implements Callable<ArrayList<BeamElement>> {
                     elements.add(new BeamElement(addedScore, b, 3, dependency));
                 }
             }
+            time = PhaseTimers.lap(PhaseTimers.CANDIDATES, time);
         }
         if (elements.size() == 0) {
             if (canShift) {
                 float score = classifier.shiftScore(features, isDecode);
+                time = PhaseTimers.lap(PhaseTimers.SCORE_SHIFT, time);
                 float addedScore = score + prevScore;
                 elements.add(new BeamElement(addedScore, b, 0, -1));
+                time = PhaseTimers.lap(PhaseTimers.CANDIDATES, time);
             }
             if (canReduce) {
                 float score = classifier.reduceScore(features, isDecode);
+                time = PhaseTimers.lap(PhaseTimers.SCORE_REDUCE, time);
                 float addedScore = score + prevScore;
                 elements.add(new BeamElement(addedScore, b, 1, -1));
+                time = PhaseTimers.lap(PhaseTimers.CANDIDATES, time);
             }
             if (canRightArc) {
                 float[] rightArcScores = classifier.rightArcScores(features, isDecode);
+                time = PhaseTimers.lap(PhaseTimers.SCORE_RIGHT_ARC, time);
                 for (int dependency : dependencyRelations) {
                     float score = rightArcScores[dependency];
                     float addedScore = score + prevScore;
                     elements.add(new BeamElement(addedScore, b, 2, dependency));
                 }
+                time = PhaseTimers.lap(PhaseTimers.CANDIDATES, time);
             }
             if (canLeftArc) {
                 float[] leftArcScores = classifier.leftArcScores(features, isDecode);
+                time = PhaseTimers.lap(PhaseTimers.SCORE_LEFT_ARC, time);
                 for (int dependency : dependencyRelations) {
                     float score = leftArcScores[dependency];
                     float addedScore = score + prevScore;
                     elements.add(new BeamElement(addedScore, b, 3, dependency));
                 }
+                time = PhaseTimers.lap(PhaseTimers.CANDIDATES, time);
             }
         }
         return elements;
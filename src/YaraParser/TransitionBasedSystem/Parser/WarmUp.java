@@ -0,0 +1,136 @@
+package YaraParser.TransitionBasedSystem.Parser;
+
+import YaraParser.Structures.IndexMaps;
+import YaraParser.Structures.Sentence;
+
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Parses synthetic sentences with a model until the JIT has compiled the feature extraction, scoring and beam code,
+ * so that the first real sentences are not parsed in the interpreter, and then marks the model as ready
+ * ({@link ParserContext#isReady}). {@link KBeamArcEagerParser#warmUp} does the same for the parse paths of that
+ * parser.
+ * <p/>
+ * The sentences are made of words of the model vocabulary and some unknown words, with the POS tags of the model,
+ * and have 3 to 60 words. Most are parsed with the full beam; every fourth one greedily and every eighth one with a
+ * latency budget that is always exceeded, so the narrowing of the beam is compiled as well. The sentences are parsed
+ * in rounds until the speed of the last rounds is stable or the time is up.
+ */
+public class WarmUp {
+    private static final int ROUND_SENTENCES = 100;
+    private static final int STABLE_ROUNDS = 3;
+    /**
+     * the speeds of the last rounds may differ by this fraction
+     */
+    private static final double STABLE_SPREAD = 0.05;
+    /**
+     * maps of models saved before the tag ids were kept: the POS tags got the ids right after the labels, and at
+     * most this many of them are used
+     */
+    private static final int OLD_MODEL_TAGS = 50;
+
+    /**
+     * Parses the n-th sentence of the warm-up
+     */
+    interface Parse {
+        void parse(Sentence sentence, int n) throws Exception;
+    }
+
+    /**
+     * @param maxMillis the warm-up stops after this time even if the speed is not stable yet
+     * @return number of sentences parsed
+     */
+    public static int run(ParserContext context, long maxMillis) {
+        ParserSession session = context.newSession();
+        try {
+            return rounds(context.version, context.maps, context.rootFirst, context.lowercase, maxMillis,
+                    (sentence, n) -> {
+                        if (n % 8 == 7)
+                            session.parse(sentence, context.beamWidth, 1);
+                        else if (n % 4 == 3)
+                            session.parse(sentence, 1);
+                        else
+                            session.parse(sentence);
+                    });
+        } catch (Exception e) {
+            // a session does not throw checked exceptions
+            throw new RuntimeException(e);
+        } finally {
+            // a model that cannot be warmed up still parses, only slower at first
+            context.ready = true;
+        }
+    }
+
+    /**
+     * Parses rounds of sentences until the speed is stable or the time is up, and prints the speed of the first and
+     * the last round.
+     *
+     * @return number of sentences parsed
+     */
+    static int rounds(String name, IndexMaps maps, boolean rootFirst, boolean lowercase, long maxMillis, Parse parse)
+            throws Exception {
+        long start = System.currentTimeMillis();
+        Random random = new Random(0);
+        ArrayList<Double> speeds = new ArrayList<>();
+        int sentences = 0;
+        boolean stable;
+        // at least one round, so there is a speed to report
+        do {
+            long roundStart = System.nanoTime();
+            for (int i = 0; i < ROUND_SENTENCES; i++) {
+                parse.parse(sentence(maps, rootFirst, lowercase, random), sentences);
+                sentences++;
+            }
+            speeds.add(ROUND_SENTENCES * 1e9 / (System.nanoTime() - roundStart));
+            stable = isStable(speeds);
+        } while (!stable && System.currentTimeMillis() - start < maxMillis);
+
+        DecimalFormat format = new DecimalFormat("0.00");
+        System.out.println("warmed up " + name + " with " + sentences + " sentences in "
+                + (System.currentTimeMillis() - start) + " ms: " + format.format(speeds.get(0)) + " -> "
+                + format.format(speeds.get(speeds.size() - 1)) + " sentences per second"
+                + (stable ? "" : " (not stable yet)"));
+        return sentences;
+    }
+
+    private static boolean isStable(ArrayList<Double> speeds) {
+        if (speeds.size() < STABLE_ROUNDS)
+            return false;
+        double min = Double.MAX_VALUE;
+        double max = 0;
+        for (int i = speeds.size() - STABLE_ROUNDS; i < speeds.size(); i++) {
+            min = Math.min(min, speeds.get(i));
+            max = Math.max(max, speeds.get(i));
+        }
+        return max <= min * (1 + STABLE_SPREAD);
+    }
+
+    private static Sentence sentence(IndexMaps maps, boolean rootFirst, boolean lowercase, Random random) {
+        String[] vocabulary = maps.revWords;
+        int[] tagIds = maps.getTags();
+        int firstTag = maps.getLabels().size();
+        int tagCount = tagIds != null && tagIds.length > 0 ? tagIds.length :
+                Math.max(1, Math.min(OLD_MODEL_TAGS, vocabulary.length - firstTag));
+        int length = 3 + random.nextInt(58);
+        String[] words = new String[length];
+        String[] tags = new String[length];
+        for (int i = 0; i < length; i++) {
+            words[i] = random.nextInt(10) == 0 ? "unknown" + random.nextInt(1000) :
+                    entry(vocabulary, 1 + random.nextInt(vocabulary.length - 1));
+            int tag = random.nextInt(tagCount);
+            tags[i] = entry(vocabulary, tagIds != null && tagIds.length > 0 ? tagIds[tag] : firstTag + tag);
+        }
+        return maps.makeSentence(words, tags, rootFirst, lowercase);
+    }
+
+    /**
+     * @return the string of the id, or an unknown word for the free slot at the end of the vocabulary
+     */
+    private static String entry(String[] vocabulary, int id) {
+        if (id >= vocabulary.length || vocabulary[id] == null || vocabulary[id].length() == 0)
+            return "unknown";
+        return vocabulary[id];
+    }
+}
@@ -2,10 +2,16 @@ package YaraParser.TransitionBasedSystem.Trainer;
 
 import YaraParser.Accessories.BinaryModelEvaluator;
 import YaraParser.Accessories.Evaluator;
+import YaraParser.Accessories.Metrics;
 import YaraParser.Accessories.Options;
 import YaraParser.Accessories.Pair;
+import YaraParser.Accessories.PhaseTimers;
+import YaraParser.Events.DevEvaluationEvent;
+import YaraParser.Events.PerceptronUpdateEvent;
+import YaraParser.Events.TrainingEpochEvent;
 import YaraParser.Learning.AveragedPerceptron;
 import YaraParser.Learning.BinaryPerceptron;
+import YaraParser.Structures.CompactArray;
 import YaraParser.Structures.IndexMaps;
 import YaraParser.Structures.InfStruct;
 import YaraParser.TransitionBasedSystem.Configuration.BeamElement;
@@ -31,6 +37,20 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 public class ArcEagerBeamTrainer {
+    private static final Metrics.Counter sentences = Metrics.counter("yara_training_sentences_total",
+            "Sentences trained on, over all iterations");
+    private static final Metrics.Counter updates = Metrics.counter("yara_training_updates_total",
+            "Perceptron updates", "classifier", "averaged");
+    private static final Metrics.Counter binaryUpdates = Metrics.counter("yara_training_updates_total",
+            "Perceptron updates", "classifier", "binary");
+    private static final Metrics.Counter violations = Metrics.counter("yara_training_violations_total",
+            "Sentences whose gold parse fell out of the beam before the end");
+    private static final Metrics.Histogram epochSeconds = Metrics.histogram("yara_training_epoch_seconds",
+            "Time of an iteration over the training data, without saving the models",
+            new double[]{1, 5, 10, 30, 60, 300, 600, 1800, 3600, 7200});
+    private static final Metrics.Gauge lastIteration = Metrics.gauge("yara_training_iteration",
+            "The last finished training iteration");
+
     private final int featureLength;
     private Options options;
     /**
@@ -46,6 +66,7 @@ public class ArcEagerBeamTrainer {
     private ArrayList<Integer> dependencyRelations;
     private Random randGen;
     private IndexMaps maps;
+    private TrainingProfile profile;
 
     public ArcEagerBeamTrainer(String updateMode, AveragedPerceptron classifier, Options options,
                                ArrayList<Integer> dependencyRelations, int featureLength, IndexMaps maps) {
@@ -71,18 +92,40 @@ public class ArcEagerBeamTrainer {
         this.maps = maps;
     }
 
+    /**
+     * Times the phases of training and keeps the size of the classifiers after each iteration, see
+     * {@link TrainingProfile}
+     */
+    public void setProfile(TrainingProfile profile) {
+        this.profile = profile;
+    }
+
     public void train(ArrayList<GoldConfiguration> trainData, String devPath, int maxIteration, String modelPath,
                       boolean lowerCased, HashSet<String> punctuations, int partialTreeIter) throws Exception {
+        train(trainData, trainData.size(), devPath, maxIteration, modelPath, lowerCased, punctuations,
+                partialTreeIter);
+    }
+
+    /**
+     * Trains over any source of sentences, e.g. a {@link YaraParser.Accessories.StreamingTreebank} that reads
+     * the data from disk in every iteration
+     *
+     * @param trainSize number of sentences in trainData, only used for reporting the progress and speed
+     */
+    public void train(Iterable<GoldConfiguration> trainData, int trainSize, String devPath, int maxIteration,
+                      String modelPath, boolean lowerCased, HashSet<String> punctuations, int partialTreeIter)
+            throws Exception {
         /*
           Actions: 0=shift, 1=reduce, 2=unshift, ra_dep=3+dep,
           la_dep=3+dependencyRelations.size()+dep
          */
         ExecutorService executor = Executors.newFixedThreadPool(options.numOfThreads);
         CompletionService<ArrayList<BeamElement>> pool = new ExecutorCompletionService<>(executor);
-        final int trainSize = trainData.size();
         for (int i = 1; i <= maxIteration; i++) {
             long start = System.currentTimeMillis();
             long startInNanos = System.nanoTime();
+            TrainingEpochEvent epochEvent = new TrainingEpochEvent();
+            epochEvent.begin();
             System.out.println("### ArcEagerBeamTrainer:");
             int dataCount = 0;
             double progress = 1.0;
@@ -100,6 +143,7 @@ public class ArcEagerBeamTrainer {
                     System.out.print("progress: " + (dataCount * 100) / trainSize + "%\r");
                 }
                 trainOnOneSample(goldConfiguration, partialTreeIter, i, dataCount, pool);
+                sentences.increment();
                 classifier.incrementIteration();
                 bClassifier.incrementIteration();
             }
@@ -107,6 +151,15 @@ public class ArcEagerBeamTrainer {
             System.out.println("train phase completed!");
             long end = System.currentTimeMillis();
             long endInNanos = System.nanoTime();
+            if (epochEvent.shouldCommit()) {
+                epochEvent.iteration = i;
+                epochEvent.sentences = dataCount;
+                epochEvent.beamWidth = options.beamWidth;
+                epochEvent.commit();
+            }
+            epochSeconds.observe((endInNanos - startInNanos) / 1e9);
+            lastIteration.set(i);
+            long exportStart = clock();
             Duration duration = Duration.ofNanos(endInNanos - startInNanos);
             System.out.println("iteration " + i + " took " + duration.toString().substring(2).replaceAll("(\\d[HMS])" +
                     "(?!$)", "$1 ").toLowerCase());
@@ -131,8 +184,20 @@ public class ArcEagerBeamTrainer {
             infStruct.saveModel(modelPath + "_iter" + i);
             bInfStruct.saveModel(modelPath + "_Binary_iter" + i);
             System.out.println("The model saved");
+            recordFeatureTables("averaged", classifier.shiftFeatureWeights, classifier.reduceFeatureWeights,
+                    classifier.rightArcFeatureWeights, classifier.leftArcFeatureWeights);
+            recordFeatureTables("binary", bClassifier.shiftFeatureWeights, bClassifier.reduceFeatureWeights,
+                    bClassifier.rightArcFeatureWeights, bClassifier.leftArcFeatureWeights);
+            if (options.metricsPath.length() > 0)
+                Metrics.write(options.metricsPath);
+            record(TrainingProfile.EXPORT, exportStart);
+            if (profile != null) {
+                profile.endEpoch(i, dataCount, endInNanos - startInNanos, classifier, bClassifier);
+            }
             if (!devPath.equals("")) {
                 System.out.println("Validating AveragedPerceptron model:");
+                DevEvaluationEvent devEvent = new DevEvaluationEvent();
+                devEvent.begin();
                 AveragedPerceptron averagedPerceptron = new AveragedPerceptron(infStruct);
                 BinaryPerceptron binaryPerceptron = new BinaryPerceptron(bInfStruct);
                 int raSize = averagedPerceptron.raSize();
@@ -151,7 +216,10 @@ public class ArcEagerBeamTrainer {
                 Evaluator.evaluate(devPath, modelPath + ".__tmp__", punctuations);
                 Files.deleteIfExists(Path.of(modelPath + ".__tmp__"));
                 parser.shutDownLiveThreads();
+                commit(devEvent, i, devPath, "averaged");
                 System.out.println("Validating BinaryPerceptron model:");
+                devEvent = new DevEvaluationEvent();
+                devEvent.begin();
                 raSize = binaryPerceptron.raSize();
                 effectiveRaSize = binaryPerceptron.effectiveRaSize();
                 raRatio = 100.0f * effectiveRaSize / raSize;
@@ -164,6 +232,7 @@ public class ArcEagerBeamTrainer {
                 BinaryModelEvaluator bEval = new BinaryModelEvaluator(modelPath + "_Binary_iter" + i, classifier,
                         bClassifier, options, dependencyRelations, featureLength);
                 bEval.evaluate();
+                commit(devEvent, i, devPath, "binary");
             }
         }
         boolean isTerminated = executor.isTerminated();
@@ -199,24 +268,30 @@ public class ArcEagerBeamTrainer {
           142-151. Association for Computational Linguistics, 2012.
          */
         float maxViol = Float.NEGATIVE_INFINITY;
+        long start = clock();
         Configuration bestScoringOracle = zeroCostDynamicOracle(goldConfiguration, oracles, new HashMap<>());
+        record(TrainingProfile.ORACLE, start);
         Pair<Configuration, Configuration> maxViolPair = new Pair<>(beam.get(0), bestScoringOracle);
         boolean oracleInBeam = false;
+        boolean violated = false;
         while (ArcEager.isNotTerminal(beam) && beam.size() > 0) {
             /*
               generating new oracles it keeps the oracles which are in the terminal state
              */
             HashMap<Configuration, Float> newOracles = new HashMap<>();
+            start = clock();
             if (options.useDynamicOracle || isPartial) {
                 bestScoringOracle = zeroCostDynamicOracle(goldConfiguration, oracles, newOracles);
             } else {
                 bestScoringOracle = staticOracle(goldConfiguration, oracles, newOracles);
             }
+            record(TrainingProfile.ORACLE, start);
             if (newOracles.size() == 0) {
                 System.err.print("...no oracle(" + dataCount + ")...");
             }
             oracles = newOracles;
             TreeSet<BeamElement> beamPreserver = new TreeSet<>();
+            start = clock();
             if (options.numOfThreads == 1 || beam.size() == 1) {
                 beamSortOneThread(beam, beamPreserver);
             } else {
@@ -236,6 +311,7 @@ public class ArcEagerBeamTrainer {
                     }
                 }
             }
+            record(TrainingProfile.BEAM_SCORING, start);
             if (beamPreserver.size() == 0 || beam.size() == 0) {
                 break;
             } else {
@@ -249,7 +325,9 @@ public class ArcEagerBeamTrainer {
                     int action = beamElement.action;
                     int label = beamElement.label;
                     float sc = beamElement.score;
+                    long time = PhaseTimers.start();
                     Configuration newConfig = beam.get(b).clone();
+                    PhaseTimers.lap(PhaseTimers.CLONE, time);
                     switch (action) {
                         case 0:
                             ArcEager.shift(newConfig.state);
@@ -277,7 +355,10 @@ public class ArcEagerBeamTrainer {
                     /*
                       Binary classifier update
                      */
-                    if (oracles.containsKey(newConfig) != isOracle(newConfig)) {
+                    start = clock();
+                    boolean isBinaryOracle = isOracle(newConfig);
+                    record(TrainingProfile.IS_ORACLE, start);
+                    if (oracles.containsKey(newConfig) != isBinaryOracle) {
                         for (Configuration c : oracles.keySet()) {
                             updateWeights(true, initialConfiguration, isPartial, c, newConfig);
                         }
@@ -307,6 +388,10 @@ public class ArcEagerBeamTrainer {
                             oracles.put(bestScoringOracle, 0.0f);
                         }
                     }
+                    if (!oracleInBeam && !violated) {
+                        violated = true;
+                        violations.increment();
+                    }
                     if (!oracleInBeam && updateMode.equals("early")) {
                         break;
                     }
@@ -349,8 +434,6 @@ public class ArcEagerBeamTrainer {
         Configuration bestScoringOracle = null;
         int top = -1;
         int first = -1;
-        HashMap<Integer, Pair<Integer, Integer>> goldDependencies = goldConfiguration.getGoldDependencies();
-        HashMap<Integer, HashSet<Integer>> reversedDependencies = goldConfiguration.getReversedDependencies();
         for (Configuration configuration : oracles.keySet()) {
             State state = configuration.state;
             Object[] features = FeatureExtractor.extractAllParseFeatures(configuration, featureLength);
@@ -362,23 +445,23 @@ public class ArcEagerBeamTrainer {
             }
             if (configuration.state.isNotTerminalState()) {
                 Configuration newConfig = configuration.clone();
-                if (first > 0 && goldDependencies.containsKey(first) && goldDependencies.get(first).first == top) {
-                    int dependency = goldDependencies.get(first).second;
+                if (first > 0 && goldConfiguration.hasHead(first) && goldConfiguration.head(first) == top) {
+                    int dependency = goldConfiguration.label(first);
                     float[] scores = classifier.rightArcScores(features, false);
                     float score = scores[dependency];
                     ArcEager.rightArc(newConfig.state, dependency);
                     newConfig.addAction(3 + dependency);
                     newConfig.addScore(score);
-                } else if (top > 0 && goldDependencies.containsKey(top) && goldDependencies.get(top).first == first) {
-                    int dependency = goldDependencies.get(top).second;
+                } else if (top > 0 && goldConfiguration.hasHead(top) && goldConfiguration.head(top) == first) {
+                    int dependency = goldConfiguration.label(top);
                     float[] scores = classifier.leftArcScores(features, false);
                     float score = scores[dependency];
                     ArcEager.leftArc(newConfig.state, dependency);
                     newConfig.addAction(3 + dependencyRelations.size() + dependency);
                     newConfig.addScore(score);
                 } else if (top >= 0 && state.hasHead(top)) {
-                    if (reversedDependencies.containsKey(top)) {
-                        if (reversedDependencies.get(top).size() == state.valence(top)) {
+                    if (goldConfiguration.dependentCount(top) > 0) {
+                        if (goldConfiguration.dependentCount(top) == state.valence(top)) {
                             float score = classifier.reduceScore(features, false);
                             ArcEager.reduce(newConfig.state);
                             newConfig.addAction(1);
@@ -497,25 +580,32 @@ public class ArcEagerBeamTrainer {
             Configuration configuration = beam.get(b);
             State currentState = configuration.state;
             float prevScore = configuration.score;
+            long time = PhaseTimers.start();
             Object[] features = FeatureExtractor.extractAllParseFeatures(configuration, featureLength);
+            time = PhaseTimers.lap(PhaseTimers.FEATURES, time);
             if (ArcEager.canDo(Actions.Shift, currentState)) {
                 float score = classifier.shiftScore(features, false);
+                time = PhaseTimers.lap(PhaseTimers.SCORE_SHIFT, time);
                 float addedScore = score + prevScore;
                 beamPreserver.add(new BeamElement(addedScore, b, 0, -1));
                 if (beamPreserver.size() > options.beamWidth) {
                     beamPreserver.pollFirst();
                 }
+                time = PhaseTimers.lap(PhaseTimers.CANDIDATES, time);
             }
             if (ArcEager.canDo(Actions.Reduce, currentState)) {
                 float score = classifier.reduceScore(features, false);
+                time = PhaseTimers.lap(PhaseTimers.SCORE_REDUCE, time);
                 float addedScore = score + prevScore;
                 beamPreserver.add(new BeamElement(addedScore, b, 1, -1));
                 if (beamPreserver.size() > options.beamWidth) {
                     beamPreserver.pollFirst();
                 }
+                time = PhaseTimers.lap(PhaseTimers.CANDIDATES, time);
             }
             if (ArcEager.canDo(Actions.RightArc, currentState)) {
                 float[] rightArcScores = classifier.rightArcScores(features, false);
+                time = PhaseTimers.lap(PhaseTimers.SCORE_RIGHT_ARC, time);
                 for (int dependency : dependencyRelations) {
                     float score = rightArcScores[dependency];
                     float addedScore = score + prevScore;
@@ -524,9 +614,11 @@ public class ArcEagerBeamTrainer {
                         beamPreserver.pollFirst();
                     }
                 }
+                time = PhaseTimers.lap(PhaseTimers.CANDIDATES, time);
             }
             if (ArcEager.canDo(Actions.LeftArc, currentState)) {
                 float[] leftArcScores = classifier.leftArcScores(features, false);
+                time = PhaseTimers.lap(PhaseTimers.SCORE_LEFT_ARC, time);
                 for (int dependency : dependencyRelations) {
                     float score = leftArcScores[dependency];
                     float addedScore = score + prevScore;
@@ -535,6 +627,7 @@ public class ArcEagerBeamTrainer {
                         beamPreserver.pollFirst();
                     }
                 }
+                time = PhaseTimers.lap(PhaseTimers.CANDIDATES, time);
             }
         }
     }
@@ -630,6 +723,11 @@ public class ArcEagerBeamTrainer {
      */
     private void updateWeights(boolean isBinary, Configuration initialConfiguration, boolean isPartial,
                                Configuration finalOracle, Configuration predicted) {
+        long start = clock();
+        PerceptronUpdateEvent event = new PerceptronUpdateEvent();
+        event.begin();
+        (isBinary ? binaryUpdates : updates).increment();
+        int touched = 0;
         List<HashMap<Pair<Integer, Object>, Float>> oracleFeatures = new ArrayList<>();
         List<HashMap<Pair<Integer, Object>, Float>> predictedFeatures = new ArrayList<>();
         for (int f = 0; f < featureLength; f++) {
@@ -648,6 +746,7 @@ public class ArcEagerBeamTrainer {
                     Actions actionType = Actions.intToAction(action, dependencyRelations.size());
                     int dependency = getDependencyInsideIndex(action, actionType, dependencyRelations.size());
                     if (!(oracleMap.containsKey(feat) && oracleMap.get(feat).equals(predictedMap.get(feat)))) {
+                        touched++;
                         if (isBinary) {
                             bClassifier.changeWeight(actionType, f, feature, dependency, -predictedMap.get(feat));
                         } else {
@@ -663,6 +762,7 @@ public class ArcEagerBeamTrainer {
                     Actions actionType = Actions.intToAction(action, dependencyRelations.size());
                     int dependency = getDependencyInsideIndex(action, actionType, dependencyRelations.size());
                     if (!(predictedMap.containsKey(feat) && predictedMap.get(feat).equals(oracleMap.get(feat)))) {
+                        touched++;
                         if (isBinary) {
                             bClassifier.changeWeight(actionType, f, feature, dependency, oracleMap.get(feat));
                         } else {
@@ -672,6 +772,63 @@ public class ArcEagerBeamTrainer {
                 }
             }
         }
+        record(TrainingProfile.UPDATE_WEIGHTS, start);
+        if (profile != null)
+            profile.countUpdate(isBinary);
+        if (event.shouldCommit()) {
+            event.binary = isBinary;
+            event.featuresTouched = touched;
+            event.commit();
+        }
+    }
+
+    private void commit(DevEvaluationEvent event, int iteration, String devPath, String classifier) {
+        if (event.shouldCommit()) {
+            event.iteration = iteration;
+            event.devPath = devPath;
+            event.classifier = classifier;
+            event.commit();
+        }
+    }
+
+    /**
+     * Sets the gauges of the number of features in the weight table of each action, summed over the templates
+     */
+    private static void recordFeatureTables(String classifier, HashMap<Object, Float>[] shift,
+                                            HashMap<Object, Float>[] reduce,
+                                            HashMap<Object, CompactArray>[] rightArc,
+                                            HashMap<Object, CompactArray>[] leftArc) {
+        HashMap<?, ?>[][] tables = {shift, reduce, rightArc, leftArc};
+        String[] actions = {"shift", "reduce", "rightArc", "leftArc"};
+        for (int a = 0; a < tables.length; a++) {
+            long features = 0;
+            for (HashMap<?, ?> table : tables[a])
+                features += table.size();
+            Metrics.gauge("yara_training_features", "Features in the weight tables of a classifier", "classifier",
+                    classifier, "action", actions[a]).set(features);
+        }
+    }
+
+    /**
+     * @return the time to measure a phase from, if there is a profile or the phase timers are on
+     */
+    private long clock() {
+        return profile == null && !PhaseTimers.ENABLED ? 0 : System.nanoTime();
+    }
+
+    /**
+     * Adds the time since start to the phase of the profile and to its phase timer, if any
+     *
+     * @param phase a phase of {@link TrainingProfile}
+     */
+    private void record(int phase, long start) {
+        if (profile == null && !PhaseTimers.ENABLED)
+            return;
+        long nanos = System.nanoTime() - start;
+        if (profile != null)
+            profile.add(phase, nanos);
+        if (TrainingProfile.TIMERS[phase] >= 0)
+            PhaseTimers.add(TrainingProfile.TIMERS[phase], nanos);
     }
 
     private boolean isOracle(Configuration bestConfiguration) throws Exception {
@@ -0,0 +1,140 @@
+package YaraParser.TransitionBasedSystem.Trainer;
+
+import YaraParser.Accessories.PhaseTimers;
+import YaraParser.Learning.AveragedPerceptron;
+import YaraParser.Learning.BinaryPerceptron;
+import YaraParser.Structures.CompactArray;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Where the time of {@link ArcEagerBeamTrainer#train} goes, epoch by epoch: the oracle expansion, scoring the beam,
+ * the binary classifier checks ({@code isOracle}), the perceptron updates and saving the models, and how many
+ * features and weights the two classifiers have after each epoch.
+ * <p/>
+ * A trainer only measures when it is given a profile with {@link ArcEagerBeamTrainer#setProfile} or the
+ * {@link PhaseTimers} are on; each phase is timed once, on the training thread, and added to both (see
+ * {@link #TIMERS}). Scoring the beam with several threads counts the wall time of the whole step.
+ */
+public class TrainingProfile {
+    public static final int ORACLE = 0;
+    public static final int BEAM_SCORING = 1;
+    public static final int IS_ORACLE = 2;
+    public static final int UPDATE_WEIGHTS = 3;
+    public static final int EXPORT = 4;
+    public static final String[] PHASES = {"oracle", "beamScoring", "isOracle", "updateWeights", "export"};
+    /**
+     * the phase timer each phase is added to; -1 for beam scoring, whose stages have timers of their own, and for
+     * saving the models
+     */
+    static final int[] TIMERS = {PhaseTimers.ORACLE, -1, PhaseTimers.BINARY_CHECK, PhaseTimers.UPDATE, -1};
+
+    /**
+     * One iteration over the training data
+     */
+    public static class Epoch {
+        public final int iteration;
+        public final int sentences;
+        /**
+         * time of training on the sentences, without saving the models
+         */
+        public final long trainNanos;
+        public final long[] phaseNanos;
+        public final long updates;
+        public final long binaryUpdates;
+        public final long features;
+        public final long weights;
+        public final long binaryFeatures;
+        public final long binaryWeights;
+
+        Epoch(int iteration, int sentences, long trainNanos, long[] phaseNanos, long updates, long binaryUpdates,
+              long features, long weights, long binaryFeatures, long binaryWeights) {
+            this.iteration = iteration;
+            this.sentences = sentences;
+            this.trainNanos = trainNanos;
+            this.phaseNanos = phaseNanos;
+            this.updates = updates;
+            this.binaryUpdates = binaryUpdates;
+            this.features = features;
+            this.weights = weights;
+            this.binaryFeatures = binaryFeatures;
+            this.binaryWeights = binaryWeights;
+        }
+
+        public double sentencesPerMinute() {
+            return sentences / (trainNanos / 6e10);
+        }
+
+        /**
+         * @return the training time that is in none of the phases: transitions, cloning, sorting the beam, ...
+         */
+        public long otherNanos() {
+            long other = trainNanos;
+            for (int phase = 0; phase < EXPORT; phase++)
+                other -= phaseNanos[phase];
+            return other;
+        }
+    }
+
+    private final long[] phaseNanos;
+    private long updates;
+    private long binaryUpdates;
+    private final ArrayList<Epoch> epochs;
+
+    public TrainingProfile() {
+        phaseNanos = new long[PHASES.length];
+        epochs = new ArrayList<>();
+    }
+
+    void add(int phase, long nanos) {
+        phaseNanos[phase] += nanos;
+    }
+
+    void countUpdate(boolean isBinary) {
+        if (isBinary)
+            binaryUpdates++;
+        else
+            updates++;
+    }
+
+    /**
+     * Closes the epoch: the phases and updates since the last epoch and the current size of the classifiers.
+     */
+    void endEpoch(int iteration, int sentences, long trainNanos, AveragedPerceptron classifier,
+                  BinaryPerceptron bClassifier) {
+        long[] weights = new long[2];
+        long features = count(classifier.shiftFeatureWeights, classifier.reduceFeatureWeights,
+                classifier.rightArcFeatureWeights, classifier.leftArcFeatureWeights, weights, 0);
+        long binaryFeatures = count(bClassifier.shiftFeatureWeights, bClassifier.reduceFeatureWeights,
+                bClassifier.rightArcFeatureWeights, bClassifier.leftArcFeatureWeights, weights, 1);
+        epochs.add(new Epoch(iteration, sentences, trainNanos, phaseNanos.clone(), updates, binaryUpdates, features,
+                weights[0], binaryFeatures, weights[1]));
+        Arrays.fill(phaseNanos, 0);
+        updates = 0;
+        binaryUpdates = 0;
+    }
+
+    public ArrayList<Epoch> getEpochs() {
+        return epochs;
+    }
+
+    /**
+     * @return the number of features of the four tables; the number of weights is added to weights[index]
+     */
+    private static long count(HashMap<Object, Float>[] shift, HashMap<Object, Float>[] reduce,
+                              HashMap<Object, CompactArray>[] rightArc, HashMap<Object, CompactArray>[] leftArc,
+                              long[] weights, int index) {
+        long features = 0;
+        for (int f = 0; f < shift.length; f++) {
+            features += shift[f].size() + reduce[f].size() + rightArc[f].size() + leftArc[f].size();
+            weights[index] += shift[f].size() + reduce[f].size();
+            for (CompactArray array : rightArc[f].values())
+                weights[index] += array.length();
+            for (CompactArray array : leftArc[f].values())
+                weights[index] += array.length();
+        }
+        return features;
+    }
+}